@@ -1,7 +1,25 @@
 -- Execute before build docker
 CREATE TABLE IF NOT EXISTS files (
   id INTEGER PRIMARY KEY AUTOINCREMENT,
+  extractor TEXT,
+  kind TEXT,
   filename TEXT NOT NULL,
   filepath TEXT NOT NULL,
   inserted_at TEXT NOT NULL
 );
+
+-- Upload ledger: one row per file, state PENDING | UPLOADING | UPLOADED (also created by the uploader on start)
+CREATE TABLE IF NOT EXISTS uploads (
+  id INTEGER PRIMARY KEY AUTOINCREMENT,
+  filepath TEXT NOT NULL,
+  extractor TEXT,
+  kind TEXT,
+  filename TEXT NOT NULL,
+  size INTEGER NOT NULL,
+  mtime INTEGER NOT NULL,
+  checksum TEXT,
+  state TEXT NOT NULL,
+  updated_at TEXT NOT NULL
+);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_uploads_filepath ON uploads(filepath);
+CREATE INDEX IF NOT EXISTS ix_uploads_state ON uploads(state);
@@ -0,0 +1,19 @@
+package com.td.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+final class BenchmarkFiles {
+
+	private BenchmarkFiles() {}
+
+	static void deleteTree(Path dir) throws IOException {
+		if (dir == null || !Files.exists(dir)) return;
+		try (Stream<Path> s = Files.walk(dir)) {
+			for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+		}
+	}
+}
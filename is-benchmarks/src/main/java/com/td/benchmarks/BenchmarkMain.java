@@ -0,0 +1,22 @@
+package com.td.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JMH entry point that writes machine-readable results by default:
+ * {@code java -jar target/benchmarks.jar [jmh options]} -> jmh-result.json.
+ * Pass {@code -rf}/{@code -rff} to override the format or the file.
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {}
+
+	public static void main(String[] args) throws Exception {
+		List<String> a = new ArrayList<>(Arrays.asList(args));
+		if (!a.contains("-rf")) a.addAll(List.of("-rf", "json"));
+		if (!a.contains("-rff")) a.addAll(List.of("-rff", "jmh-result.json"));
+		org.openjdk.jmh.Main.main(a.toArray(new String[0]));
+	}
+}
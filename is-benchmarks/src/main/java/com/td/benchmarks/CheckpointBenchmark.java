@@ -0,0 +1,56 @@
+package com.td.benchmarks;
+
+import com.td.extractor.CheckpointStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExtractorRoute per-page bookkeeping: rewriting the former <name>-last-skip.state file, against a
+ * CheckpointStore commit into its memory-mapped slots, with and without EXTRACTOR_CHECKPOINT_SYNC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointBenchmark {
+
+	private Path dir, raw, legacy;
+	private CheckpointStore store, syncStore;
+	private int skip;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("bench-checkpoint");
+		raw = Files.writeString(dir.resolve("records_1.jsonl"), "{\"id\":0}\n");
+		legacy = dir.resolve("users-last-skip.state");
+		store = new CheckpointStore(dir.resolve("users.checkpoint"), false);
+		syncStore = new CheckpointStore(dir.resolve("users-sync.checkpoint"), true);
+	}
+
+	@Benchmark
+	public void stateFileRewrite() throws IOException {
+		Files.writeString(legacy, String.valueOf(skip++), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	@Benchmark
+	public void mmapCheckpoint() throws IOException {
+		store.commit(raw, skip++);
+	}
+
+	@Benchmark
+	public void mmapCheckpointSync() throws IOException {
+		syncStore.commit(raw, skip++);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,111 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.DataCodec;
+import com.td.processor.JsonlProcessor;
+import com.td.processor.RuleSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DATA_CODEC on the files that go over SFTP: the raw file written page by page as the extractor does
+ * (one gzip member / zstd frame per page), then processed into etl/dlq with the same codec.
+ * The sizes on disk, which is what the uploader transfers, are reported as the rawBytes / outBytes counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CodecBenchmark {
+
+	// Records per extractor page
+	static final int PAGE = 100;
+
+	@Param({"none", "gzip", "zstd"})
+	String codec;
+
+	@Param({"32"})
+	int sizeMb;
+
+	private DataCodec dataCodec;
+	private Path dir, raw;
+	private final List<byte[]> pages = new ArrayList<>();
+	private RuleSet rules;
+	private final Map<String,String> deptMap = new HashMap<>();
+	private JsonlProcessor processor;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Bytes {
+		public long rawBytes;
+		public long outBytes;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		dataCodec = DataCodec.of(codec);
+		dir = Files.createTempDirectory("bench-codec");
+		Random rnd = new Random(42);
+		long bytes = 0, id = 0;
+		while (bytes < sizeMb * 1024L * 1024L) {
+			StringBuilder page = new StringBuilder();
+			for (int i = 0; i < PAGE; i++) page.append(DummyJsonData.user(++id, rnd)).append('\n');
+			pages.add(page.toString().getBytes(StandardCharsets.UTF_8));
+			bytes += page.length();
+		}
+		raw = dir.resolve("records_bench.jsonl" + dataCodec.extension());
+		writeRaw(raw);
+		for (String d : DummyJsonData.DEPARTMENTS) deptMap.put(d, d.substring(0, 3).toUpperCase());
+		try (InputStream spec = getClass().getResourceAsStream("/rules/default.json")) {
+			rules = RuleSet.compile(mapper.readTree(spec));
+		}
+		processor = new JsonlProcessor(mapper, 1);
+	}
+
+	private void writeRaw(Path file) throws IOException {
+		Files.deleteIfExists(file);
+		for (byte[] page : pages)
+			try (OutputStream out = dataCodec.compress(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+				out.write(page);
+			}
+	}
+
+	@Benchmark
+	public long extractorWrite(Bytes b) throws IOException {
+		Path file = dir.resolve("records_written.jsonl" + dataCodec.extension());
+		writeRaw(file);
+		return b.rawBytes = Files.size(file);
+	}
+
+	@Benchmark
+	public JsonlProcessor.Result processorRun(Bytes b) throws IOException {
+		Path ok = dir.resolve("etl.jsonl" + dataCodec.extension()), dlq = dir.resolve("invalid.jsonl" + dataCodec.extension());
+		Files.deleteIfExists(ok);
+		Files.deleteIfExists(dlq);
+		JsonlProcessor.Result r = processor.process(raw, ok, dlq, rules, deptMap);
+		b.outBytes = Files.size(ok) + Files.size(dlq);
+		return r;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		processor.close();
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,67 @@
+package com.td.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Synthetic data shaped like https://dummyjson.com/users.
+ * About 1 in 10 users fails the default validation rules, like the real feed.
+ */
+public final class DummyJsonData {
+
+	public static final String[] DEPARTMENTS = {
+			"Engineering", "Support", "Marketing", "Sales", "Legal", "Accounting",
+			"Human Resources", "Product Management", "Research and Development", "Services"
+	};
+	private static final String[] FIRST = {"Emily", "Michael", "Sophia", "James", "Emma", "Olivia", "Alexander", "Ava"};
+	private static final String[] LAST = {"Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Wilson"};
+
+	private DummyJsonData() {}
+
+	public static String user(long id, Random rnd) {
+		String first = FIRST[rnd.nextInt(FIRST.length)];
+		String last = LAST[rnd.nextInt(LAST.length)];
+		int age = rnd.nextInt(10) == 0 ? 66 + rnd.nextInt(20) : 18 + rnd.nextInt(48);
+		String dep = DEPARTMENTS[rnd.nextInt(DEPARTMENTS.length)];
+		return "{\"id\":" + id
+				+ ",\"firstName\":\"" + first + "\",\"lastName\":\"" + last + "\",\"maidenName\":\"\""
+				+ ",\"age\":" + age + ",\"gender\":\"" + (rnd.nextBoolean() ? "female" : "male") + "\""
+				+ ",\"email\":\"" + first.toLowerCase() + "." + last.toLowerCase() + id + "@x.dummyjson.com\""
+				+ ",\"phone\":\"+81 965-431-" + (1000 + rnd.nextInt(9000)) + "\""
+				+ ",\"username\":\"" + first.toLowerCase() + id + "\",\"birthDate\":\"1996-5-30\""
+				+ ",\"bloodGroup\":\"O-\",\"height\":" + (150 + rnd.nextInt(50)) + ".5,\"weight\":" + (50 + rnd.nextInt(50)) + ".3"
+				+ ",\"address\":{\"address\":\"626 Main Street\",\"city\":\"Phoenix\",\"state\":\"Mississippi\""
+				+ ",\"postalCode\":\"29112\",\"coordinates\":{\"lat\":-77.16213,\"lng\":-92.084824},\"country\":\"United States\"}"
+				+ ",\"company\":{\"department\":\"" + dep + "\",\"name\":\"Dooley, Kozey and Cronin\",\"title\":\"Sales Manager\"}"
+				+ ",\"role\":\"admin\"}";
+	}
+
+	/** One API page: {"users":[...],"total":..,"skip":..,"limit":..}. */
+	public static String page(String arrayField, int total, int skip, int limit, Random rnd) {
+		StringBuilder sb = new StringBuilder(limit * 700);
+		sb.append("{\"").append(arrayField).append("\":[");
+		int n = Math.max(0, Math.min(limit, total - skip));
+		for (int i = 0; i < n; i++) {
+			if (i > 0) sb.append(',');
+			sb.append(user(skip + i + 1, rnd));
+		}
+		return sb.append("],\"total\":").append(total).append(",\"skip\":").append(skip)
+				.append(",\"limit\":").append(n).append('}').toString();
+	}
+
+	/** records_*.jsonl of at least the given size; returns the number of records written. */
+	public static long jsonl(Path file, long minBytes, Random rnd) throws IOException {
+		long n = 0, bytes = 0;
+		try (BufferedWriter w = Files.newBufferedWriter(file)) {
+			while (bytes < minBytes) {
+				String line = user(++n, rnd);
+				w.write(line); w.write('\n');
+				bytes += line.length() + 1;
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,88 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.td.common.FileEvent;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.ProcessorEndpoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One file event end to end, as the routes handle it: build + send (processor) and parse (uploader).
+ * "legacy" is a new ObjectMapper, an ObjectNode and a new ProducerTemplate per event; "shared" is the
+ * injected ObjectWriter/ObjectReader on the FileEvent record and the shared ProducerTemplate.
+ * Run with {@code -prof gc} and compare gc.alloc.rate.norm (bytes per event).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBenchmark {
+
+	private static final String PATH = "/data/processed_users/users/etl_20250101_020000_p0001.jsonl";
+
+	private CamelContext context;
+	private Endpoint redis;
+	private ProducerTemplate template;
+	private ObjectWriter writer;
+	private ObjectReader reader;
+	private String json;
+	private int part;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context = new DefaultCamelContext();
+		context.start();
+		// Stands in for the spring-redis PUBLISH endpoint
+		redis = new ProcessorEndpoint("redis:publish", context, e -> e.getMessage().getBody(String.class));
+		template = context.createProducerTemplate();
+		ObjectMapper mapper = new ObjectMapper();
+		writer = mapper.writerFor(FileEvent.class);
+		reader = mapper.readerFor(FileEvent.class);
+		json = writer.writeValueAsString(FileEvent.processed("users", PATH, 1));
+	}
+
+	@Benchmark
+	public String publishLegacy() throws Exception {
+		String ev = new ObjectMapper().createObjectNode()
+				.put("type", "PROCESSED").put("extractor", "users").put("path", PATH).put("part", ++part).toString();
+		// Never stopped, as in the former ProcessorRoute
+		context.createProducerTemplate().sendBody(redis, ev);
+		return ev;
+	}
+
+	@Benchmark
+	public String publishShared() throws Exception {
+		String ev = writer.writeValueAsString(FileEvent.processed("users", PATH, ++part));
+		template.sendBody(redis, ev);
+		return ev;
+	}
+
+	@Benchmark
+	public String parseLegacy() throws IOException {
+		JsonNode root = new ObjectMapper().readTree(json);
+		return root.path("type").asText("RAW") + root.path("extractor").asText("unknown") + root.path("path").asText();
+	}
+
+	@Benchmark
+	public String parseShared() throws IOException {
+		FileEvent ev = reader.readValue(json);
+		return ev.type() + ev.extractor() + ev.path();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		template.stop();
+		context.stop();
+	}
+}
@@ -0,0 +1,41 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.extractor.PageAppender;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExtractorRoute page step: parse one API page and append its records as JSONL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorBenchmark {
+
+	// Records per page (USERS_LIMIT)
+	@Param({"100", "1000", "10000"})
+	int limit;
+
+	private byte[] body;
+	private PageAppender appender;
+
+	@Setup
+	public void setup() {
+		body = DummyJsonData.page("users", limit * 10, 0, limit, new Random(42)).getBytes(StandardCharsets.UTF_8);
+		appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+	}
+
+	@Benchmark
+	public PageAppender.Page parseAndAppend() throws IOException {
+		return appender.append(body, OutputStream.nullOutputStream());
+	}
+}
@@ -0,0 +1,108 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.extractor.PageAppender;
+import com.td.uploader.StreamingEncryptor;
+import com.td.uploader.TimedInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the hot-path instrumentation against the work it measures, on a Prometheus registry with
+ * percentile histograms as the services run it: one extractor page (100 records) with and without
+ * its latency/records meters, one 4 MB upload stream read plain and through TimedInputStream, and
+ * the per-file meter lookups of ProcessorRoute/UploaderRoute on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+	private PrometheusMeterRegistry registry;
+	private Timer pageLatency;
+	private DistributionSummary pageRecords;
+	private Counter records;
+
+	private byte[] body;
+	private PageAppender appender;
+	private byte[] file;
+	private StreamingEncryptor encryptor;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		pageLatency = Timer.builder("extractor.page.latency").tag("extractor", "users").publishPercentileHistogram().register(registry);
+		pageRecords = DistributionSummary.builder("extractor.page.records").tag("extractor", "users").register(registry);
+		records = Counter.builder("extractor.records").tag("extractor", "users").register(registry);
+
+		body = DummyJsonData.page("users", 1000, 0, 100, new Random(42)).getBytes(StandardCharsets.UTF_8);
+		appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+
+		StringBuilder sb = new StringBuilder();
+		Random rnd = new Random(42);
+		for (long id = 0; sb.length() < 4 * 1024 * 1024; id++) sb.append(DummyJsonData.user(id, rnd)).append('\n');
+		file = sb.toString().getBytes(StandardCharsets.UTF_8);
+		encryptor = new StreamingEncryptor("AES/CBC/PKCS5Padding", new SecretKeySpec(new byte[32], "AES"), new byte[16]);
+	}
+
+	@Benchmark
+	public PageAppender.Page extractorPage() throws IOException {
+		return appender.append(body, OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public PageAppender.Page extractorPageMetered() throws IOException {
+		long t0 = System.nanoTime();
+		PageAppender.Page page = appender.append(body, OutputStream.nullOutputStream());
+		pageLatency.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+		pageRecords.record(page.count());
+		records.increment(page.count());
+		return page;
+	}
+
+	@Benchmark
+	public long uploadStream() throws Exception {
+		try (InputStream in = encryptor.encrypt(new ByteArrayInputStream(file))) {
+			return in.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	@Benchmark
+	public long uploadStreamTimed() throws Exception {
+		try (TimedInputStream in = new TimedInputStream(encryptor.encrypt(new ByteArrayInputStream(file)))) {
+			in.transferTo(OutputStream.nullOutputStream());
+			return in.bytes() + in.nanos();
+		}
+	}
+
+	// ProcessorRoute/UploaderRoute record(): meters looked up by name and tags once per file
+	@Benchmark
+	public void perFileMeters() {
+		registry.timer("processor.file.duration", "extractor", "users").record(1_000_000, TimeUnit.NANOSECONDS);
+		registry.counter("processor.records", "extractor", "users", "result", "valid").increment(95);
+		registry.counter("processor.records", "extractor", "users", "result", "invalid").increment(5);
+		registry.summary("processor.file.records.per.second", "extractor", "users").record(95_000);
+		registry.summary("processor.file.invalid.ratio", "extractor", "users").record(0.05);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		registry.close();
+	}
+}
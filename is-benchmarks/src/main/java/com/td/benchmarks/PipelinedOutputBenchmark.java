@@ -0,0 +1,102 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.processor.JsonlProcessor;
+import com.td.processor.RollingJsonlWriter;
+import com.td.processor.RuleSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extract-to-SFTP latency of one records_*.jsonl: validation plus the upload of its outputs over a
+ * simulated 40 MB/s link. partRecords=0 uploads etl/dlq once the whole file is validated (the default),
+ * otherwise each RollingJsonlWriter part is uploaded as soon as it is announced (PROCESSOR_PART_RECORDS).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PipelinedOutputBenchmark {
+
+	// Simulated SFTP link
+	static final double UPLOAD_BYTES_PER_SEC = 40e6;
+
+	@Param({"48"})
+	int sizeMb;
+
+	@Param({"0", "20000"})
+	int partRecords;
+
+	private Path dir, in, out;
+	private RuleSet rules;
+	private final Map<String,String> deptMap = new HashMap<>();
+	private JsonlProcessor processor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		dir = Files.createTempDirectory("bench-pipelined");
+		in = dir.resolve("records_bench.jsonl");
+		DummyJsonData.jsonl(in, sizeMb * 1024L * 1024L, new Random(42));
+		for (String d : DummyJsonData.DEPARTMENTS) deptMap.put(d, d.substring(0, 3).toUpperCase());
+		try (InputStream spec = getClass().getResourceAsStream("/rules/default.json")) {
+			rules = RuleSet.compile(mapper.readTree(spec));
+		}
+		processor = new JsonlProcessor(mapper, 1);
+	}
+
+	@Setup(Level.Invocation)
+	public void cleanOutput() throws IOException {
+		BenchmarkFiles.deleteTree(out);
+		out = Files.createDirectories(dir.resolve("out"));
+	}
+
+	@Benchmark
+	public JsonlProcessor.Result extractToSftp() throws Exception {
+		ExecutorService uploader = Executors.newSingleThreadExecutor();
+		Path ok = out.resolve("etl.jsonl"), dlq = out.resolve("invalid.jsonl");
+		try {
+			if (partRecords == 0) {
+				JsonlProcessor.Result r = processor.process(in, ok, dlq, rules, deptMap);
+				uploader.submit(() -> upload(ok));
+				uploader.submit(() -> upload(dlq));
+				return r;
+			}
+			RollingJsonlWriter.PartListener announce = (part, i, n) -> uploader.submit(() -> upload(part));
+			try (RollingJsonlWriter okParts = new RollingJsonlWriter(ok, partRecords, 0, announce);
+			     RollingJsonlWriter dlqParts = new RollingJsonlWriter(dlq, partRecords, 0, announce)) {
+				return processor.process(in, okParts, dlqParts, rules, deptMap);
+			}
+		} finally {
+			uploader.shutdown();
+			uploader.awaitTermination(5, TimeUnit.MINUTES);
+		}
+	}
+
+	/** Reads the file and holds the link for as long as its size takes at UPLOAD_BYTES_PER_SEC. */
+	static Void upload(Path p) throws Exception {
+		long bytes = Files.size(p);
+		Files.copy(p, OutputStream.nullOutputStream());
+		Thread.sleep((long) (bytes / UPLOAD_BYTES_PER_SEC * 1000));
+		return null;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		processor.close();
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,65 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.processor.JsonlProcessor;
+import com.td.processor.RuleSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProcessorRoute whole-file step: records_*.jsonl -> etl_*.jsonl + invalid_users_*.jsonl.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ProcessorFileBenchmark {
+
+	@Param({"1", "64", "1024"})
+	int sizeMb;
+
+	@Param({"1", "8"})
+	int parallelism;
+
+	private Path dir, in;
+	private RuleSet rules;
+	private final Map<String,String> deptMap = new HashMap<>();
+	private JsonlProcessor processor;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		dir = Files.createTempDirectory("bench-processor");
+		in = dir.resolve("records_bench.jsonl");
+		DummyJsonData.jsonl(in, sizeMb * 1024L * 1024L, new Random(42));
+		for (String d : DummyJsonData.DEPARTMENTS) deptMap.put(d, d.substring(0, 3).toUpperCase());
+		try (InputStream spec = getClass().getResourceAsStream("/rules/default.json")) {
+			rules = RuleSet.compile(mapper.readTree(spec));
+		}
+		processor = new JsonlProcessor(mapper, parallelism);
+	}
+
+	@Benchmark
+	public JsonlProcessor.Result processFile() throws IOException {
+		Path ok = dir.resolve("etl.jsonl"), dlq = dir.resolve("invalid.jsonl");
+		Files.deleteIfExists(ok);
+		Files.deleteIfExists(dlq);
+		return processor.process(in, ok, dlq, rules, deptMap);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		processor.close();
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,75 @@
+package com.td.benchmarks;
+
+import com.td.extractor.RecordIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delta mode (<KEY>_DELTA) per-record step: hash the record and look its id up in the memory-mapped
+ * RecordIndex. "unchanged" is the common case of a daily run, "changed" a record that differs from the last run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordIndexBenchmark {
+
+	private static final int VERSIONS = 64;
+
+	// Ids already in the index
+	@Param({"1000000"})
+	int ids;
+
+	private Path dir;
+	private RecordIndex index;
+	private long[] keys;
+	private final byte[][] records = new byte[VERSIONS][];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Random rnd = new Random(42);
+		for (int i = 0; i < VERSIONS; i++) records[i] = DummyJsonData.user(i, rnd).getBytes(StandardCharsets.UTF_8);
+		keys = new long[ids];
+		for (int i = 0; i < ids; i++) keys[i] = rnd.nextLong() & Long.MAX_VALUE;
+
+		dir = Files.createTempDirectory("bench-index");
+		index = new RecordIndex(dir.resolve("users.index"));
+		index.beginRun(true);
+		for (long id : keys) index.update(id, record(id, 0), 0, record(id, 0).length);
+		index.finishRun(id -> {});
+		index.beginRun(false);
+	}
+
+	private byte[] record(long id, int version) {
+		return records[(int) ((id + version) & (VERSIONS - 1))];
+	}
+
+	@Benchmark
+	public boolean unchanged() throws IOException {
+		long id = keys[next++ % ids];
+		byte[] r = record(id, 0);
+		return index.update(id, r, 0, r.length);
+	}
+
+	@Benchmark
+	public boolean changed() throws IOException {
+		long id = keys[next++ % ids];
+		// Compared with the hash of the last run, so it stays a change however often it is seen
+		byte[] r = record(id, 1);
+		return index.update(id, r, 0, r.length);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
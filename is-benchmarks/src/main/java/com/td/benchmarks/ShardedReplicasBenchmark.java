@@ -0,0 +1,122 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.processor.FileClaims;
+import com.td.processor.JsonlProcessor;
+import com.td.processor.RollingJsonlWriter;
+import com.td.processor.RuleSet;
+import com.td.processor.ShardedFiles;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PROCESSOR_SHARD_MB: one records_*.jsonl cut into line-aligned ranges that every replica works on,
+ * coordinated through Redis (embedded here). Replicas run in this JVM, each with its own claims,
+ * helper thread and a 2-thread validation pool, as ShardedFilesTest sets them up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ShardedReplicasBenchmark {
+
+	@Param({"64"})
+	int sizeMb;
+
+	@Param({"1", "3"})
+	int replicas;
+
+	@Param({"4"})
+	int rangeMb;
+
+	private RedisServer server;
+	private LettuceConnectionFactory cf;
+	private StringRedisTemplate redis;
+	private Path dir, in, out;
+	private RuleSet rules;
+	private final Map<String,String> deptMap = new HashMap<>();
+	private final List<AutoCloseable> running = new ArrayList<>();
+	private final List<ShardedFiles> shards = new ArrayList<>();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		int port;
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+		server = new RedisServer(port);
+		server.start();
+		cf = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		cf.afterPropertiesSet();
+		cf.start();
+		redis = new StringRedisTemplate(cf);
+
+		ObjectMapper mapper = new ObjectMapper();
+		dir = Files.createTempDirectory("bench-sharded");
+		in = dir.resolve("records_bench.jsonl");
+		DummyJsonData.jsonl(in, sizeMb * 1024L * 1024L, new Random(42));
+		for (String d : DummyJsonData.DEPARTMENTS) deptMap.put(d, d.substring(0, 3).toUpperCase());
+		try (InputStream spec = getClass().getResourceAsStream("/rules/default.json")) {
+			rules = RuleSet.compile(mapper.readTree(spec));
+		}
+
+		for (int i = 0; i < replicas; i++) {
+			FileClaims claims = new FileClaims(cf, "p" + i, Duration.ofSeconds(5), Duration.ofMinutes(5));
+			claims.start();
+			JsonlProcessor processor = new JsonlProcessor(mapper, 2);
+			ShardedFiles replica = new ShardedFiles(cf, claims, (job, range, lines) -> {
+				RollingJsonlWriter ok = new RollingJsonlWriter(Path.of(job.okBase()), range + 1, (part, index, n) -> {});
+				RollingJsonlWriter dlq = new RollingJsonlWriter(Path.of(job.dlqBase()), range + 1, (part, index, n) -> {});
+				try (ok; dlq) {
+					return processor.process(lines, ok, dlq, rules, deptMap);
+				}
+			}, Duration.ofMillis(20));
+			replica.start();
+			shards.add(replica);
+			running.add(() -> {
+				replica.stop();
+				processor.close();
+				claims.stop();
+			});
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void cleanOutput() throws IOException {
+		BenchmarkFiles.deleteTree(out);
+		out = Files.createDirectories(dir.resolve("out"));
+		redis.delete(redis.keys("processor:*"));
+	}
+
+	@Benchmark
+	public JsonlProcessor.Result processShared() throws IOException, InterruptedException {
+		return shards.get(0).run(in, "users", out.resolve("etl_1.jsonl"), out.resolve("invalid_users_1.jsonl"),
+				rangeMb * 1024L * 1024L);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		for (AutoCloseable r : running) r.close();
+		cf.destroy();
+		server.stop();
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,134 @@
+package com.td.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.td.extractor.ConcurrentPager;
+import com.td.extractor.PageClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extraction against a rate-limited API (a 100 req/s token bucket answering 429), 8 pages in flight:
+ * a fixed 200 ms sleep after every 429 against PageClient's adaptive limiter. The requests counter
+ * shows how many were wasted on retries ({@code pages} of them are needed).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ThrottledApiBenchmark {
+
+	static final int LIMIT = 10, LATENCY_MS = 5;
+	static final double SERVER_RPS = 100;
+
+	@Param({"400"})
+	int pages;
+
+	@Param({"fixedRetry", "adaptive"})
+	String client;
+
+	private HttpServer server;
+	private byte[][] bodies;
+	private final AtomicLong requests = new AtomicLong();
+	private double tokens = 10;
+	private long refilled = System.nanoTime();
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Requests {
+		public long requests;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Random rnd = new Random(42);
+		bodies = new byte[pages][];
+		for (int p = 0; p < pages; p++)
+			bodies[p] = DummyJsonData.page("users", pages * LIMIT, p * LIMIT, LIMIT, rnd).getBytes(StandardCharsets.UTF_8);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/users", this::handle);
+		server.start();
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		requests.incrementAndGet();
+		try {
+			Thread.sleep(LATENCY_MS);
+		} catch (InterruptedException ignore) { }
+		if (!take()) {
+			ex.sendResponseHeaders(429, -1);
+			ex.close();
+			return;
+		}
+		int skip = Integer.parseInt(ex.getRequestURI().getQuery().replaceAll(".*skip=(\\d+).*", "$1"));
+		byte[] b = bodies[skip / LIMIT];
+		ex.sendResponseHeaders(200, b.length);
+		try (OutputStream os = ex.getResponseBody()) { os.write(b); }
+	}
+
+	// Token bucket of SERVER_RPS, burst 10
+	private synchronized boolean take() {
+		long now = System.nanoTime();
+		tokens = Math.min(10, tokens + (now - refilled) / 1e9 * SERVER_RPS);
+		refilled = now;
+		if (tokens < 1) return false;
+		tokens--;
+		return true;
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/users";
+	}
+
+	@Setup(Level.Invocation)
+	public void refill() throws InterruptedException {
+		Thread.sleep(200);
+		requests.set(0);
+	}
+
+	@Benchmark
+	public void extract(Requests r) throws Exception {
+		ConcurrentPager.Fetcher fetcher;
+		if (client.equals("adaptive")) {
+			PageClient pc = new PageClient(new PageClient.Settings(url(), Duration.ofSeconds(2), Duration.ofSeconds(2), 20,
+					Duration.ofMillis(50), false, 0), new SimpleMeterRegistry(), "users");
+			fetcher = skip -> pc.fetch("limit=" + LIMIT + "&skip=" + skip);
+		} else {
+			HttpClient plain = HttpClient.newHttpClient();
+			fetcher = skip -> {
+				URI uri = URI.create(url() + "?limit=" + LIMIT + "&skip=" + skip);
+				while (true) {
+					HttpResponse<byte[]> resp = plain.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+					if (resp.statusCode() == 200) return resp.body();
+					Thread.sleep(200);
+				}
+			};
+		}
+		// The first page, then the rest with 8 in flight, as the route does
+		fetcher.fetch(0);
+		new ConcurrentPager(8).fetchAll(LIMIT, pages * LIMIT, LIMIT, fetcher, (skip, body) -> {});
+		r.requests = requests.get();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+	}
+}
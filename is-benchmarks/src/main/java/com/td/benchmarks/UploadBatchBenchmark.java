@@ -0,0 +1,96 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.td.common.DataCodec;
+import com.td.uploader.BatchArchive;
+import com.td.uploader.StreamingEncryptor;
+import com.td.uploader.UploadBatcher;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UPLOADER_BATCH on many small DLQ files: each one gzipped and encrypted on its own, as the route uploads
+ * them without batching, against zip archives of {@code batchFiles} members built by BatchArchive.
+ * What would go over SFTP is reported as the wireBytes / transfers counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class UploadBatchBenchmark {
+
+	@Param({"2000"})
+	int files;
+
+	@Param({"500"})
+	int batchFiles;
+
+	private Path dir;
+	private final List<UploadBatcher.Member> dlq = new ArrayList<>();
+	private StreamingEncryptor encryptor;
+	private final ObjectWriter json = new ObjectMapper().writer();
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Wire {
+		public long wireBytes;
+		public long transfers;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("bench-batch");
+		Random rnd = new Random(42);
+		// A few rejected records per file
+		for (int i = 0; i < files; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int r = 0; r < 1 + i % 5; r++) sb.append(DummyJsonData.user(i * 10L + r, rnd)).append('\n');
+			Path p = Files.writeString(dir.resolve("invalid_users_" + i + ".jsonl"), sb);
+			dlq.add(new UploadBatcher.Member("users", "DLQ", p, p.getFileName().toString(), Files.size(p),
+					Files.getLastModifiedTime(p).toMillis()));
+		}
+		encryptor = new StreamingEncryptor("AES/CBC/PKCS5Padding", new SecretKeySpec(new byte[32], "AES"), new byte[16]);
+	}
+
+	@Benchmark
+	public void oneFileEach(Wire w) throws IOException {
+		for (UploadBatcher.Member m : dlq) {
+			try (InputStream in = encryptor.encrypt(DataCodec.GZIP.compress(Files.newInputStream(m.path())))) {
+				w.wireBytes += in.transferTo(OutputStream.nullOutputStream());
+			}
+			w.transfers++;
+		}
+	}
+
+	@Benchmark
+	public void batched(Wire w) {
+		UploadBatcher batcher = new UploadBatcher(new UploadBatcher.Settings(batchFiles, 64L << 20, 1 << 20,
+				Duration.ofMinutes(1)), b -> {
+			try (InputStream in = encryptor.encrypt(DataCodec.GZIP.compress(new BatchArchive(b, BatchArchive.name(b), json)))) {
+				w.wireBytes += in.transferTo(OutputStream.nullOutputStream());
+			}
+			w.transfers++;
+		});
+		dlq.forEach(batcher::offer);
+		batcher.flush();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkFiles.deleteTree(dir);
+	}
+}
@@ -0,0 +1,92 @@
+package com.td.benchmarks;
+
+import com.td.uploader.StreamingEncryptor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.converter.crypto.CryptoDataFormat;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UploaderRoute encrypt step on a JSONL file: the chunked StreamingEncryptor used by the route,
+ * against the former CryptoDataFormat marshal (AES/CBC/PKCS5Padding, fixed IV, no HMAC).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class UploaderBenchmark {
+
+	@Param({"1", "64", "1024"})
+	int sizeMb;
+
+	private Path dir, in;
+	private CamelContext context;
+	private CryptoDataFormat crypto;
+	private StreamingEncryptor encryptor;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		dir = Files.createTempDirectory("bench-uploader");
+		in = dir.resolve("etl_bench.jsonl");
+		DummyJsonData.jsonl(in, sizeMb * 1024L * 1024L, new Random(42));
+
+		byte[] key = new byte[32], iv = new byte[16];
+		SecureRandom rnd = new SecureRandom();
+		rnd.nextBytes(key);
+		rnd.nextBytes(iv);
+		crypto = new CryptoDataFormat("AES/CBC/PKCS5Padding", new SecretKeySpec(key, "AES"));
+		crypto.setInitializationVector(iv);
+		crypto.setShouldAppendHMAC(false);
+		encryptor = new StreamingEncryptor("AES/CBC/PKCS5Padding", new SecretKeySpec(key, "AES"), iv);
+
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	@Benchmark
+	public long streamingEncrypt() throws Exception {
+		try (InputStream enc = encryptor.open(in)) {
+			return enc.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	@Benchmark
+	public long cryptoDataFormat() throws Exception {
+		Exchange e = new DefaultExchange(context);
+		CountingOutputStream out = new CountingOutputStream();
+		try (InputStream plain = Files.newInputStream(in)) {
+			crypto.marshal(e, plain, out);
+		}
+		return out.count;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.stop();
+		BenchmarkFiles.deleteTree(dir);
+	}
+
+	static final class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) { count++; }
+
+		@Override
+		public void write(byte[] b, int off, int len) { count += len; }
+	}
+}
@@ -0,0 +1,82 @@
+package com.td.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.td.processor.RuleSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ProcessorRoute per-record step: parse a JSONL line, validate/enrich it and serialise it back.
+ * "legacy" runs the checks that used to be hardcoded in ProcessorRoute (a List of errors and a regex per
+ * record), "compiled" the RuleSet built from rules/default.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+	private static final int SAMPLES = 1024;
+
+	private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final String[] lines = new String[SAMPLES];
+	private final Map<String,String> deptMap = new HashMap<>();
+	private RuleSet rules;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		Random rnd = new Random(42);
+		for (int i = 0; i < SAMPLES; i++) lines[i] = DummyJsonData.user(i + 1, rnd);
+		for (String d : DummyJsonData.DEPARTMENTS) deptMap.put(d, d.substring(0, 3).toUpperCase());
+		try (InputStream in = getClass().getResourceAsStream("/rules/default.json")) {
+			rules = RuleSet.compile(mapper.readTree(in));
+		}
+	}
+
+	@Benchmark
+	public String validateLegacy() throws IOException {
+		ObjectNode u = (ObjectNode) mapper.readTree(lines[next++ & (SAMPLES - 1)]);
+		legacy(u);
+		return u.toString();
+	}
+
+	@Benchmark
+	public String validateCompiled() throws IOException {
+		ObjectNode u = (ObjectNode) mapper.readTree(lines[next++ & (SAMPLES - 1)]);
+		rules.apply(u, deptMap);
+		return u.toString();
+	}
+
+	// As in the former ProcessorRoute (RuleSetTest keeps the same copy as the reference behaviour)
+	private boolean legacy(ObjectNode u) {
+		List<String> errs = new ArrayList<>();
+		if (!u.has("id") || !u.get("id").canConvertToInt()) errs.add("Id must be integer");
+		if (!u.has("firstName") || u.get("firstName").asText().isBlank()) errs.add("FirstName empty");
+		if (!u.has("email") || !EMAIL.matcher(u.get("email").asText()).matches()) errs.add("Invalid Email");
+		if (!u.has("age") || u.get("age").asInt() < 18 || u.get("age").asInt() > 65) errs.add("Age out of range (18-65)");
+		if (!u.has("company") || !u.get("company").has("department")
+				|| u.get("company").get("department").asText().isBlank())
+			errs.add("Company.department empty");
+		if (!errs.isEmpty()) {
+			u.put("error_reason", String.join("; ", errs));
+			return false;
+		}
+		u.put("department_code", deptMap.getOrDefault(u.get("company").get("department").asText(), "UNK"));
+		return true;
+	}
+}
@@ -0,0 +1,145 @@
+package com.td.common;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of the JSONL files on /data (DATA_CODEC=none|gzip|zstd). A file's codec is told by its
+ * extension (records_X.jsonl.gz, etl_X.jsonl.zst), so inputs are read whatever DATA_CODEC was when
+ * they were written. Appending to a compressed file adds a gzip member / zstd frame, which both
+ * decoders read back as one stream.
+ * <p>
+ * A compressed stream is only complete once it is closed: close() writes the gzip trailer / ends the
+ * zstd frame. flush() is no sync point for either codec (aircompressor's zstd flush writes nothing),
+ * so writers close the stream after every append.
+ */
+public enum DataCodec {
+
+	NONE(""),
+	GZIP(".gz"),
+	ZSTD(".zst");
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String extension;
+
+	DataCodec(String extension) {
+		this.extension = extension;
+	}
+
+	public String extension() {
+		return extension;
+	}
+
+	public static DataCodec of(String name) {
+		if (name == null || name.isBlank()) return NONE;
+		return switch (name.trim().toLowerCase(Locale.ROOT)) {
+			case "none" -> NONE;
+			case "gzip", "gz" -> GZIP;
+			case "zstd", "zst" -> ZSTD;
+			default -> throw new IllegalArgumentException("Unknown DATA_CODEC: " + name);
+		};
+	}
+
+	public static DataCodec forFile(Path file) {
+		String name = file.getFileName().toString();
+		if (name.endsWith(GZIP.extension)) return GZIP;
+		if (name.endsWith(ZSTD.extension)) return ZSTD;
+		return NONE;
+	}
+
+	/** File name without this codec's extension. */
+	public String strip(String fileName) {
+		return fileName.endsWith(extension) ? fileName.substring(0, fileName.length() - extension.length()) : fileName;
+	}
+
+	/** Compressing stream over {@code out}; the data is complete once it is closed. */
+	public OutputStream compress(OutputStream out) throws IOException {
+		return switch (this) {
+			case NONE -> out;
+			case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE);
+			case ZSTD -> new ZstdOutputStream(out);
+		};
+	}
+
+	/** Compressed view of {@code plain}, produced chunk by chunk as it is read. */
+	public InputStream compress(InputStream plain) throws IOException {
+		return this == NONE ? plain : new CompressingInputStream(this, plain);
+	}
+
+	public InputStream decompress(InputStream in) throws IOException {
+		return switch (this) {
+			case NONE -> in;
+			case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+			case ZSTD -> new ZstdInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		};
+	}
+
+	/** Pulls plaintext, pushes it through the codec's OutputStream into a buffer, serves the buffer. */
+	private static final class CompressingInputStream extends InputStream {
+
+		private final InputStream plain;
+		private final Buffer compressed = new Buffer();
+		private final OutputStream encoder;
+		private final byte[] chunk = new byte[BUFFER_SIZE];
+		private int pos;
+		private boolean finished;
+
+		CompressingInputStream(DataCodec codec, InputStream plain) throws IOException {
+			this.plain = plain;
+			this.encoder = codec.compress(compressed);
+		}
+
+		private boolean fill() throws IOException {
+			while (pos >= compressed.size()) {
+				if (finished) return false;
+				compressed.reset();
+				pos = 0;
+				int n = plain.read(chunk);
+				if (n < 0) {
+					encoder.close(); // writes the trailer
+					finished = true;
+				} else {
+					encoder.write(chunk, 0, n);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return fill() ? compressed.bytes()[pos++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (!fill()) return -1;
+			int n = Math.min(len, compressed.size() - pos);
+			System.arraycopy(compressed.bytes(), pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			plain.close();
+		}
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(BUFFER_SIZE);
+		}
+
+		byte[] bytes() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.td.common;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Event announcing a file on the Redis channel/stream: RAW (extractor output), TOMBSTONES (ids gone since
+ * the last delta run), PROCESSED (valid records) or DLQ (invalid records, or an extraction that failed for
+ * good). Null fields are left out of the JSON and unknown fields are ignored on read (see JsonConfig);
+ * part is set when the processor publishes its output in parts (PROCESSOR_PART_*).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FileEvent(String type, String extractor, String path, Integer part, String error, Integer skip) {
+
+	public static FileEvent raw(String extractor, String path) {
+		return new FileEvent("RAW", extractor, path, null, null, null);
+	}
+
+	public static FileEvent tombstones(String extractor, String path) {
+		return new FileEvent("TOMBSTONES", extractor, path, null, null, null);
+	}
+
+	public static FileEvent failed(String extractor, String error, int skip) {
+		return new FileEvent("DLQ", extractor, null, null, error, skip);
+	}
+
+	public static FileEvent processed(String extractor, String path, Integer part) {
+		return new FileEvent("PROCESSED", extractor, path, part, null, null);
+	}
+
+	public static FileEvent dlq(String extractor, String path, Integer part) {
+		return new FileEvent("DLQ", extractor, path, part, null, null);
+	}
+}
@@ -0,0 +1,63 @@
+package com.td.common;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.camel.ProducerTemplate;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Publishes file events for all routes. The JSON comes from one shared ObjectWriter and, with the default
+ * REDIS_TRANSPORT=pubsub, goes out through Camel's shared ProducerTemplate (producers are cached per endpoint).
+ * With REDIS_TRANSPORT=streams the event is appended (XADD) to a Redis Stream named like the channel,
+ * where it waits until an uploader consumer group acknowledges it.
+ * <p>
+ * Declared as a bean by each service with its own PUBLISH endpoint (the processor names the Redis host and port).
+ */
+public class FileEventPublisher {
+
+	/** Field of the stream entry that carries the event JSON. */
+	public static final String FIELD = "event";
+
+	private final StringRedisTemplate redis;
+	private final ProducerTemplate template;
+	private final String publishUri;
+	private final ObjectWriter writer;
+	private final boolean streams;
+	private final long maxLen;
+
+	/** {@code publishUri} is the spring-redis PUBLISH endpoint up to "channel=", e.g. "spring-redis://?command=PUBLISH&channel=". */
+	public FileEventPublisher(LettuceConnectionFactory cf, ProducerTemplate template, ObjectMapper mapper, Environment env,
+	                          String publishUri) {
+		this.redis = new StringRedisTemplate(cf);
+		this.template = template;
+		this.publishUri = publishUri;
+		this.writer = mapper.writerFor(FileEvent.class);
+		this.streams = env.getProperty("REDIS_TRANSPORT", "pubsub").trim().equalsIgnoreCase("streams");
+		this.maxLen = Long.parseLong(env.getProperty("REDIS_STREAM_MAXLEN", "100000"));
+	}
+
+	/** Sends the event to the channel (or stream) and returns the JSON that was sent. */
+	public String publish(String channel, FileEvent event) throws JsonProcessingException {
+		String json = writer.writeValueAsString(event);
+		if (streams) append(channel, json);
+		else template.sendBody(publishUri + channel, json);
+		return json;
+	}
+
+	// XADD stream MAXLEN ~ maxLen * event json
+	private void append(String stream, String json) {
+		byte[] key = stream.getBytes(StandardCharsets.UTF_8);
+		Map<byte[], byte[]> entry = Map.of(FIELD.getBytes(StandardCharsets.UTF_8), json.getBytes(StandardCharsets.UTF_8));
+		redis.execute((RedisCallback<Object>) c -> c.streamCommands().xAdd(
+				StreamRecords.rawBytes(entry).withStreamKey(key), XAddOptions.maxlen(maxLen).approximateTrimming(true)));
+	}
+}
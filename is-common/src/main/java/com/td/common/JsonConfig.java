@@ -0,0 +1,17 @@
+package com.td.common;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/** Imported by each service's application class (it sits outside their component scan). */
+@Configuration
+public class JsonConfig {
+
+	// One mapper for the whole service: thread-safe once configured, so routes and components share it
+	@Bean
+	public ObjectMapper objectMapper() {
+		return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+}
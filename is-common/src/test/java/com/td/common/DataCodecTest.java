@@ -0,0 +1,118 @@
+package com.td.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataCodecTest {
+
+	@TempDir
+	Path tmp;
+
+	static byte[] jsonl(int records) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < records; i++)
+			sb.append("{\"id\":").append(i).append(",\"firstName\":\"User").append(i)
+					.append("\",\"email\":\"user").append(i).append("@x.com\",\"department\":\"Engineering\"}\n");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	// One append as the extractor and processor do it: open, write, close (which ends the member / frame)
+	static void append(Path file, DataCodec codec, byte[] data) throws IOException {
+		try (OutputStream out = codec.compress(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			out.write(data);
+		}
+	}
+
+	static byte[] read(Path file) throws IOException {
+		try (InputStream in = DataCodec.forFile(file).decompress(Files.newInputStream(file))) {
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	void namesAndExtensions() {
+		assertEquals(DataCodec.NONE, DataCodec.of(""));
+		assertEquals(DataCodec.GZIP, DataCodec.of("gzip"));
+		assertEquals(DataCodec.ZSTD, DataCodec.of("ZSTD"));
+		assertThrows(IllegalArgumentException.class, () -> DataCodec.of("lz4"));
+		assertEquals(DataCodec.NONE, DataCodec.forFile(Path.of("/data/processed_users/users/etl_1.jsonl")));
+		assertEquals(DataCodec.GZIP, DataCodec.forFile(Path.of("/data/raw_users/users/records_1.jsonl.gz")));
+		assertEquals(DataCodec.ZSTD, DataCodec.forFile(Path.of("/data/dlq/users/invalid_users_1.jsonl.zst")));
+		assertEquals("etl_1.jsonl", DataCodec.ZSTD.strip("etl_1.jsonl.zst"));
+		assertEquals("etl_1.jsonl", DataCodec.GZIP.strip("etl_1.jsonl"));
+	}
+
+	@Test
+	void appendedMembersAndFramesReadAsOneStream() throws Exception {
+		byte[] first = jsonl(3), second = "{\"id\":99}\n".getBytes(StandardCharsets.UTF_8);
+		for (DataCodec codec : DataCodec.values()) {
+			Path f = tmp.resolve("records_1.jsonl" + codec.extension());
+			append(f, codec, first);
+			append(f, codec, second);
+			append(f, codec, new byte[0]);
+			assertEquals(codec, DataCodec.forFile(f));
+			ByteArrayOutputStream both = new ByteArrayOutputStream();
+			both.write(first);
+			both.write(second);
+			assertArrayEquals(both.toByteArray(), read(f), codec.name());
+		}
+	}
+
+	@Test
+	void zstdRoundTrips() throws Exception {
+		for (int records : new int[]{0, 1, 50_000}) {
+			byte[] plain = jsonl(records);
+
+			// Written through compress(OutputStream), as the extractor and processor do
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			try (OutputStream out = DataCodec.ZSTD.compress(written)) {
+				for (int off = 0; off < plain.length; off += 1000) out.write(plain, off, Math.min(1000, plain.length - off));
+			}
+			// Pulled through compress(InputStream), as the uploader does
+			byte[] pulled;
+			try (InputStream in = DataCodec.ZSTD.compress(new ByteArrayInputStream(plain))) {
+				pulled = in.readAllBytes();
+			}
+
+			for (byte[] compressed : new byte[][]{written.toByteArray(), pulled}) {
+				try (InputStream in = DataCodec.ZSTD.decompress(new ByteArrayInputStream(compressed))) {
+					assertArrayEquals(plain, in.readAllBytes(), records + " records");
+				}
+				if (records == 50_000) assertTrue(compressed.length * 4 < plain.length, "compresses");
+			}
+		}
+	}
+
+	@Test
+	void compressedViewRoundTripsAndReadsTheSameByteByByte() throws Exception {
+		byte[] plain = jsonl(2_000);
+		for (DataCodec codec : new DataCodec[]{DataCodec.GZIP, DataCodec.ZSTD}) {
+			byte[] bulk;
+			try (InputStream in = codec.compress(new ByteArrayInputStream(plain))) {
+				bulk = in.readAllBytes();
+			}
+			ByteArrayOutputStream single = new ByteArrayOutputStream();
+			try (InputStream in = codec.compress(new ByteArrayInputStream(plain))) {
+				for (int b; (b = in.read()) >= 0; ) single.write(b);
+			}
+			assertArrayEquals(bulk, single.toByteArray(), codec.name());
+			try (InputStream in = codec.decompress(new ByteArrayInputStream(bulk))) {
+				assertArrayEquals(plain, in.readAllBytes(), codec.name());
+			}
+		}
+		InputStream none = InputStream.nullInputStream();
+		assertSame(none, DataCodec.NONE.compress(none));
+	}
+}
@@ -0,0 +1,71 @@
+package com.td.extractor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the requests to one API by what the server answers (AIMD): request starts are spaced 1/rate apart,
+ * the rate halves when the server throttles (429/5xx) and grows back by about 10% per second of clean answers,
+ * up to {@code ceiling}. A Retry-After holds every request back until it has passed.
+ * <p>
+ * With no ceiling requests are not paced at all until the first throttling answer, whose rate is then taken
+ * from the recent request spacing. Throttling answers to requests sent before the last decrease are the same
+ * overload seen again by requests already in flight, so they do not halve the rate once more.
+ */
+public class AdaptiveRateLimiter {
+
+	static final double MIN_RATE = 0.5;    // requests/s
+	private static final double GROWTH = 0.1; // per clean answer: ~10% a second at full rate
+
+	private final double ceiling;
+	private double rate;              // requests/s, infinite = not paced
+	private long next;                // start of the next free slot (System.nanoTime)
+	private long pausedUntil;
+	private long lastDecrease = Long.MIN_VALUE;
+	private long lastStart;
+	private double spacing;           // moving average of the time between request starts, nanos
+
+	/** {@code ceiling} in requests/s; 0 or less for none. */
+	public AdaptiveRateLimiter(double ceiling) {
+		this.ceiling = ceiling > 0 ? ceiling : Double.POSITIVE_INFINITY;
+		this.rate = this.ceiling;
+	}
+
+	/** Waits for this request's slot and returns its start time, to be given back to {@link #onThrottle}. */
+	public long acquire() throws InterruptedException {
+		long at;
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			at = Math.max(now, Math.max(next, pausedUntil));
+			next = Double.isInfinite(rate) ? at : at + (long) (1e9 / rate);
+			if (lastStart != 0) spacing = spacing == 0 ? at - lastStart : 0.9 * spacing + 0.1 * (at - lastStart);
+			lastStart = at;
+			wait = at - now;
+		}
+		if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+		return at;
+	}
+
+	public synchronized void onSuccess() {
+		if (!Double.isInfinite(rate)) rate = Math.min(ceiling, rate + GROWTH);
+	}
+
+	/**
+	 * The request started at {@code startedAt} was throttled; {@code retryAfterNanos} is the server's
+	 * Retry-After, or a negative value when it sent none.
+	 */
+	public synchronized void onThrottle(long startedAt, long retryAfterNanos) {
+		long now = System.nanoTime();
+		if (retryAfterNanos > 0) pausedUntil = Math.max(pausedUntil, now + retryAfterNanos);
+		if (startedAt <= lastDecrease) return;
+		double current = Double.isInfinite(rate) ? (spacing > 0 ? 1e9 / spacing : MIN_RATE * 2) : rate;
+		rate = Math.max(MIN_RATE, current / 2);
+		lastDecrease = now;
+		next = Math.max(next, now + (long) (1e9 / rate));
+	}
+
+	/** Current allowed rate in requests/s, 0 while not paced. */
+	public synchronized double rate() {
+		return Double.isInfinite(rate) ? 0 : rate;
+	}
+}
@@ -0,0 +1,110 @@
+package com.td.extractor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Pagination checkpoint of one extractor: the raw file, its size after the last complete page and the
+ * skip to resume from, committed together as one record. Each commit is a store into a small
+ * memory-mapped file, not a file rewrite.
+ * The file holds two slots written alternately, each with a sequence number and a CRC, so a commit
+ * cut short by a crash leaves the previous one readable. A page written to the raw file but never
+ * committed is cut off again by {@link #rollback(Path)} before the next page is written.
+ * The OS writes the mapping back even if the JVM dies; with {@code sync} every commit is also
+ * fsynced (raw file first), which survives power loss too.
+ */
+public final class CheckpointStore {
+
+	public record Checkpoint(String rawFile, long offset, int skip) {}
+
+	static final int SLOT = 512;
+	private static final int HEADER = 8 + 4 + 8 + 2;       // seq, skip, offset, path length
+	private static final int MAX_PATH = SLOT - HEADER - 4; // the CRC ends the slot
+
+	private final MappedByteBuffer map;
+	private final boolean sync;
+	private long seq;
+	private Checkpoint last;
+
+	public CheckpointStore(Path file, boolean sync) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid once the channel is closed
+			this.map = ch.map(FileChannel.MapMode.READ_WRITE, 0, 2 * SLOT);
+		}
+		this.sync = sync;
+		for (int i = 0; i < 2; i++) read(i);
+	}
+
+	/** Last committed checkpoint of an unfinished run, or null when the previous run completed. */
+	public synchronized Checkpoint last() {
+		return last == null || last.rawFile().isEmpty() ? null : last;
+	}
+
+	/** Starts a run on a new raw file, so a kill before its first commit still leaves no stray bytes behind. */
+	public synchronized void begin(Path raw, int skip) {
+		write(new Checkpoint(raw.toString(), 0, skip));
+	}
+
+	/** Commits {@code raw} as it is now (its last page closed) together with the skip that follows it. */
+	public synchronized void commit(Path raw, int skip) throws IOException {
+		if (sync) {
+			try (FileChannel ch = FileChannel.open(raw, StandardOpenOption.WRITE)) {
+				ch.force(true);
+			}
+		}
+		write(new Checkpoint(raw.toString(), Files.size(raw), skip));
+	}
+
+	/** The run completed: the next one starts a new raw file from skip 0. */
+	public synchronized void clear() {
+		write(new Checkpoint("", 0, 0));
+	}
+
+	/** Truncates {@code raw} to its committed size, dropping whatever a failed or killed attempt left after it. */
+	public synchronized void rollback(Path raw) throws IOException {
+		long keep = last != null && last.rawFile().equals(raw.toString()) ? last.offset() : 0;
+		if (!Files.exists(raw) || Files.size(raw) <= keep) return;
+		try (FileChannel ch = FileChannel.open(raw, StandardOpenOption.WRITE)) {
+			ch.truncate(keep);
+		}
+	}
+
+	private void write(Checkpoint cp) {
+		byte[] path = cp.rawFile().getBytes(StandardCharsets.UTF_8);
+		if (path.length > MAX_PATH) throw new IllegalArgumentException("Path too long for a checkpoint: " + cp.rawFile());
+		long next = seq + 1;
+		ByteBuffer slot = map.slice((int) (next & 1) * SLOT, SLOT);
+		slot.putLong(next).putInt(cp.skip()).putLong(cp.offset()).putShort((short) path.length).put(path);
+		slot.putInt(SLOT - 4, crc(slot, HEADER + path.length));
+		if (sync) map.force((int) (next & 1) * SLOT, SLOT);
+		seq = next;
+		last = cp;
+	}
+
+	private void read(int i) {
+		ByteBuffer slot = map.slice(i * SLOT, SLOT);
+		long s = slot.getLong();
+		int skip = slot.getInt();
+		long offset = slot.getLong();
+		int len = slot.getShort();
+		if (s <= seq || len < 0 || len > MAX_PATH || slot.getInt(SLOT - 4) != crc(slot, HEADER + len)) return;
+		byte[] path = new byte[len];
+		slot.get(path);
+		seq = s;
+		last = new Checkpoint(new String(path, StandardCharsets.UTF_8), offset, skip);
+	}
+
+	private static int crc(ByteBuffer slot, int len) {
+		CRC32C crc = new CRC32C();
+		crc.update(slot.slice(0, len));
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,69 @@
+package com.td.extractor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the remaining pages of an extraction concurrently once the first page has given us {@code total}.
+ * Up to {@code concurrency} requests are in flight (one virtual thread each) and pages are handed
+ * to the sink strictly in offset order, so the raw file and the resume state stay sequential.
+ */
+public class ConcurrentPager {
+
+	@FunctionalInterface
+	public interface Fetcher {
+		byte[] fetch(int skip) throws Exception;
+	}
+
+	@FunctionalInterface
+	public interface Sink {
+		void accept(int skip, byte[] body) throws Exception;
+	}
+
+	private record InFlight(int skip, Future<byte[]> body) {}
+
+	private final int concurrency;
+
+	public ConcurrentPager(int concurrency) {
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * Requests every offset from {@code from} (inclusive) to {@code total} in steps of {@code stride}.
+	 * The first failure cancels the pending requests and is rethrown; pages already given to the sink stay written.
+	 */
+	public void fetchAll(int from, int total, int stride, Fetcher fetcher, Sink sink) throws Exception {
+		if (stride <= 0) throw new IllegalArgumentException("stride must be > 0");
+
+		Deque<InFlight> window = new ArrayDeque<>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			int next = from;
+			try {
+				while (next < total || !window.isEmpty()) {
+					while (next < total && window.size() < concurrency) {
+						int skip = next;
+						window.add(new InFlight(skip, executor.submit(() -> fetcher.fetch(skip))));
+						next += stride;
+					}
+					InFlight head = window.poll();
+					sink.accept(head.skip(), await(head.body()));
+				}
+			} finally {
+				window.forEach(f -> f.body().cancel(true));
+			}
+		}
+	}
+
+	private static byte[] await(Future<byte[]> f) throws Exception {
+		try {
+			return f.get();
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Exception cause) throw cause;
+			throw ex;
+		}
+	}
+}
@@ -1,18 +1,29 @@
 package com.td.extractor;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.td.common.DataCodec;
+import com.td.common.FileEvent;
+import com.td.common.FileEventPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
@@ -20,13 +31,27 @@ import java.util.Arrays;
 @Component
 public class ExtractorRoute extends RouteBuilder {
 
+	private static final String PART = ".part";
+
 	private final Environment env;
-	public ExtractorRoute(Environment env) { this.env = env; }
+	private final FileEventPublisher events;
+	private final ObjectMapper mapper;
+	private final DataCodec codec;
+	private final MeterRegistry registry;
+	private final String dataDir;
+	public ExtractorRoute(Environment env, FileEventPublisher events, ObjectMapper mapper, MeterRegistry registry) {
+		this.env = env;
+		this.events = events;
+		this.mapper = mapper;
+		this.registry = registry;
+		this.codec = DataCodec.of(env.getProperty("DATA_CODEC", "none")); // raw files: .jsonl, .jsonl.gz or .jsonl.zst
+		this.dataDir = defaultValue("DATA_DIR", "/data");
+	}
 
 	@Override
 	public void configure() {
 
-		// Retries con backoff 5s -> 15s -> 45s
+		// Page requests are retried by PageClient; this backoff (5s -> 15s -> 45s) is the last resort
 		errorHandler(defaultErrorHandler()
 				.maximumRedeliveries(3) // Number of attempts
 				.redeliveryDelay(5000) //5seconds
@@ -34,20 +59,17 @@ public class ExtractorRoute extends RouteBuilder {
 				.backOffMultiplier(3.0)); // 1*5 = 5s , 3*5 = 15s, 6*5 = 30s
 
 		// When all retries fail, store the message in the Dead Letter Queue.
+		final String dlqChannel = defaultValue("REDIS_DLQ_CHANNEL", "files.dlq");
 		onException(Exception.class)
 				.handled(true)
 				.process(e -> {
-					ObjectMapper m = new ObjectMapper();
 					String extractor = (String) e.getProperty("extractor"); //This will be set on extraction
-					String payload = m.createObjectNode()
-							.put("type", "DLQ")
-							.put("extractor", extractor == null ? "unknown" : extractor)
-							.put("error", String.valueOf(e.getProperty(Exchange.EXCEPTION_CAUGHT)))
-							.put("skip", e.getProperty("skip") == null ? 0 : (Integer) e.getProperty("skip"))
-							.toString();
-					e.getMessage().setBody(payload);
+					FileEvent event = FileEvent.failed(
+							extractor == null ? "unknown" : extractor,
+							String.valueOf(e.getProperty(Exchange.EXCEPTION_CAUGHT)),
+							e.getProperty("skip") == null ? 0 : (Integer) e.getProperty("skip"));
+					e.getMessage().setBody(events.publish(dlqChannel, event));
 				})
-				.toD("spring-redis://?command=PUBLISH&channel={{REDIS_DLQ_CHANNEL}}")
 				.stop();
 
 		// EXTRACTORS=users,products (CSV Format)
@@ -60,15 +82,40 @@ public class ExtractorRoute extends RouteBuilder {
 	}
 
 	private void buildRouteFromEnv(String name) {
-		System.out.println("buildRouteFromEnv: " + name);
+		log.info("buildRouteFromEnv: {}", name);
 		String KEY = name.toUpperCase().replaceAll("[^A-Z0-9]", "_");
 		String url  = must(KEY + "_URL");
 		String arr  = defaultValue(KEY + "_ARRAY_FIELD", "items"); // {users:[{},{}]}
 		int    amountLimit  = Integer.parseInt(defaultValue(KEY + "_LIMIT", "100"));
 		String cron = defaultValue(KEY + "_CRON", "0+0+2+*+*+?"); // Quartz cron
+		int    concurrency  = Integer.parseInt(defaultValue(KEY + "_CONCURRENCY", "1")); // pages in flight
+		boolean delta       = Boolean.parseBoolean(defaultValue(KEY + "_DELTA", "false")); // only new/changed records
+		boolean tombstones  = Boolean.parseBoolean(defaultValue(KEY + "_TOMBSTONES", "false")); // delta: list removed ids
+		String idField      = defaultValue(KEY + "_ID_FIELD", "id");
+
+		// Raw file, its committed size and the next skip, committed together after every page
+		final CheckpointStore checkpoints = checkpoints(name);
+		final Path LEGACY_STATE = Paths.get(dataDir, "state", name + "-last-skip.state");
+		final PageAppender appender = new PageAppender(mapper.getFactory(), arr, idField);
+		// Delta mode: id -> content hash of every record written so far (null = full extraction)
+		final RecordIndex index = delta ? index(name) : null;
+		final ConcurrentPager pager = new ConcurrentPager(concurrency);
+		final String channel = defaultValue("REDIS_CHANNEL", "files.events");
 
-		//Save an Integer with last number of records extracted
-		final Path STATE_PATH = Paths.get("/data/state/" + name + "-last-skip.state");
+		// Pooled keep-alive connections, gzip, per-request timeouts; 429/5xx slow the requests down (PageClient)
+		final PageClient http = new PageClient(new PageClient.Settings(url,
+				Duration.ofMillis(Long.parseLong(defaultValue(KEY + "_HTTP_CONNECT_TIMEOUT_MS", "5000"))),
+				Duration.ofMillis(Long.parseLong(defaultValue(KEY + "_HTTP_TIMEOUT_MS", "30000"))),
+				Integer.parseInt(defaultValue(KEY + "_HTTP_RETRIES", "5")),
+				Duration.ofMillis(Long.parseLong(defaultValue(KEY + "_HTTP_BACKOFF_MS", "200"))),
+				Boolean.parseBoolean(defaultValue(KEY + "_HTTP_GZIP", "true")),
+				Double.parseDouble(defaultValue(KEY + "_RATE_LIMIT", "0"))), registry, name);
+
+		// Registered once per extractor: a page only pays for the record() calls
+		final DistributionSummary pageRecords = DistributionSummary.builder("extractor.page.records")
+				.description("Records per page").tag("extractor", name).register(registry);
+		final Counter records = Counter.builder("extractor.records")
+				.description("Records written to raw files").tag("extractor", name).register(registry);
 
 		fromF("quartz://extractor-%s?cron=%s", name, cron)
 				.routeId("extractor-" + name)
@@ -76,13 +123,22 @@ public class ExtractorRoute extends RouteBuilder {
 					e.setProperty("extractor", name);
 					String ts = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").format(LocalDateTime.now());
 					e.setProperty("timestamp", ts);
-					e.setProperty("rawFile", "/data/raw_users/" + name + "/records_" + ts + ".jsonl");
+					// Written as *.part and renamed once complete, so the processor never picks up half a file
+					String rawFile = dataDir + "/raw_users/" + name + "/records_" + ts + ".jsonl" + codec.extension() + PART;
 
 					int skip = 0;
-					if (Files.exists(STATE_PATH)) {
-						String s = Files.readString(STATE_PATH).trim();
+					CheckpointStore.Checkpoint cp = checkpoints.last();
+					if (cp != null) {
+						// Interrupted run: keep appending to its raw file
+						skip = cp.skip();
+						if (cp.rawFile().endsWith(".jsonl" + codec.extension() + PART) && Files.exists(Paths.get(cp.rawFile()))) rawFile = cp.rawFile();
+					} else if (Files.exists(LEGACY_STATE)) {
+						String s = Files.readString(LEGACY_STATE).trim();
 						if (!s.isBlank()) skip = Integer.parseInt(s);
 					}
+					if (cp == null && index != null) index.beginRun(skip == 0);
+					if (!rawFile.equals(cp == null ? null : cp.rawFile())) checkpoints.begin(Paths.get(rawFile), skip);
+					e.setProperty("rawFile", rawFile);
 					e.setProperty("skip", skip);
 					e.setProperty("hasMore", true);
 				})
@@ -90,52 +146,132 @@ public class ExtractorRoute extends RouteBuilder {
 				.loopDoWhile(exchangeProperty("hasMore"))
 				.process(e -> {
 					int s = (int) e.getProperty("skip");
-					e.getMessage().setHeader(Exchange.HTTP_QUERY, "limit=" + amountLimit + "&skip=" + s);
-					System.out.println(url);
-				})
-				.toD(url + "?throwExceptionOnFailure=true")
-				.process(e -> {
-					System.out.println("Extractor");
-					String body = e.getMessage().getBody(String.class);
-					ObjectMapper mapper = new ObjectMapper();
-					JsonNode root = mapper.readTree(body);
-
-					int total = root.get("total").asInt();
-					int skip  = root.get("skip").asInt();
-					ArrayNode records = (ArrayNode) root.get(arr);
-
+					// Parsed straight from the response stream: no String body, no JsonNode tree
 					Path out = Paths.get((String) e.getProperty("rawFile"));
 					Files.createDirectories(out.getParent());
-					try (BufferedWriter w = Files.newBufferedWriter(out, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-						for (JsonNode u : records) { w.write(u.toString()); w.newLine(); }
+					checkpoints.rollback(out); // a failed attempt may have left part of this page behind
+					PageAppender.Page page;
+					try (InputStream body = http.open("limit=" + amountLimit + "&skip=" + s);
+					     OutputStream w = rawOut(out)) {
+						page = appender.append(body, w, index);
 					}
 
-					int fetched = skip + records.size();
-					Files.createDirectories(STATE_PATH.getParent());
-					Files.writeString(STATE_PATH, String.valueOf(fetched),
-							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+					int fetched = page.skip() + page.count();
+					checkpoints.commit(out, fetched);
+					pageRecords.record(page.count());
+					records.increment(page.written());
+					log.debug("{}: page at skip {} wrote {} of {} records", name, page.skip(), page.written(), page.count());
 
-					boolean hasMore = fetched < total;
+					boolean hasMore = fetched < page.total();
 					e.setProperty("hasMore", hasMore);
 					e.setProperty("skip", fetched);
+					e.setProperty("total", page.total());
+					e.setProperty("pageSize", page.count());
+				})
+				// <KEY>_CONCURRENCY > 1: the first page gave us total, fetch the rest concurrently.
+				// "skip" advances page by page, so a redelivery resumes after the last written page.
+				.process(e -> {
+					int from = (int) e.getProperty("skip");
+					int total = (int) e.getProperty("total");
+					int pageSize = (int) e.getProperty("pageSize");
+					if (concurrency <= 1 || from >= total || pageSize == 0) return;
+
+					Path out = Paths.get((String) e.getProperty("rawFile"));
+					checkpoints.rollback(out);
+					pager.fetchAll(from, total, pageSize,
+							skip -> http.fetch("limit=" + amountLimit + "&skip=" + skip),
+							(skip, body) -> {
+								// One closed write per page, so the committed offset always ends a complete page
+								PageAppender.Page page;
+								try (OutputStream w = rawOut(out)) {
+									page = appender.append(body, w, index);
+								}
+								int fetched = page.skip() + page.count();
+								checkpoints.commit(out, fetched);
+								pageRecords.record(page.count());
+								records.increment(page.written());
+								e.setProperty("skip", fetched);
+							});
+					e.setProperty("hasMore", (int) e.getProperty("skip") < total);
 				})
 				.end()
-				//After read all records, teh skip state place to zero
-				.process(e -> Files.writeString(STATE_PATH, "0",
-						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+				//After read all records, the next run starts over from skip 0
 				.process(e -> {
-					ObjectMapper m = new ObjectMapper();
-					String payload = m.createObjectNode()
-							.put("type", "RAW")
-							.put("extractor", name)
-							.put("path", (String) e.getProperty("rawFile"))
-							.toString();
-					e.getMessage().setBody(payload);
+					if (index != null) {
+						Path gone = Paths.get(dataDir, "raw_users", name, "tombstones_" + e.getProperty("timestamp") + ".jsonl" + codec.extension());
+						long removed = finishRun(index, tombstones ? gone : null);
+						if (removed > 0 && tombstones) {
+							log.info("{}: {} ids gone since the last run, listed in {}", name, removed, gone);
+							events.publish(channel, FileEvent.tombstones(name, gone.toString()));
+						}
+					}
+					String part = (String) e.getProperty("rawFile");
+					String done = part.substring(0, part.length() - PART.length());
+					if (Files.exists(Paths.get(part)))
+						Files.move(Paths.get(part), Paths.get(done), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					e.setProperty("rawFile", done);
+					checkpoints.clear();
+					Files.deleteIfExists(LEGACY_STATE);
+					// Delta run where nothing changed: no file and no RAW event for the processor
+					if (index != null && hasNoRecords(Paths.get(done))) {
+						Files.deleteIfExists(Paths.get(done));
+						e.removeProperty("rawFile");
+						log.info("{}: no records changed since the last run, nothing published", name);
+					}
 				})
-				.toD("spring-redis://?command=PUBLISH&channel={{REDIS_CHANNEL}}")
+				.filter(exchangeProperty("rawFile").isNotNull())
+				.process(e -> e.getMessage().setBody(
+						events.publish(channel, FileEvent.raw(name, (String) e.getProperty("rawFile")))))
 				.log("Published: ${body}");
 	}
 
+	private OutputStream rawOut(Path out) throws IOException {
+		return new BufferedOutputStream(codec.compress(
+				Files.newOutputStream(out, StandardOpenOption.CREATE, StandardOpenOption.APPEND)), 64 * 1024);
+	}
+
+	// A page without changes still appends an (empty) gzip member / zstd frame, so look at the records
+	static boolean hasNoRecords(Path raw) throws IOException {
+		if (!Files.exists(raw) || Files.size(raw) == 0) return true;
+		try (InputStream in = DataCodec.forFile(raw).decompress(Files.newInputStream(raw))) {
+			return in.read() < 0;
+		}
+	}
+
+	// Writes {"id":N} per removed id to the tombstones file (if any); an empty list leaves no file
+	private long finishRun(RecordIndex index, Path tombstones) throws IOException {
+		if (tombstones == null) return index.finishRun(id -> {});
+		long removed;
+		try (OutputStream w = rawOut(tombstones)) {
+			byte[] prefix = "{\"id\":".getBytes(StandardCharsets.US_ASCII), suffix = "}\n".getBytes(StandardCharsets.US_ASCII);
+			removed = index.finishRun(id -> {
+				w.write(prefix);
+				w.write(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+				w.write(suffix);
+			});
+		}
+		if (removed == 0) Files.deleteIfExists(tombstones);
+		return removed;
+	}
+
+	private RecordIndex index(String name) {
+		try {
+			return new RecordIndex(Paths.get(dataDir, "state", name + ".index"));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private CheckpointStore checkpoints(String name) {
+		// EXTRACTOR_CHECKPOINT_SYNC=true also fsyncs the raw file and the checkpoint on every page (power-loss safe)
+		boolean sync = Boolean.parseBoolean(defaultValue("EXTRACTOR_CHECKPOINT_SYNC", "false"));
+		try {
+			return new CheckpointStore(Paths.get(dataDir, "state", name + ".checkpoint"), sync);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
 	private String defaultValue(String key, String dft) {
 		String v = env.getProperty(key);
 		return (v == null || v.isBlank()) ? dft : v;
@@ -1,13 +1,28 @@
 package com.td.extractor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.FileEventPublisher;
+import com.td.common.JsonConfig;
+import org.apache.camel.ProducerTemplate;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
 @SpringBootApplication
+@Import(JsonConfig.class)
 public class IsExtractorSrvApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(IsExtractorSrvApplication.class, args);
     }
 
+    @Bean
+    public FileEventPublisher fileEventPublisher(LettuceConnectionFactory cf, ProducerTemplate template, ObjectMapper mapper,
+                                                 Environment env) {
+        return new FileEventPublisher(cf, template, mapper, env, "spring-redis://?command=PUBLISH&channel=");
+    }
+
 }
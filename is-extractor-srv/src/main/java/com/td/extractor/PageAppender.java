@@ -0,0 +1,175 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.core.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Parses one API page ({total, skip, <arrayField>: [...]}) and appends its records
+ * to a JSONL stream, one record per line.
+ * The page is read with a streaming parser and each record is copied token by token
+ * to the output, so no tree or String of the page is ever built.
+ * With a {@link RecordIndex} (delta mode) each record is copied to a buffer first and only written
+ * when the index has not seen it with the same content; records without an integral id are always written.
+ */
+public class PageAppender {
+
+	private final JsonFactory factory;
+	private final String arrayField;
+	private final String idField;
+
+	public PageAppender(JsonFactory factory, String arrayField) {
+		this(factory, arrayField, "id");
+	}
+
+	public PageAppender(JsonFactory factory, String arrayField, String idField) {
+		this.factory = factory.copy()
+				.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+				.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		this.arrayField = arrayField;
+		this.idField = idField;
+	}
+
+	public Page append(InputStream body, OutputStream out) throws IOException {
+		return append(body, out, null);
+	}
+
+	public Page append(byte[] body, OutputStream out) throws IOException {
+		return append(body, out, null);
+	}
+
+	public Page append(InputStream body, OutputStream out, RecordIndex index) throws IOException {
+		try (JsonParser p = factory.createParser(body)) {
+			return index == null ? append(p, out) : appendChanged(p, out, index);
+		}
+	}
+
+	public Page append(byte[] body, OutputStream out, RecordIndex index) throws IOException {
+		try (JsonParser p = factory.createParser(body)) {
+			return index == null ? append(p, out) : appendChanged(p, out, index);
+		}
+	}
+
+	private Page append(JsonParser p, OutputStream out) throws IOException {
+		if (p.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(p, "Page is not a JSON object");
+
+		Integer total = null, skip = null;
+		int count = 0;
+		boolean seenArray = false;
+		try (JsonGenerator g = factory.createGenerator(out, JsonEncoding.UTF8)) {
+			g.setRootValueSeparator(null);
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String field = p.currentName();
+				JsonToken value = p.nextToken();
+				if ("total".equals(field)) {
+					total = p.getValueAsInt();
+				} else if ("skip".equals(field)) {
+					skip = p.getValueAsInt();
+				} else if (arrayField.equals(field) && value == JsonToken.START_ARRAY) {
+					seenArray = true;
+					while (p.nextToken() != JsonToken.END_ARRAY) {
+						g.copyCurrentStructure(p);
+						g.writeRaw('\n');
+						count++;
+					}
+				} else {
+					p.skipChildren();
+				}
+			}
+		}
+		if (total == null || skip == null || !seenArray)
+			throw new JsonParseException(p, "Page without total/skip/" + arrayField);
+		return new Page(total, skip, count);
+	}
+
+	private Page appendChanged(JsonParser p, OutputStream out, RecordIndex index) throws IOException {
+		if (p.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(p, "Page is not a JSON object");
+
+		Integer total = null, skip = null;
+		int count = 0, written = 0;
+		boolean seenArray = false;
+		Buffer record = new Buffer();
+		try (JsonGenerator g = factory.createGenerator(record, JsonEncoding.UTF8)) {
+			g.setRootValueSeparator(null);
+			while (p.nextToken() == JsonToken.FIELD_NAME) {
+				String field = p.currentName();
+				JsonToken value = p.nextToken();
+				if ("total".equals(field)) {
+					total = p.getValueAsInt();
+				} else if ("skip".equals(field)) {
+					skip = p.getValueAsInt();
+				} else if (arrayField.equals(field) && value == JsonToken.START_ARRAY) {
+					seenArray = true;
+					while (p.nextToken() != JsonToken.END_ARRAY) {
+						record.reset();
+						Long id = copyRecord(p, g);
+						g.writeRaw('\n');
+						g.flush();
+						if (id == null || index.update(id, record.array(), 0, record.size())) {
+							out.write(record.array(), 0, record.size());
+							written++;
+						}
+						count++;
+					}
+				} else {
+					p.skipChildren();
+				}
+			}
+		}
+		if (total == null || skip == null || !seenArray)
+			throw new JsonParseException(p, "Page without total/skip/" + arrayField);
+		return new Page(total, skip, count, written);
+	}
+
+	// copyCurrentStructure, event by event, picking up the top-level id on the way
+	private Long copyRecord(JsonParser p, JsonGenerator g) throws IOException {
+		if (p.currentToken() != JsonToken.START_OBJECT) {
+			g.copyCurrentStructure(p);
+			return null;
+		}
+		Long id = null;
+		int depth = 0;
+		do {
+			JsonToken t = p.currentToken();
+			if (depth == 1 && t == JsonToken.FIELD_NAME && idField.equals(p.currentName())) {
+				g.copyCurrentEvent(p);
+				t = p.nextToken();
+				if (t == JsonToken.VALUE_NUMBER_INT && p.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+					id = p.getLongValue();
+				} else if (t == JsonToken.VALUE_STRING) {
+					try {
+						id = Long.parseLong(p.getText());
+					} catch (NumberFormatException ignored) {
+						// Not a numeric id: the record cannot be tracked
+					}
+				}
+			}
+			if (t.isStructStart()) depth++;
+			else if (t.isStructEnd()) depth--;
+			g.copyCurrentEvent(p);
+		} while (depth > 0 && p.nextToken() != null);
+		return id;
+	}
+
+	/** {@code count} records read from the page, {@code written} of them appended (all, unless in delta mode). */
+	public record Page(int total, int skip, int count, int written) {
+
+		public Page(int total, int skip, int count) {
+			this(total, skip, count, count);
+		}
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream {
+
+		Buffer() {
+			super(4096);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.td.extractor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client for one extractor's paginated API. Connections are kept alive and shared by sequential and
+ * concurrent page requests; responses are asked for gzip and inflated here; every request has its own timeout.
+ * Requests go through an AdaptiveRateLimiter, which slows down on 429/5xx and honours Retry-After.
+ * <p>
+ * 429, 5xx and I/O errors are retried up to {@code retries} times: after Retry-After when the server sends
+ * one, otherwise after a short jittered backoff. Any other non-2xx status fails at once.
+ */
+public class PageClient {
+
+	private static final Logger log = LoggerFactory.getLogger(PageClient.class);
+	private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toNanos(5);
+
+	/** The API's URL without paging; requestTimeout covers one attempt until the response headers arrive. */
+	public record Settings(String url, Duration connectTimeout, Duration requestTimeout, int retries,
+	                       Duration backoff, boolean gzip, double maxRate) {}
+
+	/** A response status that was not retried, or still failed after the last retry. */
+	public static class HttpStatusException extends IOException {
+
+		private final int status;
+
+		public HttpStatusException(int status, URI uri) {
+			super("HTTP " + status + " from " + uri);
+			this.status = status;
+		}
+
+		public int status() {
+			return status;
+		}
+	}
+
+	private final Settings settings;
+	private final HttpClient http;
+	private final AdaptiveRateLimiter limiter;
+	private final Timer latency;
+	private final MeterRegistry registry;
+	private final String extractor;
+
+	public PageClient(Settings settings, MeterRegistry registry, String extractor) {
+		this.settings = settings;
+		this.registry = registry;
+		this.extractor = extractor;
+		this.limiter = new AdaptiveRateLimiter(settings.maxRate());
+		this.http = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(settings.connectTimeout())
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build();
+		this.latency = Timer.builder("extractor.page.latency")
+				.description("HTTP request time of one page, until the response arrives")
+				.tag("extractor", extractor).register(registry);
+		Gauge.builder("extractor.http.rate", limiter, AdaptiveRateLimiter::rate)
+				.description("Requests/s the rate limiter allows (0 = not limited)").tag("extractor", extractor).register(registry);
+	}
+
+	public AdaptiveRateLimiter limiter() {
+		return limiter;
+	}
+
+	/** The whole (inflated) body of {@code url?query}. */
+	public byte[] fetch(String query) throws IOException, InterruptedException {
+		try (InputStream in = open(query)) {
+			return in.readAllBytes();
+		}
+	}
+
+	/** The (inflated) body of {@code url?query} as a stream, to be closed by the caller. */
+	public InputStream open(String query) throws IOException, InterruptedException {
+		URI uri = URI.create(settings.url() + (settings.url().contains("?") ? "&" : "?") + query);
+		HttpRequest.Builder rb = HttpRequest.newBuilder(uri).timeout(settings.requestTimeout()).header("Accept", "application/json");
+		if (settings.gzip()) rb.header("Accept-Encoding", "gzip");
+		HttpRequest request = rb.build();
+
+		for (int attempt = 0; ; attempt++) {
+			long startedAt = limiter.acquire();
+			HttpResponse<InputStream> r;
+			try {
+				r = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+			} catch (IOException ex) {
+				if (attempt >= settings.retries()) throw ex;
+				retried("io", uri, attempt, ex.toString());
+				backoff(attempt);
+				continue;
+			}
+			int status = r.statusCode();
+			if (status >= 200 && status < 300) {
+				latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+				limiter.onSuccess();
+				return body(r);
+			}
+			r.body().close();
+			if (status != 429 && status < 500) throw new HttpStatusException(status, uri);
+
+			long retryAfter = retryAfter(r.headers());
+			limiter.onThrottle(startedAt, retryAfter);
+			if (attempt >= settings.retries()) throw new HttpStatusException(status, uri);
+			retried(status == 429 ? "throttled" : "server_error", uri, attempt, "HTTP " + status);
+			if (retryAfter < 0) backoff(attempt); // with Retry-After the limiter holds the next request back
+		}
+	}
+
+	private void retried(String reason, URI uri, int attempt, String cause) {
+		registry.counter("extractor.http.retries", "extractor", extractor, "reason", reason).increment();
+		log.debug("{}: retry {} of {} after {}", extractor, attempt + 1, uri, cause);
+	}
+
+	// Full jitter: 0 .. backoff * 2^attempt, at most 30 s
+	private void backoff(int attempt) throws InterruptedException {
+		long cap = Math.min(TimeUnit.SECONDS.toNanos(30), settings.backoff().toNanos() << Math.min(attempt, 16));
+		if (cap > 0) TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+	}
+
+	private static InputStream body(HttpResponse<InputStream> r) throws IOException {
+		boolean gzip = r.headers().firstValue("Content-Encoding").map(v -> v.trim().equalsIgnoreCase("gzip")).orElse(false);
+		return gzip ? new GZIPInputStream(r.body(), 64 * 1024) : r.body();
+	}
+
+	// Retry-After as seconds or an HTTP date, in nanos; -1 if absent, unreadable or not in the future
+	// (0 or a past date), so the caller backs off instead of retrying at once
+	static long retryAfter(HttpHeaders headers) {
+		String v = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+		if (v == null || v.isEmpty()) return -1;
+		try {
+			long nanos;
+			if (v.chars().allMatch(Character::isDigit)) {
+				nanos = TimeUnit.SECONDS.toNanos(Long.parseLong(v));
+			} else {
+				nanos = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME)).toNanos();
+			}
+			return nanos > 0 ? Math.min(MAX_RETRY_AFTER, nanos) : -1;
+		} catch (RuntimeException ex) {
+			return -1;
+		}
+	}
+}
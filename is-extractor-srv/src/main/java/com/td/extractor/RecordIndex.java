@@ -0,0 +1,198 @@
+package com.td.extractor;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Record id -> content hash of everything an extractor has written, so a delta run only writes new or
+ * changed records. An open-addressing table (linear probing, long keys) in a memory-mapped file:
+ * 24 bytes per slot, nothing on the heap, and the OS keeps it across restarts.
+ * <p>
+ * A slot holds the id, the current hash with the stamp of the run that saw it last, and the hash as of
+ * the previous run. A record seen twice in one run (a page written, rolled back by the checkpoint
+ * and fetched again) is compared against that previous hash, so the retry writes it again.
+ * At the end of a complete run, ids the run did not see are handed out as tombstones and dropped.
+ * Not thread-safe: one instance per extractor.
+ */
+public final class RecordIndex {
+
+	@FunctionalInterface
+	public interface IdSink {
+		void accept(long id) throws IOException;
+	}
+
+	private static final int MAGIC = 0x52494458; // "RIDX"
+	private static final int HEADER = 64;         // magic, capacity, generation, partial
+	private static final int SLOT = 24;           // id, hash|stamp, previous hash
+	private static final long MIN_CAPACITY = 1 << 16;
+	private static final long MAX_CAPACITY = (Integer.MAX_VALUE - HEADER) / SLOT;
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final Path file;
+	private MappedByteBuffer map;
+	private long capacity;
+	private long mask;
+	private long size;
+	private long stamp;
+
+	public RecordIndex(Path file) throws IOException {
+		this.file = file;
+		if (Files.exists(file) && Files.size(file) >= HEADER) {
+			open();
+		} else {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			build(file, MIN_CAPACITY, 0, 0);
+			open();
+		}
+	}
+
+	/** Starts a new run; {@code full} when it reads the dataset from the start (tombstones need that). */
+	public void beginRun(boolean full) {
+		map.putInt(12, map.getInt(12) + 1);
+		map.putInt(16, full ? 0 : 1);
+		stamp = stampOf(map.getInt(12));
+	}
+
+	/** Remembers the record and tells whether it is new or changed since the previous run. */
+	public boolean update(long id, byte[] b, int off, int len) throws IOException {
+		long h = hash(b, off, len) & ~0xFFL;
+		if (h == 0) h = 0x100;
+		for (long i = mix(id) & mask; ; i = (i + 1) & mask) {
+			int at = (int) (HEADER + i * SLOT);
+			long cur = map.getLong(at + 8);
+			if (cur == 0) {
+				if ((size + 1) * 4 > capacity * 3) {
+					resize(capacity * 2, false);
+					return update(id, b, off, len);
+				}
+				map.putLong(at, id);
+				map.putLong(at + 16, 0);
+				map.putLong(at + 8, h | stamp); // written last: marks the slot used
+				size++;
+				return true;
+			}
+			if (map.getLong(at) == id) {
+				boolean seen = (cur & 0xFF) == stamp;
+				long before = seen ? map.getLong(at + 16) : cur & ~0xFFL;
+				if (!seen) map.putLong(at + 16, before);
+				map.putLong(at + 8, h | stamp);
+				return before != h;
+			}
+		}
+	}
+
+	/**
+	 * Ends the run: ids of earlier runs that this one did not see go to {@code gone} and leave the index.
+	 * After a partial run nothing is dropped, since unseen ids may just not have been read.
+	 */
+	public long finishRun(IdSink gone) throws IOException {
+		if (map.getInt(16) != 0) return 0;
+		long removed = 0;
+		for (long i = 0; i < capacity; i++) {
+			int at = (int) (HEADER + i * SLOT);
+			long cur = map.getLong(at + 8);
+			if (cur != 0 && (cur & 0xFF) != stamp) {
+				gone.accept(map.getLong(at));
+				removed++;
+			}
+		}
+		if (removed > 0) resize(capacityFor(size - removed), true);
+		return removed;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/** Bytes the index takes on disk (and in the page cache once touched). */
+	public long bytes() {
+		return HEADER + capacity * SLOT;
+	}
+
+	private void open() throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			map = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+		}
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		if (map.getInt(0) != MAGIC) throw new IOException("Not a record index: " + file);
+		capacity = map.getLong(4);
+		mask = capacity - 1;
+		stamp = stampOf(map.getInt(12));
+		size = 0;
+		for (long i = 0; i < capacity; i++)
+			if (map.getLong((int) (HEADER + i * SLOT) + 8) != 0) size++;
+	}
+
+	// Rehashes into a new file that replaces this one atomically; dropStale keeps only this run's ids
+	private void resize(long newCapacity, boolean dropStale) throws IOException {
+		if (newCapacity > MAX_CAPACITY) throw new IOException("Record index full: " + size + " ids");
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		MappedByteBuffer to = build(tmp, newCapacity, map.getInt(12), map.getInt(16));
+		long toMask = newCapacity - 1;
+		for (long i = 0; i < capacity; i++) {
+			int at = (int) (HEADER + i * SLOT);
+			long cur = map.getLong(at + 8);
+			if (cur == 0 || (dropStale && (cur & 0xFF) != stamp)) continue;
+			long id = map.getLong(at);
+			long j = mix(id) & toMask;
+			while (to.getLong((int) (HEADER + j * SLOT) + 8) != 0) j = (j + 1) & toMask;
+			int dst = (int) (HEADER + j * SLOT);
+			to.putLong(dst, id);
+			to.putLong(dst + 8, cur);
+			to.putLong(dst + 16, map.getLong(at + 16));
+		}
+		to.force();
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		open();
+	}
+
+	private static MappedByteBuffer build(Path path, long capacity, int generation, int partial) throws IOException {
+		Files.deleteIfExists(path);
+		MappedByteBuffer m;
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			m = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity * SLOT);
+		}
+		m.order(ByteOrder.LITTLE_ENDIAN);
+		m.putInt(0, MAGIC).putLong(4, capacity).putInt(12, generation).putInt(16, partial);
+		return m;
+	}
+
+	private static long capacityFor(long ids) {
+		long c = MIN_CAPACITY;
+		while (ids * 4 > c * 3) c *= 2;
+		return c;
+	}
+
+	// 1..255: 0 marks an empty slot. Stale slots always carry the previous run's stamp, since a
+	// complete run drops them, so the cycle never meets a live one
+	private static long stampOf(int generation) {
+		return 1 + Integer.remainderUnsigned(generation, 255);
+	}
+
+	static long hash(byte[] b, int off, int len) {
+		long h = 0x9E3779B97F4A7C15L ^ len;
+		int i = off, end = off + len;
+		for (; i + 8 <= end; i += 8) h = Long.rotateLeft(h ^ mix((long) LONGS.get(b, i)), 27) * 5 + 0x52DCE729;
+		long tail = 0;
+		for (int s = 0; i < end; i++, s += 8) tail |= (b[i] & 0xFFL) << s;
+		return mix(h ^ mix(tail));
+	}
+
+	// MurmurHash3 fmix64
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB9FE1A85EC53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,148 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.DataCodec;
+import io.airlift.compress.zstd.ZstdInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointStoreTest {
+
+	static final int TOTAL = 500, LIMIT = 20;
+
+	enum Crash { NONE, MID_PAGE, AFTER_WRITE, AFTER_COMMIT }
+
+	static class Killed extends RuntimeException {}
+
+	@TempDir
+	Path tmp;
+
+	final PageAppender appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+	int runs;
+
+	static byte[] page(int skip) {
+		StringBuilder sb = new StringBuilder("{\"users\":[");
+		for (int i = skip; i < Math.min(skip + LIMIT, TOTAL); i++) sb.append(i == skip ? "" : ",").append("{\"id\":").append(i).append('}');
+		return sb.append("],\"total\":").append(TOTAL).append(",\"skip\":").append(skip).append(",\"limit\":").append(LIMIT).append('}')
+				.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String expected() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < TOTAL; i++) sb.append("{\"id\":").append(i).append("}\n");
+		return sb.toString();
+	}
+
+	static String read(Path raw, DataCodec codec) throws IOException {
+		InputStream file = Files.newInputStream(raw);
+		try (InputStream in = switch (codec) {
+			case NONE -> file;
+			case GZIP -> new GZIPInputStream(file);
+			case ZSTD -> new ZstdInputStream(file);
+		}) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * One extraction as ExtractorRoute runs it, killed at {@code crash} on page {@code crashPage}.
+	 * A kill abandons the store and leaves the raw file as it is, unclosed page included.
+	 */
+	Path run(Path state, DataCodec codec, Crash crash, int crashPage) throws IOException {
+		CheckpointStore store = new CheckpointStore(state, false);
+		CheckpointStore.Checkpoint cp = store.last();
+		Path raw = cp != null ? Paths.get(cp.rawFile()) : tmp.resolve("records_" + (++runs) + ".jsonl" + codec.extension());
+		int skip = cp != null ? cp.skip() : 0;
+		if (cp == null) store.begin(raw, skip);
+		for (int n = 0; skip < TOTAL; n++) {
+			store.rollback(raw);
+			OutputStream file = Files.newOutputStream(raw, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			OutputStream w = codec.compress(file);
+			byte[] body = page(skip);
+			if (crash == Crash.MID_PAGE && n == crashPage) {
+				w.write("{\"id\":".getBytes(StandardCharsets.UTF_8));
+				w.flush();
+				file.close(); // the compressor never gets to finish its member / frame
+				throw new Killed();
+			}
+			PageAppender.Page page;
+			try (w) {
+				page = appender.append(body, w);
+			}
+			if (crash == Crash.AFTER_WRITE && n == crashPage) throw new Killed();
+			int fetched = page.skip() + page.count();
+			store.commit(raw, fetched);
+			if (crash == Crash.AFTER_COMMIT && n == crashPage) throw new Killed();
+			skip = fetched;
+		}
+		store.clear();
+		return raw;
+	}
+
+	@Test
+	void resumesExactlyAfterAKillAtAnyPoint() throws Exception {
+		for (DataCodec codec : DataCodec.values()) {
+			for (Crash crash : new Crash[]{Crash.MID_PAGE, Crash.AFTER_WRITE, Crash.AFTER_COMMIT}) {
+				for (int crashPage : new int[]{0, 7, TOTAL / LIMIT - 1}) {
+					Path state = tmp.resolve(codec + "-" + crash + "-" + crashPage + ".checkpoint");
+					assertThrows(Killed.class, () -> run(state, codec, crash, crashPage));
+					Path raw = run(state, codec, Crash.NONE, -1);
+
+					String what = codec + " killed " + crash + " on page " + crashPage;
+					assertEquals(tmp.resolve("records_" + (runs) + ".jsonl" + codec.extension()), raw, what + ": same raw file");
+					assertEquals(expected(), read(raw, codec), what + ": every record once, in order");
+					assertNull(new CheckpointStore(state, false).last(), what + ": completed run cleared");
+				}
+			}
+		}
+	}
+
+	@Test
+	void repeatedKillsStillGiveEveryRecordOnce() throws Exception {
+		Path state = tmp.resolve("users.checkpoint");
+		Crash[] crashes = {Crash.AFTER_WRITE, Crash.MID_PAGE, Crash.AFTER_COMMIT, Crash.AFTER_WRITE, Crash.MID_PAGE};
+		for (Crash crash : crashes) assertThrows(Killed.class, () -> run(state, DataCodec.GZIP, crash, 2));
+		assertEquals(expected(), read(run(state, DataCodec.GZIP, Crash.NONE, -1), DataCodec.GZIP));
+	}
+
+	@Test
+	void tornCommitFallsBackToThePreviousOne() throws Exception {
+		Path state = tmp.resolve("users.checkpoint");
+		Path raw = Files.writeString(tmp.resolve("records_1.jsonl"), "{\"id\":0}\n");
+
+		assertNull(new CheckpointStore(state, false).last(), "new store");
+		CheckpointStore store = new CheckpointStore(state, false);
+		store.commit(raw, 20);     // seq 1 -> slot 1
+		Files.writeString(raw, "{\"id\":1}\n", StandardOpenOption.APPEND);
+		store.commit(raw, 40);     // seq 2 -> slot 0
+		assertEquals(new CheckpointStore.Checkpoint(raw.toString(), 18, 40), new CheckpointStore(state, false).last());
+
+		// A kill in the middle of the second commit: part of its slot written, the CRC not matching
+		try (FileChannel ch = FileChannel.open(state, StandardOpenOption.WRITE)) {
+			ch.write(ByteBuffer.wrap(new byte[]{0x7f}), 10);
+		}
+		assertEquals(new CheckpointStore.Checkpoint(raw.toString(), 9, 20), new CheckpointStore(state, false).last());
+
+		// The next commit goes to the torn slot's turn again and wins
+		CheckpointStore reopened = new CheckpointStore(state, false);
+		reopened.rollback(raw);
+		assertEquals(9, Files.size(raw), "page after the surviving checkpoint dropped");
+		Files.writeString(raw, "{\"id\":1}\n", StandardOpenOption.APPEND);
+		reopened.commit(raw, 40);
+		assertEquals(new CheckpointStore.Checkpoint(raw.toString(), 18, 40), new CheckpointStore(state, false).last());
+	}
+}
@@ -0,0 +1,106 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentPagerTest {
+
+	static final int TOTAL = 1000, LIMIT = 50, LATENCY_MS = 40;
+
+	HttpServer server;
+	final AtomicInteger failAtSkip = new AtomicInteger(-1);
+	final AtomicInteger inFlight = new AtomicInteger(), peak = new AtomicInteger();
+	final HttpClient client = HttpClient.newHttpClient();
+
+	/** Stub of the paginated API: {"users":[{"id":..}],"total":..,"skip":..,"limit":..} with fixed latency. */
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/users", ex -> {
+			int skip = Integer.parseInt(ex.getRequestURI().getQuery().replaceAll(".*skip=(\\d+).*", "$1"));
+			peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try { Thread.sleep(LATENCY_MS); } catch (InterruptedException ignore) { }
+			inFlight.decrementAndGet();
+			if (skip == failAtSkip.get()) {
+				ex.sendResponseHeaders(500, -1);
+				return;
+			}
+			StringBuilder sb = new StringBuilder("{\"users\":[");
+			int n = Math.min(LIMIT, TOTAL - skip);
+			for (int i = 0; i < n; i++) sb.append(i > 0 ? "," : "").append("{\"id\":").append(skip + i + 1).append('}');
+			sb.append("],\"total\":").append(TOTAL).append(",\"skip\":").append(skip).append(",\"limit\":").append(n).append('}');
+			byte[] b = sb.toString().getBytes(StandardCharsets.UTF_8);
+			ex.sendResponseHeaders(200, b.length);
+			try (OutputStream os = ex.getResponseBody()) { os.write(b); }
+		});
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop(0);
+	}
+
+	byte[] fetch(int skip) throws Exception {
+		URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/users?limit=" + LIMIT + "&skip=" + skip);
+		HttpResponse<byte[]> r = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+		if (r.statusCode() != 200) throw new IOException("HTTP " + r.statusCode());
+		return r.body();
+	}
+
+	/** Extracts everything and returns the most pages the stub had in flight at once. */
+	int extract(int concurrency, ByteArrayOutputStream out) throws Exception {
+		PageAppender appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+		peak.set(0);
+		appender.append(fetch(0), out);
+		new ConcurrentPager(concurrency).fetchAll(LIMIT, TOTAL, LIMIT, this::fetch, (skip, body) -> appender.append(body, out));
+		return peak.get();
+	}
+
+	@Test
+	void concurrentFetchKeepsOffsetOrderWithPagesInFlight() throws Exception {
+		ByteArrayOutputStream seq = new ByteArrayOutputStream(), par = new ByteArrayOutputStream();
+		int seqPeak = extract(1, seq);
+		int parPeak = extract(8, par);
+
+		assertEquals(seq.toString(), par.toString());
+		String[] lines = par.toString().split("\n");
+		assertEquals(TOTAL, lines.length);
+		for (int i = 0; i < TOTAL; i++) assertEquals("{\"id\":" + (i + 1) + "}", lines[i]);
+
+		assertEquals(1, seqPeak);
+		// 19 pages after the first, each held LATENCY_MS by the stub: the pager keeps all 8 slots busy, never more
+		assertEquals(8, parPeak, "pages in flight");
+	}
+
+	@Test
+	void failureStopsAtLastContiguousPage() {
+		failAtSkip.set(300);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AtomicInteger lastSkip = new AtomicInteger(-1);
+		PageAppender appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+
+		assertThrows(IOException.class, () -> new ConcurrentPager(4).fetchAll(0, TOTAL, LIMIT, this::fetch,
+				(skip, body) -> { appender.append(body, out); lastSkip.set(skip); }));
+		assertEquals(250, lastSkip.get());
+		assertEquals(300, out.toString().split("\n").length);
+	}
+}
@@ -0,0 +1,40 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageAppenderTest {
+
+	final ObjectMapper mapper = new ObjectMapper();
+	final PageAppender appender = new PageAppender(mapper.getFactory(), "users");
+
+	static final String PAGE = "{\"meta\":{\"users\":[{\"id\":-1}]},\"users\":["
+			+ "{\"id\":1,\"firstName\":\"Émily\",\"tags\":[\"a\",\"b\"],\"company\":{\"department\":\"Engineering\"}},"
+			+ "{\"id\":2,\"height\":193.24,\"note\":\"line\\nbreak \\\"q\\\"\",\"hair\":null}"
+			+ "],\"total\":208,\"skip\":30,\"limit\":2}";
+
+	@Test
+	void copiesRecordsLikeTheTreeSerialisation() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PageAppender.Page page = appender.append(new ByteArrayInputStream(PAGE.getBytes(StandardCharsets.UTF_8)), out);
+
+		assertEquals(new PageAppender.Page(208, 30, 2), page);
+		StringBuilder expected = new StringBuilder();
+		for (JsonNode u : mapper.readTree(PAGE).get("users")) expected.append(u.toString()).append('\n');
+		assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void rejectsPageWithoutTotal() {
+		byte[] body = "{\"users\":[],\"skip\":0}".getBytes(StandardCharsets.UTF_8);
+		assertThrows(JsonParseException.class, () -> appender.append(body, new ByteArrayOutputStream()));
+	}
+}
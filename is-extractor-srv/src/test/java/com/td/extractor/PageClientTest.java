@@ -0,0 +1,246 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageClientTest {
+
+	static final int TOTAL = 4000, LIMIT = 10, LATENCY_MS = 5;
+	static final double SERVER_RPS = 100; // the stub's own limit: more gets a 429
+
+	HttpServer server;
+	final MeterRegistry registry = new SimpleMeterRegistry();
+
+	// Stub behaviour, set per test
+	volatile boolean throttle;               // token bucket of SERVER_RPS, burst 10
+	volatile String retryAfter;              // sent with the 429/503s
+	final AtomicInteger failFirst = new AtomicInteger(); // this many 503s before serving
+	volatile int status = 200;
+	volatile long slowFirstMs;
+
+	final AtomicInteger requests = new AtomicInteger();
+	final AtomicLong wireBytes = new AtomicLong();
+	final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	final List<Long> arrivals = new CopyOnWriteArrayList<>();
+	private double tokens = 10;
+	private long refilled = System.nanoTime();
+
+	/** Paginated API stub with an optional server-side rate limit; gzips when asked to. */
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/users", this::handle);
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop(0);
+	}
+
+	void handle(HttpExchange ex) throws IOException {
+		int n = requests.incrementAndGet();
+		arrivals.add(System.nanoTime());
+		clientPorts.add(ex.getRemoteAddress().getPort());
+		try {
+			if (n == 1 && slowFirstMs > 0) Thread.sleep(slowFirstMs);
+			Thread.sleep(LATENCY_MS);
+		} catch (InterruptedException ignore) { }
+		if (status != 200 || failFirst.getAndDecrement() > 0 || (throttle && !take())) {
+			int code = status != 200 ? status : throttle ? 429 : 503;
+			if (retryAfter != null) ex.getResponseHeaders().set("Retry-After", retryAfter);
+			ex.sendResponseHeaders(code, -1);
+			ex.close();
+			return;
+		}
+		int skip = Integer.parseInt(ex.getRequestURI().getQuery().replaceAll(".*skip=(\\d+).*", "$1"));
+		byte[] b = page(skip);
+		String enc = ex.getRequestHeaders().getFirst("Accept-Encoding");
+		if (enc != null && enc.contains("gzip")) {
+			ByteArrayOutputStream gz = new ByteArrayOutputStream();
+			try (GZIPOutputStream z = new GZIPOutputStream(gz)) { z.write(b); }
+			b = gz.toByteArray();
+			ex.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		wireBytes.addAndGet(b.length);
+		ex.sendResponseHeaders(200, b.length);
+		try (OutputStream os = ex.getResponseBody()) { os.write(b); }
+	}
+
+	synchronized boolean take() {
+		long now = System.nanoTime();
+		tokens = Math.min(10, tokens + (now - refilled) / 1e9 * SERVER_RPS);
+		refilled = now;
+		if (tokens < 1) return false;
+		tokens--;
+		return true;
+	}
+
+	static byte[] page(int skip) {
+		StringBuilder sb = new StringBuilder("{\"users\":[");
+		int n = Math.min(LIMIT, TOTAL - skip);
+		for (int i = 0; i < n; i++)
+			sb.append(i > 0 ? "," : "").append("{\"id\":").append(skip + i + 1).append(",\"firstName\":\"Emily\",\"lastName\":\"Johnson\"}");
+		sb.append("],\"total\":").append(TOTAL).append(",\"skip\":").append(skip).append(",\"limit\":").append(n).append('}');
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/users";
+	}
+
+	PageClient client(int retries, boolean gzip) {
+		return new PageClient(new PageClient.Settings(url(), Duration.ofSeconds(2), Duration.ofSeconds(2), retries,
+				Duration.ofMillis(50), gzip, 0), registry, "users");
+	}
+
+	double retries(String reason) {
+		return registry.counter("extractor.http.retries", "extractor", "users", "reason", reason).count();
+	}
+
+	static ConcurrentPager.Fetcher pages(PageClient client) {
+		return skip -> client.fetch("limit=" + LIMIT + "&skip=" + skip);
+	}
+
+	// The first page, then the rest with 8 in flight, as the route does
+	void extract(ConcurrentPager.Fetcher fetcher, ByteArrayOutputStream out) throws Exception {
+		PageAppender appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+		appender.append(fetcher.fetch(0), out);
+		new ConcurrentPager(8).fetchAll(LIMIT, TOTAL, LIMIT, fetcher, (skip, body) -> appender.append(body, out));
+	}
+
+	@Test
+	void adaptiveLimiterExtractsEverythingUnderThrottling() throws Exception {
+		throttle = true;
+		int pages = TOTAL / LIMIT;
+
+		PageClient client = client(20, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		extract(pages(client), out);
+
+		StringBuilder expected = new StringBuilder();
+		for (int id = 1; id <= TOTAL; id++) expected.append("{\"id\":").append(id).append(",\"firstName\":\"Emily\",\"lastName\":\"Johnson\"}\n");
+		assertEquals(expected.toString(), out.toString(), "every page once, in order");
+		// Every 429 was counted and retried; the limiter settled near what the server allows
+		assertEquals(requests.get() - pages, retries("throttled"));
+		assertTrue(client.limiter().rate() > 0 && client.limiter().rate() < SERVER_RPS * 2);
+	}
+
+	@Test
+	void retryAfterHoldsTheNextRequestBack() throws Exception {
+		failFirst.set(1);
+		retryAfter = "1";
+		PageClient client = client(3, false);
+
+		byte[] body = client.fetch("limit=" + LIMIT + "&skip=0");
+
+		assertArrayEquals(page(0), body);
+		assertEquals(2, requests.get());
+		long gapMs = (arrivals.get(1) - arrivals.get(0)) / 1_000_000;
+		assertTrue(gapMs >= 950, "waited " + gapMs + " ms for Retry-After: 1");
+		assertEquals(1, retries("server_error"));
+	}
+
+	@Test
+	void retryAfterInThePastOrZeroMeansBackoff() {
+		assertEquals(-1, PageClient.retryAfter(headers(null)));
+		assertEquals(-1, PageClient.retryAfter(headers("soon")));
+		assertEquals(-1, PageClient.retryAfter(headers("0")));
+		assertEquals(-1, PageClient.retryAfter(headers(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().minusMinutes(1)))));
+		assertEquals(2_000_000_000L, PageClient.retryAfter(headers("2")));
+		long future = PageClient.retryAfter(headers(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30))));
+		assertTrue(future > 25_000_000_000L && future <= 30_000_000_000L, "date: " + future);
+	}
+
+	static HttpHeaders headers(String retryAfter) {
+		return HttpHeaders.of(retryAfter == null ? Map.of() : Map.of("Retry-After", List.of(retryAfter)), (k, v) -> true);
+	}
+
+	@Test
+	void gzipResponsesAreInflatedAndConnectionsReused() throws Exception {
+		PageClient client = client(0, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		extract(pages(client), out);
+
+		long raw = 0;
+		for (int skip = 0; skip < TOTAL; skip += LIMIT) raw += page(skip).length;
+		assertEquals(TOTAL, out.toString().split("\n").length);
+		assertTrue(wireBytes.get() * 3 < raw, "gzip should cut the bytes on the wire");
+		assertTrue(clientPorts.size() <= 10, "keep-alive: " + clientPorts.size() + " connections");
+	}
+
+	@Test
+	void timedOutAttemptIsRetried() throws Exception {
+		slowFirstMs = 1500;
+		PageClient client = new PageClient(new PageClient.Settings(url(), Duration.ofSeconds(2), Duration.ofMillis(300), 2,
+				Duration.ofMillis(10), false, 0), registry, "users");
+
+		assertArrayEquals(page(0), client.fetch("limit=" + LIMIT + "&skip=0"));
+		assertEquals(1, retries("io"));
+	}
+
+	@Test
+	void clientErrorsFailAtOnce() {
+		status = 404;
+		PageClient client = client(5, false);
+
+		PageClient.HttpStatusException ex = assertThrows(PageClient.HttpStatusException.class,
+				() -> client.fetch("limit=" + LIMIT + "&skip=0"));
+		assertEquals(404, ex.status());
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void limiterHalvesOncePerOverloadAndGrowsBack() throws Exception {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(100);
+		assertEquals(100, limiter.rate());
+
+		long a = limiter.acquire(), b = limiter.acquire();
+		limiter.onThrottle(a, -1);
+		limiter.onThrottle(b, -1); // in flight before the decrease: same overload
+		assertEquals(50, limiter.rate(), 0.001);
+
+		long c = limiter.acquire();
+		limiter.onThrottle(c, -1);
+		assertEquals(25, limiter.rate(), 0.001);
+
+		for (int i = 0; i < 100; i++) limiter.onSuccess();
+		assertEquals(35, limiter.rate(), 0.001);
+		for (int i = 0; i < 10_000; i++) limiter.onSuccess();
+		assertEquals(100, limiter.rate(), 0.001); // capped at the ceiling
+
+		long d = limiter.acquire();
+		limiter.onThrottle(d, 300_000_000L);
+		long t0 = System.nanoTime();
+		limiter.acquire();
+		assertTrue(System.nanoTime() - t0 >= 290_000_000L, "Retry-After pauses the next request");
+	}
+}
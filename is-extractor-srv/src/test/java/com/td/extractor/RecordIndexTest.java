@@ -0,0 +1,191 @@
+package com.td.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.DataCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordIndexTest {
+
+	@TempDir
+	Path tmp;
+
+	final PageAppender appender = new PageAppender(new ObjectMapper().getFactory(), "users");
+
+	static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String user(long id, int version) {
+		return "{\"id\":" + id + ",\"firstName\":\"User" + id + "\",\"email\":\"user" + id + "@x.com\",\"age\":" + (20 + version)
+				+ ",\"company\":{\"department\":\"Engineering\"}}";
+	}
+
+	/** The dataset as the API pages it: {users:[...], total, skip, limit}. */
+	static List<byte[]> pages(List<String> users, int limit) {
+		List<byte[]> pages = new ArrayList<>();
+		for (int skip = 0; skip < users.size(); skip += limit) {
+			List<String> page = users.subList(skip, Math.min(skip + limit, users.size()));
+			pages.add(bytes("{\"users\":[" + String.join(",", page) + "],\"total\":" + users.size() + ",\"skip\":" + skip
+					+ ",\"limit\":" + limit + "}"));
+		}
+		return pages;
+	}
+
+	record Run(String raw, int written, List<Long> gone) {}
+
+	Run run(RecordIndex index, List<String> users) throws Exception {
+		index.beginRun(true);
+		ByteArrayOutputStream raw = new ByteArrayOutputStream();
+		int written = 0;
+		for (byte[] page : pages(users, 100)) written += appender.append(page, raw, index).written();
+		List<Long> gone = new ArrayList<>();
+		index.finishRun(gone::add);
+		return new Run(raw.toString(StandardCharsets.UTF_8), written, gone);
+	}
+
+	@Test
+	void deltaRunWritesOnlyNewAndChangedRecords() throws Exception {
+		final int n = 10_000;
+		List<String> day1 = new ArrayList<>();
+		for (int i = 0; i < n; i++) day1.add(user(i, 0));
+
+		// Day 2: 1% changed, 0.5% removed, 0.5% added
+		Random rnd = new Random(42);
+		List<String> day2 = new ArrayList<>();
+		Set<Long> changed = new TreeSet<>(), removed = new TreeSet<>();
+		for (int i = 0; i < n; i++) {
+			double r = rnd.nextDouble();
+			if (r < 0.005) removed.add((long) i);
+			else if (r < 0.015) { changed.add((long) i); day2.add(user(i, 1)); }
+			else day2.add(user(i, 0));
+		}
+		for (int i = n; i < n + 50; i++) day2.add(user(i, 0));
+
+		RecordIndex index = new RecordIndex(tmp.resolve("users.index"));
+		Run full = run(index, day1);
+		assertEquals(n, full.written());
+		assertTrue(full.gone().isEmpty());
+
+		Run delta = run(index, day2);
+		StringBuilder expected = new StringBuilder();
+		for (String u : day2) {
+			long id = Long.parseLong(u.substring(6, u.indexOf(',')));
+			if (changed.contains(id) || id >= n) expected.append(u).append('\n');
+		}
+		assertEquals(expected.toString(), delta.raw(), "only changed and new records, in page order");
+		assertEquals(new ArrayList<>(removed), delta.gone().stream().sorted().toList(), "tombstones");
+		assertEquals(day2.size(), index.size(), "removed ids leave the index");
+
+		Run same = run(index, day2);
+		assertEquals(0, same.written());
+		assertTrue(same.gone().isEmpty());
+	}
+
+	@Test
+	void unchangedRunLeavesNoRecordsToPublish() throws Exception {
+		List<String> users = new ArrayList<>();
+		for (int i = 0; i < 250; i++) users.add(user(i, 0));
+		for (DataCodec codec : DataCodec.values()) {
+			RecordIndex index = new RecordIndex(tmp.resolve(codec.name() + ".index"));
+			run(index, users);
+
+			// One closed append per page, as the route writes the raw file
+			Path raw = tmp.resolve("records_" + codec.name() + ".jsonl" + codec.extension());
+			index.beginRun(true);
+			for (byte[] page : pages(users, 100))
+				try (OutputStream w = codec.compress(Files.newOutputStream(raw, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+					assertEquals(0, appender.append(page, w, index).written());
+				}
+			index.finishRun(id -> fail("nothing gone"));
+			assertTrue(ExtractorRoute.hasNoRecords(raw), codec.name());
+
+			users.set(7, user(7, 1));
+			index.beginRun(true);
+			for (byte[] page : pages(users, 100))
+				try (OutputStream w = codec.compress(Files.newOutputStream(raw, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+					appender.append(page, w, index);
+				}
+			assertFalse(ExtractorRoute.hasNoRecords(raw), codec.name());
+			users.set(7, user(7, 0));
+		}
+		assertTrue(ExtractorRoute.hasNoRecords(tmp.resolve("missing.jsonl")));
+	}
+
+	@Test
+	void pageRetriedWithinARunIsDecidedTheSameWay() throws Exception {
+		RecordIndex index = new RecordIndex(tmp.resolve("users.index"));
+		index.beginRun(true);
+		assertTrue(index.update(1, bytes(user(1, 0)), 0, user(1, 0).length()));
+		assertTrue(index.update(2, bytes(user(2, 0)), 0, user(2, 0).length()));
+		index.finishRun(id -> fail("nothing gone"));
+
+		index.beginRun(true);
+		// A page written, rolled back by the checkpoint and fetched again: same answers both times
+		for (int attempt = 0; attempt < 2; attempt++) {
+			assertFalse(index.update(1, bytes(user(1, 0)), 0, user(1, 0).length()), "unchanged");
+			assertTrue(index.update(2, bytes(user(2, 1)), 0, user(2, 1).length()), "changed");
+			assertTrue(index.update(3, bytes(user(3, 0)), 0, user(3, 0).length()), "new");
+		}
+	}
+
+	@Test
+	void survivesReopenAndGrowth() throws Exception {
+		final int n = 200_000; // several times the initial capacity
+		Path file = tmp.resolve("users.index");
+		RecordIndex index = new RecordIndex(file);
+		index.beginRun(true);
+		for (long id = 0; id < n; id++) assertTrue(index.update(id * 7919, bytes(user(id, 0)), 0, user(id, 0).length()));
+		index.finishRun(id -> fail("nothing gone"));
+
+		RecordIndex reopened = new RecordIndex(file);
+		assertEquals(n, reopened.size());
+		reopened.beginRun(true);
+		for (long id = 0; id < n; id++) assertFalse(reopened.update(id * 7919, bytes(user(id, 0)), 0, user(id, 0).length()));
+		// A partial run (resumed from a skip > 0) must not turn unread ids into tombstones
+		reopened.beginRun(false);
+		assertEquals(0, reopened.finishRun(id -> fail("partial run")));
+	}
+
+	@Test
+	void indexStaysWithinItsMemoryBudget() throws Exception {
+		final int n = 2_000_000;
+		byte[][] records = new byte[64][];
+		for (int i = 0; i < records.length; i++) records[i] = bytes(user(i, 0));
+		long[] ids = new long[n];
+		Random rnd = new Random(7);
+		for (int i = 0; i < n; i++) ids[i] = rnd.nextLong() & Long.MAX_VALUE;
+
+		RecordIndex index = new RecordIndex(tmp.resolve("users.index"));
+		index.beginRun(true);
+		for (int i = 0; i < n; i++) index.update(ids[i], records[(int) (ids[i] & 63)], 0, records[(int) (ids[i] & 63)].length);
+		index.finishRun(id -> {});
+
+		// Next run, same content, ids in another order: nothing changed
+		for (int i = n - 1; i > 0; i--) {
+			int j = rnd.nextInt(i + 1);
+			long t = ids[i]; ids[i] = ids[j]; ids[j] = t;
+		}
+		index.beginRun(true);
+		int changed = 0;
+		for (int i = 0; i < n; i++) if (index.update(ids[i], records[(int) (ids[i] & 63)], 0, records[(int) (ids[i] & 63)].length)) changed++;
+
+		assertEquals(0, changed);
+		assertEquals(n, index.size());
+		assertTrue(index.bytes() / (n / 1e6) <= 64e6, "24-byte slots at 37-75% load");
+	}
+}
@@ -0,0 +1,115 @@
+package com.td.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listens to the file events the services publish (channels, or streams of the same names with
+ * REDIS_TRANSPORT=streams) and keeps each one with the time it was seen.
+ */
+final class EventTap implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(EventTap.class);
+
+	/** type is RAW, TOMBSTONES, PROCESSED or DLQ; a DLQ event with an error and no path is a failed extraction. */
+	record Event(String type, String path, String error, long nanos) {}
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<Event> events = new CopyOnWriteArrayList<>();
+	private final RedisClient client;
+	private final StatefulRedisPubSubConnection<String, String> pubsub;
+	private final StatefulRedisConnection<String, String> reader;
+	private final Thread streamReader;
+	private volatile boolean running = true;
+
+	EventTap(int redisPort, List<String> channels, boolean streams) {
+		client = RedisClient.create(RedisURI.create("127.0.0.1", redisPort));
+		if (streams) {
+			pubsub = null;
+			reader = client.connect();
+			streamReader = Thread.ofPlatform().daemon().name("event-tap").start(() -> read(channels));
+		} else {
+			reader = null;
+			streamReader = null;
+			pubsub = client.connectPubSub();
+			pubsub.addListener(new RedisPubSubAdapter<>() {
+				@Override
+				public void message(String channel, String message) {
+					add(message);
+				}
+			});
+			pubsub.sync().subscribe(channels.toArray(new String[0]));
+		}
+	}
+
+	List<Event> events() {
+		return events;
+	}
+
+	List<Event> events(String type) {
+		return events.stream().filter(e -> e.type().equals(type)).toList();
+	}
+
+	// XREAD BLOCK from the start of every stream
+	private void read(List<String> streams) {
+		Map<String, String> last = new HashMap<>();
+		for (String s : streams) last.put(s, "0");
+		while (running) {
+			try {
+				List<XReadArgs.StreamOffset<String>> offsets = new ArrayList<>();
+				last.forEach((s, id) -> offsets.add(XReadArgs.StreamOffset.from(s, id)));
+				@SuppressWarnings({"unchecked", "rawtypes"})
+				List<StreamMessage<String, String>> batch = reader.sync().xread(XReadArgs.Builder.block(1000),
+						offsets.toArray(new XReadArgs.StreamOffset[0]));
+				for (StreamMessage<String, String> m : batch) {
+					last.put(m.getStream(), m.getId());
+					String json = m.getBody().get("event");
+					if (json != null) add(json);
+				}
+			} catch (RuntimeException ex) {
+				if (running) log.warn("Stream read failed, retrying: {}", ex.toString());
+			}
+		}
+	}
+
+	private void add(String json) {
+		long now = System.nanoTime();
+		try {
+			JsonNode n = mapper.readTree(json);
+			events.add(new Event(n.path("type").asText(), n.hasNonNull("path") ? n.get("path").asText() : null,
+					n.hasNonNull("error") ? n.get("error").asText() : null, now));
+		} catch (Exception ex) {
+			log.warn("Unreadable event {}: {}", json, ex.toString());
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		if (streamReader != null) {
+			try {
+				streamReader.join(2000);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (pubsub != null) pubsub.close();
+		if (reader != null) reader.close();
+		client.shutdown();
+	}
+}
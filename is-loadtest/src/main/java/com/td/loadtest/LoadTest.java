@@ -0,0 +1,249 @@
+package com.td.loadtest;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test: the extractor, processor and uploader jars run as child JVMs against local
+ * stand-ins (a paginated users API, an SFTP server and Redis), one extraction of LOADTEST_USERS users
+ * flows through all three, and the run is reported as end-to-end latency, per-stage throughput and
+ * per-service peak heap (see Report).
+ * <p>
+ * The run is complete once the raw file has been processed (moved to .done) and every PROCESSED/DLQ
+ * file announced has landed on SFTP. Settings not set here (USERS_CONCURRENCY, PROCESSOR_PART_MB,
+ * DATA_CODEC, UPLOADER_WORKERS, ...) are passed through from the environment to the services.
+ */
+public final class LoadTest {
+
+	private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+	private static final List<String> MODULES = List.of("is-extractor-srv", "is-processor-srv", "is-uploader-srv");
+
+	/** Harness settings, from LOADTEST_* variables. */
+	record Settings(Path repo, Path workDir, Path report, int users, int pageLimit, long apiLatencyMs, long apiJitterMs,
+	                double apiErrorRate, double invalidRate, String xmx, Duration startDelay, Duration timeout,
+	                long sampleMs, boolean streams) {
+
+		static Settings fromEnv() {
+			return new Settings(
+					Path.of(env("LOADTEST_REPO", "..")).toAbsolutePath().normalize(),
+					Path.of(env("LOADTEST_WORKDIR", "target/run")).toAbsolutePath(),
+					Path.of(env("LOADTEST_REPORT", "target/loadtest-report.json")),
+					Integer.parseInt(env("LOADTEST_USERS", "1000000")),
+					Integer.parseInt(env("LOADTEST_PAGE_LIMIT", "100")),
+					Long.parseLong(env("LOADTEST_API_LATENCY_MS", "20")),
+					Long.parseLong(env("LOADTEST_API_JITTER_MS", "10")),
+					Double.parseDouble(env("LOADTEST_API_ERROR_RATE", "0")),
+					Double.parseDouble(env("LOADTEST_INVALID_RATE", "0.1")),
+					env("LOADTEST_XMX", "512m"),
+					Duration.ofSeconds(Long.parseLong(env("LOADTEST_START_DELAY_SECONDS", "45"))),
+					Duration.ofMinutes(Long.parseLong(env("LOADTEST_TIMEOUT_MINUTES", "60"))),
+					Long.parseLong(env("LOADTEST_SAMPLE_MS", "250")),
+					env("REDIS_TRANSPORT", "pubsub").equalsIgnoreCase("streams"));
+		}
+	}
+
+	private LoadTest() {}
+
+	public static void main(String[] args) throws Exception {
+		Settings s = Settings.fromEnv();
+		Report report = run(s);
+		report.print();
+		report.write(s.report());
+		System.exit(report.complete() ? 0 : 1);
+	}
+
+	static Report run(Settings s) throws Exception {
+		Path work = s.workDir();
+		deleteTree(work);
+		Path data = Files.createDirectories(work.resolve("data"));
+		Path key = work.resolve("sftp_key");
+		KeyPair kp = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 3072);
+		kp.writePrivateKey(key.toString());
+		kp.dispose();
+		Files.writeString(work.resolve("departments.csv"), UsersApiStub.departmentsCsv());
+		Path db = work.resolve("files.db");
+		schema(s.repo().resolve("db/schema.sql"), db);
+
+		int redisPort = freePort();
+		RedisServer redis = new RedisServer(redisPort);
+		redis.start();
+		List<ServiceProcess> services = new ArrayList<>();
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		try (UsersApiStub api = new UsersApiStub(s.users(), s.apiLatencyMs(), s.apiJitterMs(), s.apiErrorRate(), s.invalidRate());
+		     SftpStub sftp = new SftpStub(work.resolve("sftp"), work.resolve("sftp_host.ser"));
+		     EventTap tap = new EventTap(redisPort, List.of("files.events", "files.dlq"), s.streams())) {
+
+			// One extraction, started by the extractor's own scheduler once everything is up
+			LocalDateTime start = LocalDateTime.now().plus(s.startDelay()).withNano(0);
+			Map<String, String> env = new HashMap<>();
+			env.put("REDIS_HOST", "127.0.0.1");
+			env.put("REDIS_PORT", String.valueOf(redisPort));
+			env.put("REDIS_PASSWORD", "");
+			env.put("SPRING_DATA_REDIS_HOST", "127.0.0.1");
+			env.put("SPRING_DATA_REDIS_PORT", String.valueOf(redisPort));
+			env.put("SPRING_DATA_REDIS_PASSWORD", "");
+			env.put("DATA_DIR", data.toString());
+			env.put("EXTRACTORS", "users");
+			env.put("USERS_URL", api.url());
+			env.put("USERS_ARRAY_FIELD", "users");
+			env.put("USERS_LIMIT", String.valueOf(s.pageLimit()));
+			env.put("USERS_CRON", String.format("%d+%d+%d+%d+%d+?+%d", start.getSecond(), start.getMinute(),
+					start.getHour(), start.getDayOfMonth(), start.getMonthValue(), start.getYear()));
+			env.put("DEPARTMENTS_CSV", work.resolve("departments.csv").toString());
+			env.put("DB_URL", "jdbc:sqlite:" + db);
+			env.put("CRYPTO_KEY_HEX", randomHex(32));
+			env.put("CRYPTO_IV_HEX", randomHex(16));
+			env.put("SFTP_HOST", "127.0.0.1");
+			env.put("SFTP_PORT", String.valueOf(sftp.port()));
+			env.put("SFTP_USER", "camel");
+			env.put("SFTP_KEY_PATH", key.toString());
+			env.put("SFTP_KEY_PASSPHRASE", "");
+			env.put("SFTP_STRICT_HOST_KEY_CHECKING", "false");
+			env.put("SFTP_REMOTE_DIR", "/upload");
+
+			for (String module : MODULES) {
+				String name = module.substring("is-".length(), module.length() - "-srv".length());
+				services.add(ServiceProcess.start(name, ServiceProcess.jar(s.repo(), module), freePort(), s.xmx(), env, work));
+			}
+			for (ServiceProcess p : services) p.awaitHealthy(Duration.ofMinutes(2));
+			if (LocalDateTime.now().isAfter(start))
+				throw new IllegalStateException("Services were not up before the extraction time; raise LOADTEST_START_DELAY_SECONDS");
+			sampler.scheduleAtFixedRate(() -> services.forEach(ServiceProcess::sampleHeap), 0, s.sampleMs(), TimeUnit.MILLISECONDS);
+			log.info("{} users, extraction starts at {}; services log to {}", s.users(), start.toLocalTime(), work);
+
+			long deadline = System.nanoTime() + s.startDelay().plus(s.timeout()).toNanos();
+			long nextProgress = 0;
+			boolean complete = false;
+			String failure = null;
+			while (System.nanoTime() < deadline) {
+				if ((failure = failure(tap, services)) != null) break;
+				// Twice in a row: an event published just before the move may still be on its way
+				if (finished(tap, sftp, data)) {
+					Thread.sleep(500);
+					if (complete = finished(tap, sftp, data)) break;
+				}
+				if (System.nanoTime() > nextProgress) {
+					log.info("{} pages served, {} events, {} files landed", api.pages(), tap.events().size(), sftp.landings().size());
+					nextProgress = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+				}
+				Thread.sleep(200);
+			}
+			if (!complete && failure == null) failure = "Timed out after " + s.timeout().toMinutes() + " min";
+			sampler.shutdown();
+			sampler.awaitTermination(5, TimeUnit.SECONDS);
+			services.forEach(ServiceProcess::sampleHeap);
+			return Report.of(s, api, tap, sftp, services, rawBytes(data), complete, failure);
+		} finally {
+			sampler.shutdownNow();
+			for (ServiceProcess p : services) p.close();
+			redis.stop();
+		}
+	}
+
+	/** PROCESSED and DLQ events that name a file (a DLQ event without a path is a failed extraction). */
+	static List<EventTap.Event> outputs(EventTap tap) {
+		return tap.events().stream()
+				.filter(e -> (e.type().equals("PROCESSED") || e.type().equals("DLQ")) && e.path() != null).toList();
+	}
+
+	/** Landed files by {@link #stem}. */
+	static Map<String, SftpStub.Landing> landedByStem(SftpStub sftp) {
+		Map<String, SftpStub.Landing> m = new HashMap<>();
+		sftp.landings().forEach((name, l) -> m.put(stem(name), l));
+		return m;
+	}
+
+	/** A file name without .enc and the codec extension: etl_1.jsonl.gz and etl_1.jsonl.gz.enc are both etl_1.jsonl. */
+	static String stem(String name) {
+		if (name.endsWith(".enc")) name = name.substring(0, name.length() - 4);
+		if (name.endsWith(".gz")) return name.substring(0, name.length() - 3);
+		if (name.endsWith(".zst")) return name.substring(0, name.length() - 4);
+		return name;
+	}
+
+	private static String failure(EventTap tap, List<ServiceProcess> services) {
+		for (EventTap.Event e : tap.events("DLQ"))
+			if (e.path() == null) return "Extraction failed: " + e.error();
+		for (ServiceProcess p : services)
+			if (!p.alive()) return p.name() + " exited, see its log";
+		return null;
+	}
+
+	private static boolean finished(EventTap tap, SftpStub sftp, Path data) throws IOException {
+		if (tap.events("RAW").isEmpty() || rawBytes(data) < 0) return false;
+		Map<String, SftpStub.Landing> landed = landedByStem(sftp);
+		for (EventTap.Event e : outputs(tap))
+			if (!landed.containsKey(stem(Path.of(e.path()).getFileName().toString()))) return false;
+		return true;
+	}
+
+	// Size of the raw files the processor is done with, -1 while there are none
+	private static long rawBytes(Path data) throws IOException {
+		Path done = data.resolve("raw_users/users/.done");
+		if (!Files.isDirectory(done)) return -1;
+		try (Stream<Path> files = Files.list(done)) {
+			List<Path> raw = files.filter(p -> p.getFileName().toString().startsWith("records_")).toList();
+			if (raw.isEmpty()) return -1;
+			long bytes = 0;
+			for (Path p : raw) bytes += Files.size(p);
+			return bytes;
+		}
+	}
+
+	// The uploader expects the tables of db/schema.sql to exist, as the compose sqlite init creates them
+	private static void schema(Path sql, Path db) throws Exception {
+		String script = Files.readString(sql).replaceAll("(?m)^--.*$", "");
+		try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db); Statement st = c.createStatement()) {
+			for (String stmt : script.split(";"))
+				if (!stmt.isBlank()) st.execute(stmt);
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	private static String randomHex(int bytes) {
+		byte[] b = new byte[bytes];
+		new SecureRandom().nextBytes(b);
+		return HexFormat.of().formatHex(b);
+	}
+
+	private static void deleteTree(Path dir) throws IOException {
+		if (!Files.exists(dir)) return;
+		try (Stream<Path> all = Files.walk(dir)) {
+			for (Path p : all.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+		}
+	}
+
+	private static String env(String key, String dft) {
+		String v = System.getenv(key);
+		return (v == null || v.isBlank()) ? dft : v;
+	}
+}
@@ -0,0 +1,149 @@
+package com.td.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a run, written as JSON. Times come from one clock in the harness:
+ * <ul>
+ *   <li>extract: first page served until the RAW event</li>
+ *   <li>process: RAW event until the last PROCESSED/DLQ event</li>
+ *   <li>upload: first PROCESSED/DLQ event until the last of those files landed on SFTP</li>
+ *   <li>end to end: first page served until the last output landed, and per output file event -> landing</li>
+ * </ul>
+ */
+final class Report {
+
+	private static final Logger log = LoggerFactory.getLogger(Report.class);
+	private static final double MB = 1024 * 1024;
+
+	private final Map<String, Object> json;
+	private final boolean complete;
+
+	private Report(Map<String, Object> json, boolean complete) {
+		this.json = json;
+		this.complete = complete;
+	}
+
+	boolean complete() {
+		return complete;
+	}
+
+	static Report of(LoadTest.Settings s, UsersApiStub api, EventTap tap, SftpStub sftp, List<ServiceProcess> services,
+	                 long rawBytes, boolean complete, String failure) {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("complete", complete);
+		json.put("failure", failure);
+		json.put("settings", s);
+
+		long t0 = api.firstServedNanos();
+		List<EventTap.Event> raw = tap.events("RAW");
+		List<EventTap.Event> outputs = LoadTest.outputs(tap);
+		Map<String, SftpStub.Landing> landed = LoadTest.landedByStem(sftp);
+		long rawAt = raw.isEmpty() ? 0 : raw.getFirst().nanos();
+
+		long firstOutput = Long.MAX_VALUE, lastOutput = 0, firstLanding = Long.MAX_VALUE, lastLanding = 0, bytes = 0;
+		long[] latency = new long[outputs.size()];
+		int files = 0;
+		for (EventTap.Event e : outputs) {
+			firstOutput = Math.min(firstOutput, e.nanos());
+			lastOutput = Math.max(lastOutput, e.nanos());
+			SftpStub.Landing l = landed.get(LoadTest.stem(Path.of(e.path()).getFileName().toString()));
+			if (l == null) continue;
+			firstLanding = Math.min(firstLanding, l.nanos());
+			lastLanding = Math.max(lastLanding, l.nanos());
+			bytes += l.bytes();
+			latency[files++] = l.nanos() - e.nanos();
+		}
+		latency = Arrays.copyOf(latency, files);
+		Arrays.sort(latency);
+
+		ServiceProcess extractor = services.get(0), processor = services.get(1), uploader = services.get(2);
+		double extracted = extractor.metric("extractor.records", "COUNT");
+		double processed = processor.metric("processor.records", "COUNT");
+
+		Map<String, Object> e2e = new LinkedHashMap<>();
+		e2e.put("seconds", seconds(t0, lastLanding));
+		e2e.put("recordsPerSecond", rate(processed, t0, lastLanding));
+		e2e.put("firstOutputLandedSeconds", seconds(t0, firstLanding));
+		Map<String, Object> perFile = new LinkedHashMap<>();
+		perFile.put("files", files);
+		perFile.put("p50Ms", percentileMs(latency, 0.50));
+		perFile.put("p95Ms", percentileMs(latency, 0.95));
+		perFile.put("maxMs", percentileMs(latency, 1.0));
+		e2e.put("outputEventToLanding", perFile);
+		json.put("endToEnd", e2e);
+
+		Map<String, Object> stages = new LinkedHashMap<>();
+		Map<String, Object> extract = new LinkedHashMap<>();
+		extract.put("seconds", seconds(t0, rawAt));
+		extract.put("records", extracted);
+		extract.put("recordsPerSecond", rate(extracted, t0, rawAt));
+		extract.put("pagesServed", api.pages());
+		extract.put("recordsServed", api.records());
+		extract.put("apiErrors", api.errors());
+		extract.put("rawMb", rawBytes / MB);
+		stages.put("extract", extract);
+
+		Map<String, Object> process = new LinkedHashMap<>();
+		process.put("seconds", seconds(rawAt, lastOutput));
+		process.put("records", processed);
+		process.put("recordsPerSecond", rate(processed, rawAt, lastOutput));
+		process.put("outputFiles", outputs.size());
+		stages.put("process", process);
+
+		Map<String, Object> upload = new LinkedHashMap<>();
+		upload.put("seconds", seconds(firstOutput, lastLanding));
+		upload.put("files", files);
+		upload.put("mb", bytes / MB);
+		upload.put("mbPerSecond", rate(bytes / MB, firstOutput, lastLanding));
+		upload.put("uploads", sftp.uploads());
+		upload.put("bytesReported", uploader.metric("uploader.upload.bytes", "COUNT"));
+		stages.put("upload", upload);
+		json.put("stages", stages);
+
+		Map<String, Object> heap = new LinkedHashMap<>();
+		for (ServiceProcess p : services) heap.put(p.name(), Map.of("peakHeapMb", p.peakHeapBytes() / MB));
+		json.put("services", heap);
+		return new Report(json, complete);
+	}
+
+	void write(Path file) throws IOException {
+		if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), json);
+		log.info("Report written to {}", file.toAbsolutePath());
+	}
+
+	@SuppressWarnings("unchecked")
+	void print() {
+		Map<String, Object> stages = (Map<String, Object>) json.get("stages");
+		log.info("complete={} failure={}", json.get("complete"), json.get("failure"));
+		log.info("end to end: {}", json.get("endToEnd"));
+		stages.forEach((stage, m) -> log.info("{}: {}", stage, m));
+		log.info("peak heap: {}", json.get("services"));
+	}
+
+	private static double seconds(long from, long to) {
+		return from <= 0 || to <= 0 || to < from || to == Long.MAX_VALUE ? Double.NaN : (to - from) / 1e9;
+	}
+
+	private static double rate(double amount, long from, long to) {
+		double s = seconds(from, to);
+		return Double.isNaN(s) || s == 0 ? Double.NaN : amount / s;
+	}
+
+	private static double percentileMs(long[] sorted, double p) {
+		if (sorted.length == 0) return Double.NaN;
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+	}
+}
@@ -0,0 +1,131 @@
+package com.td.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * One service running from its Spring Boot jar in a child JVM, output in {@code <name>.log}.
+ * Heap use is sampled from its actuator ({@code jvm.memory.used}, area heap) and the peak kept.
+ */
+final class ServiceProcess implements AutoCloseable {
+
+	private static final HttpClient HTTP = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final String name;
+	private final int port;
+	private final Process process;
+	private final Path log;
+	private final AtomicLong peakHeap = new AtomicLong();
+
+	private ServiceProcess(String name, int port, Process process, Path log) {
+		this.name = name;
+		this.port = port;
+		this.process = process;
+		this.log = log;
+	}
+
+	/** Starts {@code java -Xmx<xmx> -jar <jar>} with the harness environment plus {@code env}. */
+	static ServiceProcess start(String name, Path jar, int port, String xmx, Map<String, String> env, Path workDir) throws IOException {
+		Path log = workDir.resolve(name + ".log");
+		List<String> cmd = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+				"-Xmx" + xmx, "-jar", jar.toString()));
+		ProcessBuilder pb = new ProcessBuilder(cmd).directory(workDir.toFile())
+				.redirectErrorStream(true).redirectOutput(log.toFile());
+		pb.environment().putAll(env);
+		pb.environment().put("SERVER_PORT", String.valueOf(port));
+		return new ServiceProcess(name, port, pb.start(), log);
+	}
+
+	/** The service's executable jar in {@code <module>/target} (not the plain *.jar.original). */
+	static Path jar(Path repo, String module) throws IOException {
+		Path target = repo.resolve(module).resolve("target");
+		if (Files.isDirectory(target)) {
+			try (Stream<Path> files = Files.list(target)) {
+				List<Path> jars = files.filter(p -> p.getFileName().toString().endsWith(".jar")).sorted().toList();
+				if (!jars.isEmpty()) return jars.getLast();
+			}
+		}
+		throw new IOException("No jar in " + target + ": build it first (mvn -DskipTests package in " + module + ")");
+	}
+
+	String name() {
+		return name;
+	}
+
+	boolean alive() {
+		return process.isAlive();
+	}
+
+	/** Waits for /actuator/health to answer 200. */
+	void awaitHealthy(Duration timeout) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (System.nanoTime() < deadline) {
+			if (!process.isAlive())
+				throw new IOException(name + " exited with " + process.exitValue() + ", see " + log);
+			try {
+				HttpResponse<Void> r = HTTP.send(request("/actuator/health"), HttpResponse.BodyHandlers.discarding());
+				if (r.statusCode() == 200) return;
+			} catch (IOException notYet) {
+				// still starting
+			}
+			Thread.sleep(250);
+		}
+		throw new IOException(name + " not healthy after " + timeout.toSeconds() + " s, see " + log);
+	}
+
+	/** Reads the current heap use and keeps it if it is the highest so far. */
+	void sampleHeap() {
+		double used = metric("jvm.memory.used?tag=area:heap", "VALUE");
+		if (!Double.isNaN(used)) peakHeap.accumulateAndGet((long) used, Math::max);
+	}
+
+	long peakHeapBytes() {
+		return peakHeap.get();
+	}
+
+	/** A statistic (COUNT, VALUE, TOTAL, ...) of an actuator metric summed over its tags; NaN if unavailable. */
+	double metric(String nameAndTags, String statistic) {
+		try {
+			HttpResponse<String> r = HTTP.send(request("/actuator/metrics/" + nameAndTags), HttpResponse.BodyHandlers.ofString());
+			if (r.statusCode() != 200) return Double.NaN;
+			for (JsonNode m : MAPPER.readTree(r.body()).path("measurements"))
+				if (statistic.equals(m.path("statistic").asText())) return m.path("value").asDouble();
+		} catch (IOException ex) {
+			// not up, or already gone
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		return Double.NaN;
+	}
+
+	private HttpRequest request(String path) {
+		return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).timeout(Duration.ofSeconds(5)).build();
+	}
+
+	@Override
+	public void close() {
+		process.destroy();
+		try {
+			if (!process.waitFor(20, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+		} catch (InterruptedException ex) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.td.loadtest;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.Handle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded SFTP server rooted at a local directory; any public key is accepted.
+ * Records when each uploaded file lands (its write handle is closed) and how big it is.
+ */
+final class SftpStub implements AutoCloseable {
+
+	/** First time a file landed; later uploads of the same name only count in {@link #uploads()}. */
+	record Landing(String name, long nanos, long bytes) {}
+
+	private final SshServer sshd;
+	private final Map<String, Landing> landings = new ConcurrentHashMap<>();
+	private final AtomicLong uploads = new AtomicLong();
+
+	SftpStub(Path root, Path hostKey) throws IOException {
+		Files.createDirectories(root);
+		SftpSubsystemFactory sftp = new SftpSubsystemFactory();
+		sftp.addSftpEventListener(new SftpEventListener() {
+			@Override
+			public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) throws IOException {
+				if (thrown != null || !(localHandle instanceof FileHandle)) return;
+				long now = System.nanoTime();
+				Path file = localHandle.getFile();
+				String name = file.getFileName().toString();
+				uploads.incrementAndGet();
+				landings.putIfAbsent(name, new Landing(name, now, Files.size(file)));
+			}
+		});
+
+		sshd = SshServer.setUpDefaultServer();
+		sshd.setHost("127.0.0.1");
+		sshd.setPort(0);
+		sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(hostKey));
+		sshd.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+		sshd.setFileSystemFactory(new VirtualFileSystemFactory(root));
+		sshd.setSubsystemFactories(List.of(sftp));
+		sshd.start();
+	}
+
+	int port() {
+		return sshd.getPort();
+	}
+
+	/** Remote file name -> first landing. */
+	Map<String, Landing> landings() {
+		return landings;
+	}
+
+	/** Uploads closed without error, repeats included. */
+	long uploads() {
+		return uploads.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		sshd.stop(true);
+	}
+}
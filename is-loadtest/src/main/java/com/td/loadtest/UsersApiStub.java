@@ -0,0 +1,167 @@
+package com.td.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for https://dummyjson.com/users: {@code GET /users?limit=&skip=} returns
+ * {"users":[...],"total":..,"skip":..,"limit":..} over {@code total} synthetic users.
+ * A user is a function of its id, so a retried or resumed page returns the same records.
+ * Every request waits {@code latencyMs} plus up to {@code jitterMs}, and fails with a 500 with probability {@code errorRate}.
+ */
+final class UsersApiStub implements AutoCloseable {
+
+	private static final String[] DEPARTMENTS = {
+			"Engineering", "Support", "Marketing", "Sales", "Legal", "Accounting",
+			"Human Resources", "Product Management", "Research and Development", "Services"
+	};
+	private static final String[] FIRST = {"Emily", "Michael", "Sophia", "James", "Emma", "Olivia", "Alexander", "Ava"};
+	private static final String[] LAST = {"Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Wilson"};
+
+	private final HttpServer server;
+	private final int total;
+	private final long latencyMs;
+	private final long jitterMs;
+	private final double errorRate;
+	private final double invalidRate;
+
+	private final AtomicLong firstServed = new AtomicLong();
+	private final AtomicLong lastServed = new AtomicLong();
+	private final AtomicLong pages = new AtomicLong();
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+
+	UsersApiStub(int total, long latencyMs, long jitterMs, double errorRate, double invalidRate) throws IOException {
+		this.total = total;
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+		this.errorRate = errorRate;
+		this.invalidRate = invalidRate;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/users", this::handle);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+	}
+
+	/** departments.csv for the processor, with a code for every department the users work in. */
+	static String departmentsCsv() {
+		StringBuilder sb = new StringBuilder("department,code\n");
+		for (String d : DEPARTMENTS) sb.append(d).append(',').append(d.substring(0, 3).toUpperCase()).append('\n');
+		return sb.toString();
+	}
+
+	String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/users";
+	}
+
+	/** System.nanoTime() of the first page served, 0 before that. */
+	long firstServedNanos() {
+		return firstServed.get();
+	}
+
+	long lastServedNanos() {
+		return lastServed.get();
+	}
+
+	long pages() {
+		return pages.get();
+	}
+
+	/** Records sent, retried pages included. */
+	long records() {
+		return records.get();
+	}
+
+	long errors() {
+		return errors.get();
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		try (ex) {
+			int limit = 30, skip = 0;
+			String query = ex.getRequestURI().getRawQuery();
+			if (query != null) {
+				try {
+					for (String kv : query.split("&")) {
+						int eq = kv.indexOf('=');
+						if (eq < 0) continue;
+						String k = kv.substring(0, eq), v = kv.substring(eq + 1);
+						if (k.equals("limit")) limit = Integer.parseInt(v);
+						else if (k.equals("skip")) skip = Integer.parseInt(v);
+					}
+				} catch (NumberFormatException e) {
+					// Still inside try (ex): the exchange is open until the 400 is sent
+					ex.sendResponseHeaders(400, -1);
+					return;
+				}
+			}
+			ThreadLocalRandom rnd = ThreadLocalRandom.current();
+			long wait = latencyMs + (jitterMs > 0 ? rnd.nextLong(jitterMs + 1) : 0);
+			if (wait > 0) Thread.sleep(wait);
+
+			if (errorRate > 0 && rnd.nextDouble() < errorRate) {
+				errors.incrementAndGet();
+				ex.sendResponseHeaders(500, -1);
+				return;
+			}
+			int n = Math.max(0, Math.min(limit, total - skip));
+			byte[] body = page(skip, n).getBytes(StandardCharsets.UTF_8);
+			ex.getResponseHeaders().set("Content-Type", "application/json");
+			ex.sendResponseHeaders(200, body.length);
+			try (OutputStream out = ex.getResponseBody()) {
+				out.write(body);
+			}
+			long now = System.nanoTime();
+			firstServed.compareAndSet(0, now);
+			lastServed.accumulateAndGet(now, Math::max);
+			pages.incrementAndGet();
+			records.addAndGet(n);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String page(int skip, int n) {
+		StringBuilder sb = new StringBuilder(n * 700 + 64).append("{\"users\":[");
+		for (int i = 0; i < n; i++) {
+			if (i > 0) sb.append(',');
+			user(sb, skip + i + 1);
+		}
+		return sb.append("],\"total\":").append(total).append(",\"skip\":").append(skip)
+				.append(",\"limit\":").append(n).append('}').toString();
+	}
+
+	// Same shape as the real feed; invalidRate of them are out of the 18-65 age range
+	private void user(StringBuilder sb, long id) {
+		Random rnd = new Random(id * 0x9E3779B97F4A7C15L);
+		String first = FIRST[rnd.nextInt(FIRST.length)];
+		String last = LAST[rnd.nextInt(LAST.length)];
+		int age = rnd.nextDouble() < invalidRate ? 66 + rnd.nextInt(20) : 18 + rnd.nextInt(48);
+		String dep = DEPARTMENTS[rnd.nextInt(DEPARTMENTS.length)];
+		sb.append("{\"id\":").append(id)
+				.append(",\"firstName\":\"").append(first).append("\",\"lastName\":\"").append(last).append("\",\"maidenName\":\"\"")
+				.append(",\"age\":").append(age).append(",\"gender\":\"").append(rnd.nextBoolean() ? "female" : "male").append('"')
+				.append(",\"email\":\"").append(first.toLowerCase()).append('.').append(last.toLowerCase()).append(id).append("@x.dummyjson.com\"")
+				.append(",\"phone\":\"+81 965-431-").append(1000 + rnd.nextInt(9000)).append('"')
+				.append(",\"username\":\"").append(first.toLowerCase()).append(id).append("\",\"birthDate\":\"1996-5-30\"")
+				.append(",\"bloodGroup\":\"O-\",\"height\":").append(150 + rnd.nextInt(50)).append(".5,\"weight\":").append(50 + rnd.nextInt(50)).append(".3")
+				.append(",\"address\":{\"address\":\"626 Main Street\",\"city\":\"Phoenix\",\"state\":\"Mississippi\"")
+				.append(",\"postalCode\":\"29112\",\"coordinates\":{\"lat\":-77.16213,\"lng\":-92.084824},\"country\":\"United States\"}")
+				.append(",\"company\":{\"department\":\"").append(dep).append("\",\"name\":\"Dooley, Kozey and Cronin\",\"title\":\"Sales Manager\"}")
+				.append(",\"role\":\"admin\"}");
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
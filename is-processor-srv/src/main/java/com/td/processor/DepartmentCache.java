@@ -0,0 +1,113 @@
+package com.td.processor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * departments.csv (department,code) loaded once and kept in memory.
+ * The file mtime is polled in background; on change a new immutable map is built
+ * and swapped in, so readers always see a complete snapshot without locking.
+ * A missing or empty file leaves codes at UNK and is logged once, not on every poll;
+ * later failures keep serving the last good snapshot.
+ */
+@Component
+public class DepartmentCache implements AutoCloseable {
+	private static final Logger log = LoggerFactory.getLogger(DepartmentCache.class);
+
+	private final Path csv;
+	private final ScheduledExecutorService watcher;
+	private final AtomicLong loads = new AtomicLong();
+
+	private volatile Map<String,String> codes = Map.of();
+	private volatile FileTime loadedMtime;
+	private volatile long lastReloadMs;
+	private boolean missing;
+
+	@Autowired
+	public DepartmentCache(Environment env, MeterRegistry registry) {
+		this(Paths.get(env.getProperty("DEPARTMENTS_CSV", "/data/departments.csv")),
+				Long.parseLong(env.getProperty("DEPARTMENTS_RELOAD_SECONDS", "30")));
+
+		Gauge.builder("processor.departments.loads", loads, AtomicLong::get)
+				.description("Times departments.csv was (re)loaded").register(registry);
+		Gauge.builder("processor.departments.entries", this, c -> c.codes.size())
+				.description("Departments currently cached").register(registry);
+		Gauge.builder("processor.departments.last.reload", this, c -> c.lastReloadMs / 1000.0)
+				.description("Epoch seconds of the last reload").baseUnit("seconds").register(registry);
+	}
+
+	public DepartmentCache(Path csv, long reloadSeconds) {
+		this.csv = csv;
+		reloadIfChanged();
+		if (reloadSeconds > 0) {
+			watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "departments-watcher");
+				t.setDaemon(true);
+				return t;
+			});
+			watcher.scheduleWithFixedDelay(this::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+		} else {
+			watcher = null;
+		}
+	}
+
+	/** Current immutable snapshot: department -> code. */
+	public Map<String,String> codes() {
+		return codes;
+	}
+
+	public long loadCount() {
+		return loads.get();
+	}
+
+	synchronized void reloadIfChanged() {
+		try {
+			FileTime mtime = Files.getLastModifiedTime(csv);
+			if (missing) log.info("Departments file is back: {}", csv);
+			missing = false;
+			if (mtime.equals(loadedMtime)) return;
+
+			Map<String,String> m = new HashMap<>();
+			try (BufferedReader br = Files.newBufferedReader(csv)) {
+				String line; boolean header = true;
+				while ((line = br.readLine()) != null) {
+					if (header) { header = false; continue; }
+					String[] p = line.split(",");
+					if (p.length >= 2) m.put(p[0].trim().intern(), p[1].trim().intern());
+				}
+			}
+			codes = Map.copyOf(m);
+			loadedMtime = mtime;
+			lastReloadMs = System.currentTimeMillis();
+			loads.incrementAndGet();
+			if (m.isEmpty()) log.warn("No departments in {} (codes default to UNK)", csv);
+			else log.info("Loaded {} departments from {}", m.size(), csv);
+		} catch (NoSuchFileException ex) {
+			// once per disappearance, not on every poll
+			if (!missing) log.warn("Departments file not found: {} (serving {} cached departments, UNK for the rest)", csv, codes.size());
+			missing = true;
+		} catch (IOException | RuntimeException ex) {
+			// keep serving the previous snapshot
+			log.error("Could not reload {}", csv, ex);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (watcher != null) watcher.shutdownNow();
+	}
+}
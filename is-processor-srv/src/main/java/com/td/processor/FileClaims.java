@@ -0,0 +1,158 @@
+package com.td.processor;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis leases on input files, shared by every processor replica, so each file is processed by exactly one.
+ * Used as the file consumer's read lock ({@code readLock=idempotent&idempotentRepository=#fileClaims}) and
+ * for the byte ranges of a sharded file (see ShardedFiles).
+ * <p>
+ * A claim is {@code SET key owner NX PX lease}, renewed by this replica every third of the lease while held,
+ * so a crashed replica's claims expire and another one takes the work over. A confirmed claim becomes
+ * {@code done} and is kept for {@code keepDone}, which stops replicas that listed the file before it was
+ * moved from processing it again. Renew, confirm and release only touch a key this replica still owns.
+ */
+@Component
+public class FileClaims extends ServiceSupport implements IdempotentRepository {
+
+	private static final Logger log = LoggerFactory.getLogger(FileClaims.class);
+
+	static final String PREFIX = "processor:claim:";
+	static final String DONE = "done";
+
+	private static final RedisScript<Long> RENEW = RedisScript.of(
+			"if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end return 0", Long.class);
+	private static final RedisScript<Long> CONFIRM = RedisScript.of(
+			"if redis.call('GET', KEYS[1]) == ARGV[1] then redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1 end return 0", Long.class);
+	private static final RedisScript<Long> RELEASE = RedisScript.of(
+			"if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0", Long.class);
+
+	private final StringRedisTemplate redis;
+	private final String owner;
+	private final Duration lease;
+	private final Duration keepDone;
+	private final Set<String> held = ConcurrentHashMap.newKeySet();
+	private ScheduledExecutorService renewer;
+
+	@Autowired
+	public FileClaims(LettuceConnectionFactory cf, Environment env) {
+		this(cf, System.getenv().getOrDefault("HOSTNAME", "processor") + "-" + UUID.randomUUID().toString().substring(0, 8),
+				Duration.ofSeconds(Long.parseLong(env.getProperty("PROCESSOR_CLAIM_TTL_SECONDS", "30"))),
+				Duration.ofHours(Long.parseLong(env.getProperty("PROCESSOR_CLAIM_KEEP_HOURS", "24"))));
+	}
+
+	public FileClaims(RedisConnectionFactory cf, String owner, Duration lease, Duration keepDone) {
+		this.redis = new StringRedisTemplate(cf);
+		this.owner = owner;
+		this.lease = lease;
+		this.keepDone = keepDone;
+	}
+
+	/** This replica's name in the claims. */
+	public String owner() {
+		return owner;
+	}
+
+	/** Claims {@code key} for this replica; false when another one holds it or it is already done. */
+	@Override
+	public boolean add(String key) {
+		if (!Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(PREFIX + key, owner, lease))) return false;
+		held.add(key);
+		return true;
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return Boolean.TRUE.equals(redis.hasKey(PREFIX + key));
+	}
+
+	/** Gives the claim up so any replica can take it again (processing failed). */
+	@Override
+	public boolean remove(String key) {
+		held.remove(key);
+		return run(RELEASE, key, owner) == 1;
+	}
+
+	/** Marks the work done; false when the lease had been lost to another replica in the meantime. */
+	@Override
+	public boolean confirm(String key) {
+		held.remove(key);
+		boolean ok = run(CONFIRM, key, owner, DONE, String.valueOf(keepDone.toMillis())) == 1;
+		if (!ok) log.warn("Claim on {} was lost before it was confirmed; it may have been processed twice", key);
+		return ok;
+	}
+
+	/** Which of {@code keys} are done. */
+	public boolean[] done(List<String> keys) {
+		List<String> values = redis.opsForValue().multiGet(keys.stream().map(k -> PREFIX + k).toList());
+		boolean[] done = new boolean[keys.size()];
+		for (int i = 0; i < done.length; i++) done[i] = values != null && DONE.equals(values.get(i));
+		return done;
+	}
+
+	/** Forgets finished claims, e.g. the ranges of a sharded file once it has been moved away. */
+	public void forget(Collection<String> keys) {
+		redis.delete(keys.stream().map(k -> PREFIX + k).toList());
+	}
+
+	/** Releases every claim this replica holds. */
+	@Override
+	public void clear() {
+		for (String key : new ArrayList<>(held)) remove(key);
+	}
+
+	@Override
+	protected void doStart() {
+		renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "claims-renew");
+			t.setDaemon(true);
+			return t;
+		});
+		long every = Math.max(1, lease.toMillis() / 3);
+		renewer.scheduleWithFixedDelay(this::renew, every, every, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	protected void doStop() {
+		if (renewer != null) renewer.shutdownNow();
+		clear();
+	}
+
+	private void renew() {
+		for (String key : held) {
+			try {
+				if (run(RENEW, key, owner, String.valueOf(lease.toMillis())) == 0 && held.remove(key))
+					log.warn("Lost the claim on {} (lease expired before it was renewed)", key);
+			} catch (Exception ex) {
+				// Redis unreachable: the next round tries again while the lease lasts
+				log.warn("Could not renew the claim on {}: {}", key, ex.toString());
+			}
+		}
+	}
+
+	private long run(RedisScript<Long> script, String key, String... args) {
+		Long n = redis.execute(script, List.of(PREFIX + key), (Object[]) args);
+		return n == null ? 0 : n;
+	}
+}
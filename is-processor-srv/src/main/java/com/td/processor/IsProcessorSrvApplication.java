@@ -1,13 +1,28 @@
 package com.td.processor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.FileEventPublisher;
+import com.td.common.JsonConfig;
+import org.apache.camel.ProducerTemplate;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
 @SpringBootApplication
+@Import(JsonConfig.class)
 public class IsProcessorSrvApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(IsProcessorSrvApplication.class, args);
 	}
 
+	@Bean
+	public FileEventPublisher fileEventPublisher(LettuceConnectionFactory cf, ProducerTemplate template, ObjectMapper mapper,
+	                                             Environment env) {
+		return new FileEventPublisher(cf, template, mapper, env, "spring-redis://{{REDIS_HOST}}:{{REDIS_PORT}}?command=PUBLISH&channel=");
+	}
+
 }
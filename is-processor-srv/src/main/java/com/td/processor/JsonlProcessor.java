@@ -0,0 +1,164 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.td.common.DataCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Validates and enriches a records_*.jsonl file against the extractor's RuleSet.
+ * The input is read line by line through a bounded buffer and every record is written
+ * straight to the ok/DLQ writers, so heap usage stays flat whatever the file size.
+ * With PROCESSOR_PARALLELISM > 1 the lines are cut into chunks validated on a worker pool;
+ * chunks are written back in input order, so the output is identical to the sequential path.
+ */
+@Component
+public class JsonlProcessor implements AutoCloseable {
+	// Read/write buffer per stream (chars)
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	// Lines per parallel work unit
+	static final int CHUNK_LINES = 1024;
+
+	private final ObjectMapper mapper;
+	private final int parallelism;
+	private final ExecutorService pool;
+
+	@Autowired
+	public JsonlProcessor(ObjectMapper mapper, Environment env) {
+		this(mapper, Integer.parseInt(env.getProperty("PROCESSOR_PARALLELISM",
+				String.valueOf(Runtime.getRuntime().availableProcessors()))));
+	}
+
+	public JsonlProcessor(ObjectMapper mapper, int parallelism) {
+		this.mapper = mapper;
+		this.parallelism = Math.max(1, parallelism);
+		this.pool = this.parallelism > 1 ? Executors.newFixedThreadPool(this.parallelism) : null;
+	}
+
+	public Result process(Path in, Path okOut, Path dlqOut, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		try (BufferedWriter ok = writer(okOut);
+		     BufferedWriter dlq = writer(dlqOut)) {
+			return process(in, ok, dlq, rules, deptMap);
+		}
+	}
+
+	/**
+	 * Streams {@code in} into caller-owned writers (e.g. RollingJsonlWriter parts); the writers are not closed.
+	 * A *.gz / *.zst input is decompressed on the fly (see DataCodec).
+	 */
+	public Result process(Path in, Writer ok, Writer dlq, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		try (BufferedReader r = new BufferedReader(new InputStreamReader(
+				DataCodec.forFile(in).decompress(Files.newInputStream(in)), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			return process(r, ok, dlq, rules, deptMap);
+		}
+	}
+
+	public Result process(BufferedReader in, Writer ok, Writer dlq, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		return pool == null ? sequential(in, ok, dlq, rules, deptMap) : parallel(in, ok, dlq, rules, deptMap);
+	}
+
+	private Result sequential(BufferedReader in, Writer ok, Writer dlq, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		long valid = 0, invalid = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.isBlank()) continue;
+			ObjectNode u = (ObjectNode) mapper.readTree(line);
+			if (rules.apply(u, deptMap)) {
+				ok.write(u.toString()); ok.write('\n');
+				valid++;
+			} else {
+				dlq.write(u.toString()); dlq.write('\n');
+				invalid++;
+			}
+		}
+		return new Result(valid, invalid);
+	}
+
+	private Result parallel(BufferedReader in, Writer ok, Writer dlq, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		// At most 2 chunks per worker in flight keeps memory bounded
+		Deque<Future<Chunk>> pending = new ArrayDeque<>();
+		long valid = 0, invalid = 0;
+		try {
+			List<String> lines = new ArrayList<>(CHUNK_LINES);
+			String line;
+			while (true) {
+				line = in.readLine();
+				if (line != null && !line.isBlank()) lines.add(line);
+				if (lines.size() == CHUNK_LINES || (line == null && !lines.isEmpty())) {
+					List<String> work = lines;
+					pending.add(pool.submit(() -> validateChunk(work, rules, deptMap)));
+					lines = new ArrayList<>(CHUNK_LINES);
+				}
+				// Drain in submission order
+				while (!pending.isEmpty() && (line == null || pending.size() >= parallelism * 2)) {
+					Chunk c = await(pending.poll());
+					ok.append(c.ok);
+					dlq.append(c.dlq);
+					valid += c.valid;
+					invalid += c.invalid;
+				}
+				if (line == null) break;
+			}
+		} finally {
+			pending.forEach(f -> f.cancel(true));
+		}
+		return new Result(valid, invalid);
+	}
+
+	private Chunk validateChunk(List<String> lines, RuleSet rules, Map<String,String> deptMap) throws IOException {
+		Chunk c = new Chunk();
+		for (String line : lines) {
+			ObjectNode u = (ObjectNode) mapper.readTree(line);
+			if (rules.apply(u, deptMap)) {
+				c.ok.append(u).append('\n');
+				c.valid++;
+			} else {
+				c.dlq.append(u).append('\n');
+				c.invalid++;
+			}
+		}
+		return c;
+	}
+
+	private static Chunk await(Future<Chunk> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while validating");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException io) throw io;
+			if (ex.getCause() instanceof RuntimeException re) throw re;
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	// Compressed when the name says so (etl_X.jsonl.gz)
+	private static BufferedWriter writer(Path out) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(DataCodec.forFile(out).compress(
+				Files.newOutputStream(out, StandardOpenOption.CREATE, StandardOpenOption.APPEND)),
+				StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	@Override
+	public void close() {
+		if (pool != null) pool.shutdownNow();
+	}
+
+	private static final class Chunk {
+		final StringBuilder ok = new StringBuilder();
+		final StringBuilder dlq = new StringBuilder();
+		long valid, invalid;
+	}
+
+	public record Result(long valid, long invalid) {}
+}
@@ -1,104 +1,176 @@
 package com.td.processor;
 
-import com.fasterxml.jackson.databind.*;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.td.common.DataCodec;
+import com.td.common.FileEvent;
+import com.td.common.FileEventPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.camel.builder.RouteBuilder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class ProcessorRoute extends RouteBuilder {
-	private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+	private final JsonlProcessor processor;
+	private final DepartmentCache departments;
+	private final ValidationRules rules;
+	private final Environment env;
+	private final FileEventPublisher events;
+	private final String channel;
+	private final MeterRegistry registry;
+	private final FileClaims claims;
+	private final LettuceConnectionFactory cf;
+
+	public ProcessorRoute(JsonlProcessor processor, DepartmentCache departments, ValidationRules rules, Environment env,
+	                      FileEventPublisher events, MeterRegistry registry, FileClaims claims, LettuceConnectionFactory cf) {
+		this.processor = processor;
+		this.departments = departments;
+		this.rules = rules;
+		this.env = env;
+		this.events = events;
+		this.registry = registry;
+		this.claims = claims;
+		this.cf = cf;
+		String ch = env.getProperty("REDIS_CHANNEL");
+		this.channel = (ch == null || ch.isBlank()) ? "files.events" : ch;
+	}
 
 	@Override
-	public void configure() {
+	public void configure() throws Exception {
+
+		// Pipelined mode: output rolls into parts and each finished part is announced right away
+		final long partRecords = Long.parseLong(env.getProperty("PROCESSOR_PART_RECORDS", "0"));
+		final long partChars   = Long.parseLong(env.getProperty("PROCESSOR_PART_MB", "0")) * 1024 * 1024;
+		final boolean pipelined = partRecords > 0 || partChars > 0;
 
-		from("file:/data/raw_users?recursive=true&include=.*records_.*\\.jsonl&move=.done")
+		// DATA_CODEC=gzip|zstd: etl/dlq outputs are compressed; inputs are read by their own extension
+		final DataCodec codec = DataCodec.of(env.getProperty("DATA_CODEC", "none"));
+		final String dataDir = env.getProperty("DATA_DIR", "/data");
+
+		// Replicas share /data/raw_users: a Redis lease per file (FileClaims) decides which one processes it
+		final boolean claimed = Boolean.parseBoolean(env.getProperty("PROCESSOR_CLAIMS", "true"));
+		// Larger uncompressed inputs are split into line-aligned ranges that all replicas work on (0 = never)
+		final long shardBytes = Long.parseLong(env.getProperty("PROCESSOR_SHARD_MB", "0")) * 1024 * 1024;
+		if (shardBytes > 0 && !claimed) throw new IllegalArgumentException("PROCESSOR_SHARD_MB needs PROCESSOR_CLAIMS=true");
+
+		if (claimed) getContext().addService(claims, true, false);
+		final ShardedFiles shards;
+		if (shardBytes > 0) {
+			// Range i of etl_X.jsonl goes to part etl_X_p<i+1>.jsonl, announced as soon as it is complete
+			shards = new ShardedFiles(cf, claims, (job, range, lines) -> {
+				String extractor = job.extractor();
+				RollingJsonlWriter ok = new RollingJsonlWriter(Paths.get(job.okBase()), range + 1,
+						(part, i, n) -> events.publish(channel, FileEvent.processed(extractor, part.toString(), i)));
+				RollingJsonlWriter dlq = new RollingJsonlWriter(Paths.get(job.dlqBase()), range + 1,
+						(part, i, n) -> events.publish(channel, FileEvent.dlq(extractor, part.toString(), i)));
+				try {
+					JsonlProcessor.Result r = processor.process(lines, ok, dlq, rules.forExtractor(extractor), departments.codes());
+					ok.close();
+					dlq.close();
+					return r;
+				} catch (IOException | RuntimeException ex) {
+					// A failed range announces nothing: the replica that retries it writes the part whole
+					ok.abort();
+					dlq.abort();
+					throw ex;
+				}
+			}, Duration.ofMillis(Long.parseLong(env.getProperty("PROCESSOR_SHARD_POLL_MS", "1000"))));
+			getContext().addService(shards, true, false);
+		} else {
+			shards = null;
+		}
+		final String readLock = claimed
+				? "&readLock=idempotent&idempotentRepository=#fileClaims&readLockRemoveOnCommit=false" : "";
+
+		// The body stays a GenericFile: the records are streamed from disk, never loaded as a String
+		from("file:" + dataDir + "/raw_users?recursive=true&include=.*records_.*&includeExt=jsonl,jsonl.gz,jsonl.zst&move=.done" + readLock)
 				.routeId("processor-validate")
-				.convertBodyTo(String.class)
 				.process(e -> {
 					Path parent = Paths.get((String) e.getMessage().getHeader("CamelFileParent"));
 					String extractor = parent.getFileName().toString();
 					e.setProperty("extractor", extractor);
 
-					String content = e.getMessage().getBody(String.class);
-					String ts = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").format(LocalDateTime.now());
+					Path in = e.getMessage().getBody(File.class).toPath();
+					// Parts are named after the input (records_X -> etl_X_p0001), so a retry reuses the same names
+					String ts = pipelined ? inputId(in) : DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss").format(LocalDateTime.now());
 
-					Path okOut  = Paths.get("/data/processed_users/" + extractor + "/etl_" + ts + ".jsonl");
-					Path dlqOut = Paths.get("/data/dlq/" + extractor + "/invalid_users_" + ts + ".jsonl");
+					Path okOut  = Paths.get(dataDir + "/processed_users/" + extractor + "/etl_" + ts + ".jsonl" + codec.extension());
+					Path dlqOut = Paths.get(dataDir + "/dlq/" + extractor + "/invalid_users_" + ts + ".jsonl" + codec.extension());
 					Files.createDirectories(okOut.getParent());
 					Files.createDirectories(dlqOut.getParent());
 
-					// departments.csv -> Map<dep, code>
-					Map<String,String> deptMap = new HashMap<>();
-					try (BufferedReader br = Files.newBufferedReader(Paths.get("/data/departments.csv"))) {
-						String line; boolean header = true;
-						while ((line = br.readLine()) != null) {
-							if (header) { header = false; continue; }
-							String[] p = line.split(",");
-							if (p.length >= 2) deptMap.put(p[0].trim(), p[1].trim());
-						}
+					// departments.csv -> Map<dep, code>, one snapshot for the whole file
+					Map<String,String> deptMap = departments.codes();
+					long t0 = System.nanoTime();
+
+					if (shards != null && DataCodec.forFile(in) == DataCodec.NONE && Files.size(in) > shardBytes) {
+						JsonlProcessor.Result r = shards.run(in, extractor, okOut, dlqOut, shardBytes);
+						record(extractor, r, System.nanoTime() - t0);
+						log.info("Validated {} in ranges: {} ok, {} invalid", in.getFileName(), r.valid(), r.invalid());
+						return;
 					}
 
-					ObjectMapper mapper = new ObjectMapper();
-					try (BufferedReader in = new BufferedReader(new StringReader(content));
-					     BufferedWriter ok = Files.newBufferedWriter(okOut,  StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-					     BufferedWriter dlq = Files.newBufferedWriter(dlqOut, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-
-						String line;
-						while ((line = in.readLine()) != null) {
-							if (line.isBlank()) continue;
-							JsonNode u = mapper.readTree(line);
-							List<String> errs = new ArrayList<>();
-
-							// Fields Validation
-							if (!u.has("id") || !u.get("id").canConvertToInt()) errs.add("Id must be integer");
-							if (!u.has("firstName") || u.get("firstName").asText().isBlank()) errs.add("FirstName empty");
-							if (!u.has("email") || !EMAIL.matcher(u.get("email").asText()).matches()) errs.add("Invalid Email");
-							if (!u.has("age") || u.get("age").asInt() < 18 || u.get("age").asInt() > 65) errs.add("Age out of range (18-65)");
-							if (!u.has("company") || !u.get("company").has("department")
-									|| u.get("company").get("department").asText().isBlank())
-								errs.add("Company.department empty");
-
-							if (!errs.isEmpty()) {
-								((ObjectNode) u).put("error_reason", String.join("; ", errs));
-								dlq.write(u.toString()); dlq.newLine();
-							} else {
-								String dep = u.get("company").get("department").asText();
-								String code = deptMap.getOrDefault(dep, "UNK");
-								((ObjectNode) u).put("department_code", code);
-								ok.write(u.toString()); ok.newLine();
-							}
+					if (pipelined) {
+						JsonlProcessor.Result r;
+						RollingJsonlWriter ok, dlq;
+						// A retry after a failure carries on after the parts already published (see RollingJsonlWriter)
+						ok  = new RollingJsonlWriter(okOut, partRecords, partChars, true,
+								(part, i, n) -> events.publish(channel, FileEvent.processed(extractor, part.toString(), i)));
+						dlq = new RollingJsonlWriter(dlqOut, partRecords, partChars, true,
+								(part, i, n) -> events.publish(channel, FileEvent.dlq(extractor, part.toString(), i)));
+						try (ok; dlq) {
+							r = processor.process(in, ok, dlq, rules.forExtractor(extractor), deptMap);
 						}
+						ok.discardCheckpoint();
+						dlq.discardCheckpoint();
+						record(extractor, r, System.nanoTime() - t0);
+						log.info("Validated {}: {} ok, {} invalid, {} parts published", in.getFileName(), r.valid(), r.invalid(),
+								ok.parts() + dlq.parts());
+						return;
 					}
 
+					JsonlProcessor.Result r = processor.process(in, okOut, dlqOut, rules.forExtractor(extractor), deptMap);
+					record(extractor, r, System.nanoTime() - t0);
+					log.info("Validated {}: {} ok, {} invalid", in.getFileName(), r.valid(), r.invalid());
+
 					e.setProperty("okPath", okOut.toString());
 					e.setProperty("dlqPath", dlqOut.toString());
 				})
 				// Send to queue
 				.process(e -> {
-					ObjectMapper m = new ObjectMapper();
 					String extractor = (String) e.getProperty("extractor");
 					String okPath  = (String) e.getProperty("okPath");
 					String dlqPath = (String) e.getProperty("dlqPath");
 
-					if (okPath != null) {
-						String ev = m.createObjectNode().put("type","PROCESSED").put("extractor", extractor).put("path", okPath).toString();
-						e.getContext().createProducerTemplate().sendBody(
-								"spring-redis://{{REDIS_HOST}}:{{REDIS_PORT}}?command=PUBLISH&channel={{REDIS_CHANNEL}}", ev);
-					}
-					if (dlqPath != null) {
-						String ev = m.createObjectNode().put("type","DLQ").put("extractor", extractor).put("path", dlqPath).toString();
-						e.getContext().createProducerTemplate().sendBody(
-								"spring-redis://{{REDIS_HOST}}:{{REDIS_PORT}}?command=PUBLISH&channel={{REDIS_CHANNEL}}", ev);
-					}
+					if (okPath != null) events.publish(channel, FileEvent.processed(extractor, okPath, null));
+					if (dlqPath != null) events.publish(channel, FileEvent.dlq(extractor, dlqPath, null));
 				})
 				.log("Processor emitted events for ${exchangeProperty.extractor}");
 	}
+
+	// records_20250101_120000.jsonl.gz -> 20250101_120000
+	static String inputId(Path in) {
+		String name = DataCodec.forFile(in).strip(in.getFileName().toString());
+		if (name.endsWith(".jsonl")) name = name.substring(0, name.length() - ".jsonl".length());
+		return name.startsWith("records_") ? name.substring("records_".length()) : name;
+	}
+
+	// Once per file: records/s is rate(processor_records_total), per file also as a summary
+	private void record(String extractor, JsonlProcessor.Result r, long nanos) {
+		long total = r.valid() + r.invalid();
+		registry.timer("processor.file.duration", "extractor", extractor).record(nanos, TimeUnit.NANOSECONDS);
+		registry.counter("processor.records", "extractor", extractor, "result", "valid").increment(r.valid());
+		registry.counter("processor.records", "extractor", extractor, "result", "invalid").increment(r.invalid());
+		registry.summary("processor.file.records.per.second", "extractor", extractor).record(total * 1e9 / Math.max(1, nanos));
+		if (total > 0) registry.summary("processor.file.invalid.ratio", "extractor", extractor).record((double) r.invalid() / total);
+	}
 }
@@ -0,0 +1,165 @@
+package com.td.processor;
+
+import com.td.common.DataCodec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writer that cuts JSONL output into parts of at most {@code maxRecords} lines or roughly {@code maxChars}
+ * characters, always on a line boundary: base "etl_X.jsonl" becomes etl_X_p0001.jsonl, etl_X_p0002.jsonl...
+ * A part is written as *.tmp and renamed when complete, then handed to the listener, so whoever picks
+ * parts up (events or the uploader sweep) never sees a half-written one.
+ * A compressed base (etl_X.jsonl.gz) gives compressed parts (etl_X_p0001.jsonl.gz); limits count uncompressed chars.
+ * <p>
+ * With {@code resume} the writer keeps a checkpoint (etl_X.jsonl.parts: last part, records in published parts)
+ * next to the base. A retry of the same input skips that many records and carries on with the next part,
+ * so parts the listener already got are neither rewritten nor announced twice.
+ */
+public class RollingJsonlWriter extends Writer {
+
+	@FunctionalInterface
+	public interface PartListener {
+		void completed(Path part, int index, long records) throws IOException;
+	}
+
+	private final Path base;
+	private final long maxRecords;
+	private final long maxChars;
+	private final PartListener listener;
+	private final Path checkpoint;
+
+	private BufferedWriter out;
+	private Path tmp;
+	private int index;
+	private long records, chars;
+	private long published, skip;
+	private boolean midLine;
+
+	/** A limit of 0 means no limit on that dimension. */
+	public RollingJsonlWriter(Path base, long maxRecords, long maxChars, PartListener listener) {
+		this.base = base;
+		this.maxRecords = maxRecords > 0 ? maxRecords : Long.MAX_VALUE;
+		this.maxChars = maxChars > 0 ? maxChars : Long.MAX_VALUE;
+		this.listener = listener;
+		this.checkpoint = null;
+	}
+
+	/** As above; with {@code resume} continues after the parts a previous attempt published. */
+	public RollingJsonlWriter(Path base, long maxRecords, long maxChars, boolean resume, PartListener listener) throws IOException {
+		this.base = base;
+		this.maxRecords = maxRecords > 0 ? maxRecords : Long.MAX_VALUE;
+		this.maxChars = maxChars > 0 ? maxChars : Long.MAX_VALUE;
+		this.listener = listener;
+		this.checkpoint = resume ? checkpointPath(base) : null;
+		if (resume && Files.exists(checkpoint)) {
+			String[] p = Files.readString(checkpoint).trim().split(" ");
+			index = Integer.parseInt(p[0]);
+			published = skip = Long.parseLong(p[1]);
+		}
+	}
+
+	/** Writes the single part {@code index} (a byte range of a sharded input, see ShardedFiles). */
+	public RollingJsonlWriter(Path base, int index, PartListener listener) {
+		this(base, 0, 0, listener);
+		this.index = index - 1;
+	}
+
+	static Path checkpointPath(Path base) {
+		return base.resolveSibling(base.getFileName() + ".parts");
+	}
+
+	static Path partPath(Path base, int index) {
+		DataCodec codec = DataCodec.forFile(base);
+		String name = codec.strip(base.getFileName().toString());
+		int dot = name.lastIndexOf('.');
+		String stem = dot < 0 ? name : name.substring(0, dot), ext = dot < 0 ? "" : name.substring(dot);
+		return base.resolveSibling(String.format("%s_p%04d%s%s", stem, index, ext, codec.extension()));
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int end = off + len;
+		while (off < end) {
+			int nl = off;
+			while (nl < end && cbuf[nl] != '\n') nl++;
+			if (skip > 0) {
+				// Already in a published part
+				if (nl < end) skip--;
+				off = Math.min(nl + 1, end);
+				continue;
+			}
+			if (out == null) open();
+			int n = (nl < end ? nl + 1 : end) - off;
+			out.write(cbuf, off, n);
+			chars += n;
+			off += n;
+			midLine = nl >= end;
+			if (!midLine && (++records >= maxRecords || chars >= maxChars)) finishPart();
+		}
+	}
+
+	@Override
+	public void write(String s, int off, int len) throws IOException {
+		// Through a char[] so the line scan has one code path
+		write(s.toCharArray(), off, len);
+	}
+
+	private void open() throws IOException {
+		index++;
+		tmp = partPath(base, index).resolveSibling(partPath(base, index).getFileName() + ".tmp");
+		out = new BufferedWriter(new OutputStreamWriter(DataCodec.forFile(base).compress(Files.newOutputStream(tmp)),
+				StandardCharsets.UTF_8), JsonlProcessor.BUFFER_SIZE);
+		records = 0;
+		chars = 0;
+	}
+
+	private void finishPart() throws IOException {
+		out.close();
+		out = null;
+		Path part = partPath(base, index);
+		Files.move(tmp, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		listener.completed(part, index, records);
+		if (checkpoint != null) {
+			published += records;
+			Path next = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+			Files.writeString(next, index + " " + published + "\n");
+			Files.move(next, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/** Drops the checkpoint once the whole input is done, so nothing is skipped if it is ever processed again. */
+	public void discardCheckpoint() throws IOException {
+		if (checkpoint != null) Files.deleteIfExists(checkpoint);
+	}
+
+	/** Number of parts completed so far. */
+	public int parts() {
+		return out == null ? index : index - 1;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (out != null) out.flush();
+	}
+
+	/** Drops the part in progress without renaming or announcing it (output of a failed range). */
+	public void abort() throws IOException {
+		if (out == null) return;
+		try {
+			out.close();
+		} finally {
+			out = null;
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Completes the last part (parts are opened on first write, so none is ever empty). */
+	@Override
+	public void close() throws IOException {
+		if (out == null) return;
+		if (midLine) records++;
+		finishPart();
+	}
+}
@@ -0,0 +1,101 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Validation and enrichment rules of one extractor, compiled from a JSON spec:
+ * <pre>
+ * { "rules":  [ {"field": "/age", "check": "range", "min": 18, "max": 65, "message": "..."} ],
+ *   "enrich": [ {"from": "/company/department", "to": "department_code", "default": "UNK"} ] }
+ * </pre>
+ * Checks: int, notBlank, regex (pattern), range (min/max). Pointers and patterns are compiled
+ * once; a record is tested against a flat array with a single pointer lookup per rule.
+ */
+public final class RuleSet {
+
+	@FunctionalInterface
+	interface Check {
+		boolean test(JsonNode value);
+	}
+
+	private record Rule(JsonPointer field, Check check, String message) {}
+
+	private record Enrich(JsonPointer from, String to, String dft) {}
+
+	private final Rule[] rules;
+	private final Enrich[] enrich;
+
+	private RuleSet(Rule[] rules, Enrich[] enrich) {
+		this.rules = rules;
+		this.enrich = enrich;
+	}
+
+	public static RuleSet compile(JsonNode spec) {
+		List<Rule> rules = new ArrayList<>();
+		for (JsonNode r : spec.path("rules")) {
+			JsonPointer field = JsonPointer.compile(r.path("field").asText());
+			String check = r.path("check").asText();
+			String message = r.path("message").asText(check + " failed: " + field);
+			rules.add(new Rule(field, check(check, r), message));
+		}
+		List<Enrich> enrich = new ArrayList<>();
+		for (JsonNode en : spec.path("enrich")) {
+			enrich.add(new Enrich(JsonPointer.compile(en.path("from").asText()),
+					en.path("to").asText(), en.path("default").asText("UNK")));
+		}
+		return new RuleSet(rules.toArray(new Rule[0]), enrich.toArray(new Enrich[0]));
+	}
+
+	private static Check check(String name, JsonNode r) {
+		switch (name) {
+			case "int":
+				return JsonNode::canConvertToInt;
+			case "notBlank":
+				return v -> !v.asText().isBlank();
+			case "regex": {
+				Pattern p = Pattern.compile(r.path("pattern").asText());
+				return v -> !v.isMissingNode() && p.matcher(v.asText()).matches();
+			}
+			case "range": {
+				int min = r.path("min").asInt(Integer.MIN_VALUE);
+				int max = r.path("max").asInt(Integer.MAX_VALUE);
+				return v -> {
+					if (v.isMissingNode()) return false;
+					int i = v.asInt();
+					return i >= min && i <= max;
+				};
+			}
+			default:
+				throw new IllegalArgumentException("Unknown check: " + name);
+		}
+	}
+
+	/**
+	 * Checks one record and enriches it in place: lookup targets when valid,
+	 * error_reason otherwise.
+	 */
+	public boolean apply(ObjectNode u, Map<String,String> lookup) {
+		StringBuilder errs = null;
+		for (Rule r : rules) {
+			if (r.check.test(u.at(r.field))) continue;
+			if (errs == null) errs = new StringBuilder(64);
+			else errs.append("; ");
+			errs.append(r.message);
+		}
+		if (errs != null) {
+			u.put("error_reason", errs.toString());
+			return false;
+		}
+		for (Enrich en : enrich) {
+			u.put(en.to, lookup.getOrDefault(u.at(en.from).asText(), en.dft));
+		}
+		return true;
+	}
+}
@@ -0,0 +1,247 @@
+package com.td.processor;
+
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Processing of one large input by several replicas: the file is cut into line-aligned byte ranges that are
+ * claimed (FileClaims) and processed independently, each into its own output part.
+ * The replica that claimed the file publishes the job in Redis and works on ranges itself; the others pick
+ * free ranges up from their poll thread. A range whose replica died is claimed again once its lease expires.
+ * The owner returns when every range is done, so the file is only moved to .done after that.
+ * Only uncompressed inputs can be split: a gzip/zstd stream cannot be read from the middle.
+ */
+public class ShardedFiles extends ServiceSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(ShardedFiles.class);
+
+	static final String JOBS = "processor:shards";
+	static final String JOB = "processor:shard:";
+
+	/** Processes lines [range start, range end) of a job's input; the reader is closed by the caller. */
+	@FunctionalInterface
+	public interface RangeProcessor {
+		JsonlProcessor.Result process(Job job, int range, BufferedReader lines) throws IOException;
+	}
+
+	/** A sharded input: range i is bytes [bounds[i], bounds[i + 1]). okBase/dlqBase are the output names. */
+	public record Job(String path, String extractor, String okBase, String dlqBase, long[] bounds) {
+
+		public int ranges() {
+			return bounds.length - 1;
+		}
+
+		String key(int range) {
+			return path + "#" + range;
+		}
+
+		List<String> keys() {
+			List<String> keys = new ArrayList<>(ranges());
+			for (int i = 0; i < ranges(); i++) keys.add(key(i));
+			return keys;
+		}
+	}
+
+	private final StringRedisTemplate redis;
+	private final FileClaims claims;
+	private final RangeProcessor processor;
+	private final Duration poll;
+	private Thread helper;
+	private volatile boolean running;
+
+	public ShardedFiles(RedisConnectionFactory cf, FileClaims claims, RangeProcessor processor, Duration poll) {
+		this.redis = new StringRedisTemplate(cf);
+		this.claims = claims;
+		this.processor = processor;
+		this.poll = poll;
+	}
+
+	/**
+	 * Line-aligned boundaries cutting {@code file} into ranges of about {@code rangeBytes}: each one is moved
+	 * forward to just after the next newline, so a line always belongs to the range it starts in.
+	 */
+	static long[] split(Path file, long rangeBytes) throws IOException {
+		long size = Files.size(file);
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocate(8192);
+			long at = rangeBytes;
+			while (at < size) {
+				long nl = -1;
+				for (long pos = at - 1; nl < 0 && pos < size; pos += buf.limit()) {
+					buf.clear();
+					if (ch.read(buf, pos) <= 0) break;
+					buf.flip();
+					for (int i = 0; i < buf.limit(); i++)
+						if (buf.get(i) == '\n') { nl = pos + i; break; }
+				}
+				if (nl < 0 || nl + 1 >= size) break;
+				bounds.add(nl + 1);
+				at = nl + 1 + rangeBytes;
+			}
+		}
+		bounds.add(size);
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Owner side: publishes the job (or picks up the one a previous owner left), works on it until every
+	 * range is done and returns the totals. A range this replica fails on fails the whole call.
+	 */
+	public JsonlProcessor.Result run(Path in, String extractor, Path okBase, Path dlqBase, long rangeBytes)
+			throws IOException, InterruptedException {
+		String path = in.toString();
+		Job job = load(path);
+		if (job == null) {
+			job = new Job(path, extractor, okBase.toString(), dlqBase.toString(), split(in, rangeBytes));
+			redis.opsForHash().putAll(JOB + path, Map.of("extractor", extractor, "ok", job.okBase(), "dlq", job.dlqBase(),
+					"bounds", Arrays.stream(job.bounds()).mapToObj(String::valueOf).collect(Collectors.joining(","))));
+			redis.opsForSet().add(JOBS, path);
+			log.info("Sharded {} into {} ranges", in.getFileName(), job.ranges());
+		} else {
+			log.info("Resuming sharded {} ({} ranges)", in.getFileName(), job.ranges());
+		}
+
+		while (work(job, true) < job.ranges()) Thread.sleep(poll.toMillis());
+
+		long valid = 0, invalid = 0;
+		for (Map.Entry<Object, Object> e : redis.opsForHash().entries(JOB + path).entrySet()) {
+			String field = e.getKey().toString();
+			if (field.startsWith("valid:")) valid += Long.parseLong(e.getValue().toString());
+			else if (field.startsWith("invalid:")) invalid += Long.parseLong(e.getValue().toString());
+		}
+		// Job first: a helper that claims a forgotten range finds no job and lets it go
+		redis.delete(JOB + path);
+		redis.opsForSet().remove(JOBS, path);
+		claims.forget(job.keys());
+		return new JsonlProcessor.Result(valid, invalid);
+	}
+
+	/** Jobs waiting for ranges to be processed, as seen by every replica. */
+	public Set<String> jobs() {
+		Set<String> jobs = redis.opsForSet().members(JOBS);
+		return jobs == null ? Set.of() : jobs;
+	}
+
+	// Claims and processes whatever ranges are free; returns how many of the job's ranges are done
+	private int work(Job job, boolean owner) throws IOException {
+		boolean[] done = claims.done(job.keys());
+		int finished = 0;
+		for (int i = 0; i < job.ranges(); i++) {
+			if (done[i]) {
+				finished++;
+				continue;
+			}
+			if (!running && !owner) break;
+			String key = job.key(i);
+			if (!claims.add(key)) continue;
+			if (!Boolean.TRUE.equals(redis.hasKey(JOB + job.path()))) {
+				claims.remove(key);
+				break;
+			}
+			JsonlProcessor.Result r;
+			try (BufferedReader lines = open(Path.of(job.path()), job.bounds()[i], job.bounds()[i + 1])) {
+				r = processor.process(job, i, lines);
+			} catch (IOException | RuntimeException ex) {
+				claims.remove(key);
+				if (owner) throw ex;
+				log.warn("Range {} of {} failed, left to another replica: {}", i, job.path(), ex.toString());
+				continue;
+			}
+			redis.opsForHash().putAll(JOB + job.path(), Map.of("valid:" + i, String.valueOf(r.valid()),
+					"invalid:" + i, String.valueOf(r.invalid())));
+			claims.confirm(key);
+			finished++;
+		}
+		return finished;
+	}
+
+	private Job load(String path) {
+		Map<Object, Object> h = redis.opsForHash().entries(JOB + path);
+		if (h == null || h.get("bounds") == null) return null;
+		long[] bounds = Arrays.stream(h.get("bounds").toString().split(",")).mapToLong(Long::parseLong).toArray();
+		return new Job(path, (String) h.get("extractor"), (String) h.get("ok"), (String) h.get("dlq"), bounds);
+	}
+
+	private static BufferedReader open(Path file, long from, long to) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ).position(from);
+		return new BufferedReader(new InputStreamReader(new Slice(Channels.newInputStream(ch), to - from),
+				StandardCharsets.UTF_8), JsonlProcessor.BUFFER_SIZE);
+	}
+
+	@Override
+	protected void doStart() {
+		running = true;
+		helper = Thread.ofVirtual().name("shard-helper").start(this::help);
+	}
+
+	@Override
+	protected void doStop() throws InterruptedException {
+		running = false;
+		if (helper != null) {
+			helper.interrupt();
+			helper.join(Duration.ofMinutes(1));
+		}
+	}
+
+	// Helper side: ranges of other replicas' jobs (and of our own, alongside the owner thread)
+	private void help() {
+		while (running) {
+			try {
+				for (String path : jobs()) {
+					Job job = load(path);
+					if (job != null && Files.exists(Path.of(path))) work(job, false);
+				}
+				Thread.sleep(poll.toMillis());
+			} catch (InterruptedException ex) {
+				return;
+			} catch (Exception ex) {
+				if (!running) return;
+				log.warn("Shard helper failed, retrying: {}", ex.toString());
+			}
+		}
+	}
+
+	// The first n bytes of a stream
+	private static final class Slice extends FilterInputStream {
+
+		private long left;
+
+		Slice(InputStream in, long n) {
+			super(in);
+			this.left = n;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (left <= 0) return -1;
+			int b = super.read();
+			if (b >= 0) left--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (left <= 0) return -1;
+			int n = super.read(b, off, (int) Math.min(len, left));
+			if (n > 0) left -= n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled RuleSet per extractor. The spec is looked up, in order, at:
+ * {@code <KEY>_RULES} (JSON file path), classpath rules/<name>.json, classpath rules/default.json.
+ * Extractors listed in EXTRACTORS are compiled at startup so a bad spec fails fast.
+ */
+@Component
+public class ValidationRules {
+
+	private final Environment env;
+	private final ObjectMapper mapper;
+	private final Map<String,RuleSet> byExtractor = new ConcurrentHashMap<>();
+
+	public ValidationRules(Environment env, ObjectMapper mapper) {
+		this.env = env;
+		this.mapper = mapper;
+		Arrays.stream(env.getProperty("EXTRACTORS", "users").split(","))
+				.map(String::trim)
+				.filter(s -> !s.isEmpty())
+				.forEach(this::forExtractor);
+	}
+
+	public RuleSet forExtractor(String name) {
+		return byExtractor.computeIfAbsent(name, this::load);
+	}
+
+	private RuleSet load(String name) {
+		String KEY = name.toUpperCase().replaceAll("[^A-Z0-9]", "_");
+		String file = env.getProperty(KEY + "_RULES");
+		try {
+			if (file != null && !file.isBlank()) {
+				try (InputStream in = Files.newInputStream(Paths.get(file))) {
+					return RuleSet.compile(mapper.readTree(in));
+				}
+			}
+			return RuleSet.compile(classpathSpec(name));
+		} catch (IOException ex) {
+			throw new UncheckedIOException("Cannot load validation rules for " + name, ex);
+		}
+	}
+
+	private JsonNode classpathSpec(String name) throws IOException {
+		InputStream in = getClass().getResourceAsStream("/rules/" + name + ".json");
+		if (in == null) in = getClass().getResourceAsStream("/rules/default.json");
+		try (InputStream spec = in) {
+			return mapper.readTree(spec);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.td.common.DataCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedOutputTest {
+
+	// Records per extractor page: every page is one append (one gzip member / zstd frame)
+	static final int PAGE = 100;
+
+	@TempDir
+	Path tmp;
+
+	static void append(Path file, DataCodec codec, String text) throws IOException {
+		try (OutputStream out = codec.compress(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	static String read(Path file) throws IOException {
+		try (InputStream in = DataCodec.forFile(file).decompress(Files.newInputStream(file))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void compressedBaseGivesCompressedParts() {
+		assertEquals("etl_1_p0002.jsonl.gz", RollingJsonlWriter.partPath(tmp.resolve("etl_1.jsonl.gz"), 2).getFileName().toString());
+		assertEquals("etl_1_p0002.jsonl.zst", RollingJsonlWriter.partPath(tmp.resolve("etl_1.jsonl.zst"), 2).getFileName().toString());
+	}
+
+	/** Writes the raw file page by page as the extractor does and returns the record count. */
+	static long writeRaw(Path file, DataCodec codec, long minBytes) throws IOException {
+		long n = 0, bytes = 0;
+		StringBuilder page = new StringBuilder();
+		while (bytes < minBytes) {
+			page.setLength(0);
+			for (int i = 0; i < PAGE; i++) page.append(JsonlProcessorTest.user(n++)).append('\n');
+			bytes += page.length();
+			append(file, codec, page.toString());
+		}
+		return n;
+	}
+
+	@Test
+	void compressedInputGivesTheSameRecordsInCompressedOutput() throws Exception {
+		long records = 0;
+		try (JsonlProcessor proc = new JsonlProcessor(new ObjectMapper(), 1)) {
+			for (DataCodec codec : DataCodec.values()) {
+				Path dir = Files.createDirectories(tmp.resolve(codec.name()));
+				Path raw = dir.resolve("records_1.jsonl" + codec.extension());
+				Path ok = dir.resolve("etl_1.jsonl" + codec.extension()), dlq = dir.resolve("invalid_users_1.jsonl" + codec.extension());
+
+				records = writeRaw(raw, codec, 1024 * 1024);
+				JsonlProcessor.Result r = proc.process(raw, ok, dlq, JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+				assertEquals(records, r.valid() + r.invalid());
+				assertEquals(codec, DataCodec.forFile(ok));
+			}
+		}
+
+		// Same records whatever the codec
+		for (String out : new String[]{"etl_1.jsonl", "invalid_users_1.jsonl"}) {
+			String plain = Files.readString(tmp.resolve("NONE").resolve(out));
+			assertEquals(plain, read(tmp.resolve("GZIP").resolve(out + ".gz")), out);
+			assertEquals(plain, read(tmp.resolve("ZSTD").resolve(out + ".zst")), out);
+		}
+		assertTrue(records > PAGE, "several pages, so several members / frames");
+	}
+}
@@ -0,0 +1,63 @@
+package com.td.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepartmentCacheTest {
+
+	@TempDir
+	Path tmp;
+
+	@Test
+	void reloadsOnlyWhenFileChanges() throws Exception {
+		Path csv = tmp.resolve("departments.csv");
+		Files.writeString(csv, "department,code\nEngineering,ENG\n");
+
+		try (DepartmentCache cache = new DepartmentCache(csv, 0)) {
+			Map<String,String> first = cache.codes();
+			assertEquals("ENG", first.get("Engineering"));
+			assertEquals(1, cache.loadCount());
+
+			cache.reloadIfChanged();
+			assertSame(first, cache.codes());
+
+			Files.writeString(csv, "department,code\nEngineering,ENG2\nSupport,SUP\n");
+			Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+			cache.reloadIfChanged();
+
+			assertEquals(2, cache.loadCount());
+			assertEquals(Map.of("Engineering", "ENG2", "Support", "SUP"), cache.codes());
+			assertEquals("ENG", first.get("Engineering"), "old snapshot is never mutated");
+		}
+	}
+
+	@Test
+	void missingFileServesEmptyMap() {
+		try (DepartmentCache cache = new DepartmentCache(tmp.resolve("none.csv"), 0)) {
+			cache.reloadIfChanged();
+			assertEquals("UNK", cache.codes().getOrDefault("Engineering", "UNK"));
+			assertEquals(0, cache.loadCount());
+		}
+	}
+
+	@Test
+	void removedFileKeepsTheLastSnapshot() throws Exception {
+		Path csv = tmp.resolve("departments.csv");
+		Files.writeString(csv, "department,code\nEngineering,ENG\n");
+
+		try (DepartmentCache cache = new DepartmentCache(csv, 0)) {
+			Files.delete(csv);
+			cache.reloadIfChanged();
+			cache.reloadIfChanged();
+			assertEquals(Map.of("Engineering", "ENG"), cache.codes());
+			assertEquals(1, cache.loadCount());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonlProcessorTest {
+
+	static final Map<String,String> DEPTS = Map.of("Engineering", "ENG", "Support", "SUP");
+	static final RuleSet RULES = RuleSetTest.defaultRules();
+
+	@TempDir
+	Path tmp;
+
+	static String user(long i) {
+		// every 10th record is invalid (age out of range)
+		int age = i % 10 == 0 ? 80 : 20 + (int) (i % 40);
+		String dep = i % 2 == 0 ? "Engineering" : "Support";
+		return "{\"id\":" + i + ",\"firstName\":\"User" + i + "\",\"lastName\":\"Test\",\"email\":\"user" + i
+				+ "@x.com\",\"age\":" + age + ",\"company\":{\"department\":\"" + dep + "\",\"name\":\"Acme\"}}";
+	}
+
+	static long writeUsers(Path file, long minBytes) throws Exception {
+		long n = 0, bytes = 0;
+		try (BufferedWriter w = Files.newBufferedWriter(file)) {
+			while (bytes < minBytes) {
+				String line = user(n++);
+				w.write(line); w.newLine();
+				bytes += line.length() + 1;
+			}
+		}
+		return n;
+	}
+
+	@Test
+	void validatesAndEnriches() throws Exception {
+		Path in = tmp.resolve("records_1.jsonl");
+		Files.writeString(in, user(1) + "\n\n" + user(10) + "\n");
+		Path ok = tmp.resolve("ok.jsonl"), dlq = tmp.resolve("dlq.jsonl");
+
+		JsonlProcessor.Result r;
+		try (JsonlProcessor p = new JsonlProcessor(new ObjectMapper(), 1)) {
+			r = p.process(in, ok, dlq, RULES, DEPTS);
+		}
+
+		assertEquals(1, r.valid());
+		assertEquals(1, r.invalid());
+		assertTrue(Files.readString(ok).contains("\"department_code\":\"SUP\""));
+		assertTrue(Files.readString(dlq).contains("\"error_reason\":\"Age out of range (18-65)\""));
+	}
+
+	@Test
+	void streamsInputLargerThanHeap() throws Exception {
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		Path in = tmp.resolve("records_big.jsonl");
+		long records = writeUsers(in, maxHeap + maxHeap / 4);
+		assertTrue(Files.size(in) > maxHeap, "input must exceed -Xmx");
+
+		Path ok = tmp.resolve("ok.jsonl"), dlq = tmp.resolve("dlq.jsonl");
+		JsonlProcessor.Result r;
+		try (JsonlProcessor p = new JsonlProcessor(new ObjectMapper(), 1)) {
+			r = p.process(in, ok, dlq, RULES, DEPTS);
+		}
+
+		assertEquals(records, r.valid() + r.invalid());
+		assertEquals((records + 9) / 10, r.invalid());
+	}
+
+	@Test
+	void parallelOutputMatchesSequentialOrder() throws Exception {
+		Path in = tmp.resolve("records_par.jsonl");
+		long records = writeUsers(in, 32L * 1024 * 1024);
+
+		int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int p : new int[]{1, parallelism}) {
+			Path ok = tmp.resolve("ok_" + p + ".jsonl"), dlq = tmp.resolve("dlq_" + p + ".jsonl");
+			try (JsonlProcessor proc = new JsonlProcessor(new ObjectMapper(), p)) {
+				JsonlProcessor.Result r = proc.process(in, ok, dlq, RULES, DEPTS);
+				assertEquals(records, r.valid() + r.invalid());
+			}
+		}
+
+		assertEquals(-1, Files.mismatch(tmp.resolve("ok_1.jsonl"), tmp.resolve("ok_" + parallelism + ".jsonl")));
+		assertEquals(-1, Files.mismatch(tmp.resolve("dlq_1.jsonl"), tmp.resolve("dlq_" + parallelism + ".jsonl")));
+	}
+}
@@ -0,0 +1,125 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingJsonlWriterTest {
+
+	@TempDir
+	Path tmp;
+
+	@Test
+	void rollsOnRecordAndSizeLimitsAtLineBoundaries() throws Exception {
+		List<String> announced = new ArrayList<>();
+		Path base = tmp.resolve("etl_1.jsonl");
+		try (RollingJsonlWriter w = new RollingJsonlWriter(base, 3, 0,
+				(part, i, n) -> announced.add(part.getFileName() + ":" + i + ":" + n))) {
+			w.write("a\nb\n");
+			w.append(new StringBuilder("c\nd\ne\nf\ng"));
+			w.write("h\n");
+		}
+		assertEquals(List.of("etl_1_p0001.jsonl:1:3", "etl_1_p0002.jsonl:2:3", "etl_1_p0003.jsonl:3:1"), announced);
+		assertEquals("a\nb\nc\n", Files.readString(tmp.resolve("etl_1_p0001.jsonl")));
+		assertEquals("gh\n", Files.readString(tmp.resolve("etl_1_p0003.jsonl")));
+
+		announced.clear();
+		try (RollingJsonlWriter w = new RollingJsonlWriter(tmp.resolve("dlq.jsonl"), 0, 10,
+				(part, i, n) -> announced.add(i + ":" + n))) {
+			w.write("0123456789abc\nxy\nz");
+		}
+		assertEquals(List.of("1:1", "2:2"), announced, "a line is never split to honour the size limit");
+
+		try (Stream<Path> s = Files.list(tmp)) {
+			assertTrue(s.noneMatch(p -> p.toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	void noOutputMeansNoPart() throws Exception {
+		List<Path> announced = new ArrayList<>();
+		try (RollingJsonlWriter w = new RollingJsonlWriter(tmp.resolve("etl.jsonl"), 10, 0, (p, i, n) -> announced.add(p))) {
+			assertEquals(0, w.parts());
+		}
+		assertTrue(announced.isEmpty());
+		try (Stream<Path> s = Files.list(tmp)) {
+			assertEquals(0, s.count());
+		}
+	}
+
+	@Test
+	void abortedPartIsNeitherRenamedNorAnnounced() throws Exception {
+		List<Path> announced = new ArrayList<>();
+		try (RollingJsonlWriter w = new RollingJsonlWriter(tmp.resolve("etl_1.jsonl"), 3, (p, i, n) -> announced.add(p))) {
+			w.write("a\nb\n");
+			w.abort();
+		}
+		assertTrue(announced.isEmpty());
+		try (Stream<Path> s = Files.list(tmp)) {
+			assertEquals(0, s.count(), "no part and no *.tmp left behind");
+		}
+	}
+
+	@Test
+	void retryResumesAfterPublishedParts() throws Exception {
+		List<String> announced = new ArrayList<>();
+		Path base = tmp.resolve("etl_1.jsonl");
+		RollingJsonlWriter.PartListener listener = (part, i, n) -> announced.add(part.getFileName() + ":" + n);
+
+		// First attempt fails after five records; closing it still completes part 2
+		assertThrows(IllegalStateException.class, () -> {
+			try (RollingJsonlWriter w = new RollingJsonlWriter(base, 3, 0, true, listener)) {
+				w.write("a\nb\nc\nd\ne\n");
+				throw new IllegalStateException("validation failed");
+			}
+		});
+		assertEquals(List.of("etl_1_p0001.jsonl:3", "etl_1_p0002.jsonl:2"), announced);
+
+		// The retry sees the whole input again but only writes and announces what is new
+		announced.clear();
+		try (RollingJsonlWriter w = new RollingJsonlWriter(base, 3, 0, true, listener)) {
+			w.write("a\nb\nc\nd\ne\nf\ng\nh\n");
+			w.close();
+			w.discardCheckpoint();
+		}
+		assertEquals(List.of("etl_1_p0003.jsonl:3"), announced);
+		assertEquals("d\ne\n", Files.readString(tmp.resolve("etl_1_p0002.jsonl")));
+		assertEquals("f\ng\nh\n", Files.readString(tmp.resolve("etl_1_p0003.jsonl")));
+		assertFalse(Files.exists(tmp.resolve("etl_1.jsonl.parts")));
+	}
+
+	@Test
+	void joinedPartsEqualTheSingleFileOutput() throws Exception {
+		Path in = tmp.resolve("records_1.jsonl");
+		JsonlProcessorTest.writeUsers(in, 2L * 1024 * 1024);
+		Path single = Files.createDirectories(tmp.resolve("single")), parts = Files.createDirectories(tmp.resolve("parts"));
+
+		List<Path> announced = new ArrayList<>();
+		try (JsonlProcessor proc = new JsonlProcessor(new ObjectMapper(), 1)) {
+			proc.process(in, single.resolve("etl.jsonl"), single.resolve("dlq.jsonl"), JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+			try (RollingJsonlWriter ok = new RollingJsonlWriter(parts.resolve("etl.jsonl"), 2_000, 0, (p, i, n) -> announced.add(p));
+			     RollingJsonlWriter dlq = new RollingJsonlWriter(parts.resolve("dlq.jsonl"), 2_000, 0, (p, i, n) -> announced.add(p))) {
+				proc.process(in, ok, dlq, JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+			}
+		}
+		assertTrue(announced.size() > 2, "several parts");
+
+		// Same records, same order, just split
+		for (String name : new String[]{"etl", "dlq"}) {
+			Path joined = tmp.resolve(name + "_joined.jsonl");
+			try (Stream<Path> s = Files.list(parts); OutputStream out = Files.newOutputStream(joined)) {
+				for (Path p : s.filter(p -> p.getFileName().toString().startsWith(name + "_p")).sorted().toList()) Files.copy(p, out);
+			}
+			assertEquals(-1, Files.mismatch(single.resolve(name + ".jsonl"), joined), name);
+		}
+	}
+}
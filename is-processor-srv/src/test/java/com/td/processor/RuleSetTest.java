@@ -0,0 +1,75 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetTest {
+
+	static final ObjectMapper MAPPER = new ObjectMapper();
+
+	static RuleSet defaultRules() {
+		try (InputStream in = RuleSetTest.class.getResourceAsStream("/rules/default.json")) {
+			return RuleSet.compile(MAPPER.readTree(in));
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	// The checks that used to be hardcoded in ProcessorRoute, kept as the reference behaviour
+	private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+	static boolean legacy(ObjectNode u, Map<String,String> deptMap) {
+		List<String> errs = new ArrayList<>();
+		if (!u.has("id") || !u.get("id").canConvertToInt()) errs.add("Id must be integer");
+		if (!u.has("firstName") || u.get("firstName").asText().isBlank()) errs.add("FirstName empty");
+		if (!u.has("email") || !EMAIL.matcher(u.get("email").asText()).matches()) errs.add("Invalid Email");
+		if (!u.has("age") || u.get("age").asInt() < 18 || u.get("age").asInt() > 65) errs.add("Age out of range (18-65)");
+		if (!u.has("company") || !u.get("company").has("department")
+				|| u.get("company").get("department").asText().isBlank())
+			errs.add("Company.department empty");
+		if (!errs.isEmpty()) {
+			u.put("error_reason", String.join("; ", errs));
+			return false;
+		}
+		u.put("department_code", deptMap.getOrDefault(u.get("company").get("department").asText(), "UNK"));
+		return true;
+	}
+
+	static final String[] SAMPLES = {
+			JsonlProcessorTest.user(1),
+			JsonlProcessorTest.user(10),
+			"{}",
+			"{\"id\":\"x\",\"firstName\":\" \",\"email\":\"bad\",\"age\":\"17\",\"company\":\"none\"}",
+			"{\"id\":1.5,\"firstName\":null,\"email\":\"a@b.c\",\"age\":65,\"company\":{\"department\":\"Marketing\"}}",
+			"{\"id\":3,\"firstName\":\"A\",\"email\":\"a@b.c\",\"age\":18,\"company\":{}}",
+	};
+
+	@Test
+	void defaultRulesMatchLegacyChecks() throws Exception {
+		RuleSet rules = defaultRules();
+		for (String s : SAMPLES) {
+			ObjectNode expected = (ObjectNode) MAPPER.readTree(s);
+			ObjectNode actual = (ObjectNode) MAPPER.readTree(s);
+			assertEquals(legacy(expected, JsonlProcessorTest.DEPTS), rules.apply(actual, JsonlProcessorTest.DEPTS), s);
+			assertEquals(expected, actual, s);
+		}
+	}
+
+	@Test
+	void rejectsUnknownCheck() throws Exception {
+		JsonNode spec = MAPPER.readTree("{\"rules\":[{\"field\":\"/id\",\"check\":\"uuid\"}]}");
+		assertThrows(IllegalArgumentException.class, () -> RuleSet.compile(spec));
+	}
+}
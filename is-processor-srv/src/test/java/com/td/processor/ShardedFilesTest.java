@@ -0,0 +1,228 @@
+package com.td.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedFilesTest {
+
+	static RedisServer server;
+	static LettuceConnectionFactory cf;
+	static StringRedisTemplate redis;
+
+	@TempDir
+	Path tmp;
+
+	final List<AutoCloseable> replicas = new ArrayList<>();
+
+	@BeforeAll
+	static void startRedis() throws Exception {
+		int port;
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+		server = new RedisServer(port);
+		server.start();
+		cf = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		cf.afterPropertiesSet();
+		cf.start();
+		redis = new StringRedisTemplate(cf);
+	}
+
+	@AfterAll
+	static void stopRedis() throws Exception {
+		cf.destroy();
+		server.stop();
+	}
+
+	@BeforeEach
+	void flush() {
+		redis.delete(redis.keys("processor:*"));
+	}
+
+	@AfterEach
+	void stopReplicas() throws Exception {
+		for (AutoCloseable r : replicas) r.close();
+	}
+
+	FileClaims claims(String owner, Duration lease) {
+		FileClaims c = new FileClaims(cf, owner, lease, Duration.ofMinutes(5));
+		c.start();
+		replicas.add(c::stop);
+		return c;
+	}
+
+	/** A processor replica: its own claims, helper thread and validation pool. */
+	record Replica(String name, FileClaims claims, ShardedFiles shards, AtomicInteger ranges) {}
+
+	Replica replica(String name, Duration lease) {
+		FileClaims claims = claims(name, lease);
+		JsonlProcessor processor = new JsonlProcessor(new ObjectMapper(), 2);
+		AtomicInteger ranges = new AtomicInteger();
+		ShardedFiles shards = new ShardedFiles(cf, claims, (job, range, lines) -> {
+			ranges.incrementAndGet();
+			RollingJsonlWriter ok = new RollingJsonlWriter(Path.of(job.okBase()), range + 1, (p, i, n) -> {});
+			RollingJsonlWriter dlq = new RollingJsonlWriter(Path.of(job.dlqBase()), range + 1, (p, i, n) -> {});
+			try (ok; dlq) {
+				return processor.process(lines, ok, dlq, JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+			}
+		}, Duration.ofMillis(20));
+		shards.start();
+		replicas.add(() -> {
+			shards.stop();
+			processor.close();
+		});
+		return new Replica(name, claims, shards, ranges);
+	}
+
+	static String concatParts(Path dir, String stem) throws IOException {
+		StringBuilder all = new StringBuilder();
+		try (var parts = Files.list(dir)) {
+			for (Path p : parts.filter(p -> p.getFileName().toString().startsWith(stem + "_p")).sorted().toList())
+				all.append(Files.readString(p));
+		}
+		return all.toString();
+	}
+
+	@Test
+	void claimIsExclusiveUntilReleasedOrExpired() throws Exception {
+		FileClaims a = claims("a", Duration.ofMillis(300));
+		FileClaims b = new FileClaims(cf, "b", Duration.ofMillis(300), Duration.ofMinutes(5)); // crashes: never renews
+
+		assertTrue(a.add("/data/raw_users/users/records_1.jsonl"));
+		assertFalse(b.add("/data/raw_users/users/records_1.jsonl"));
+		Thread.sleep(1000); // three leases: a renews
+		assertFalse(b.add("/data/raw_users/users/records_1.jsonl"), "renewed while held");
+		assertFalse(b.remove("/data/raw_users/users/records_1.jsonl"), "not b's to release");
+		assertTrue(a.remove("/data/raw_users/users/records_1.jsonl"));
+		assertTrue(b.add("/data/raw_users/users/records_1.jsonl"));
+
+		Thread.sleep(500);
+		assertTrue(a.add("/data/raw_users/users/records_1.jsonl"), "b's lease expired");
+		assertFalse(b.confirm("/data/raw_users/users/records_1.jsonl"), "b lost it");
+		assertTrue(a.confirm("/data/raw_users/users/records_1.jsonl"));
+		Thread.sleep(500);
+		assertFalse(b.add("/data/raw_users/users/records_1.jsonl"), "done is remembered");
+		assertTrue(a.contains("/data/raw_users/users/records_1.jsonl"));
+	}
+
+	@Test
+	void rangesStartOnLineBoundariesAndCoverTheFile() throws Exception {
+		Path in = tmp.resolve("records_1.jsonl");
+		JsonlProcessorTest.writeUsers(in, 1_000_000);
+		byte[] bytes = Files.readAllBytes(in);
+		for (long rangeBytes : new long[] {1, 100, 4096, 65_536, 333_333, 2_000_000}) {
+			long[] bounds = ShardedFiles.split(in, rangeBytes);
+			assertEquals(0, bounds[0]);
+			assertEquals(bytes.length, bounds[bounds.length - 1]);
+			for (int i = 1; i < bounds.length; i++) {
+				assertTrue(bounds[i] > bounds[i - 1], "ranges are not empty");
+				if (i == bounds.length - 1) continue;
+				assertEquals('\n', bytes[(int) bounds[i] - 1], "range " + i + " starts a line");
+				long len = bounds[i] - bounds[i - 1];
+				assertTrue(len >= rangeBytes && len < rangeBytes + 200, "rangeBytes up to the end of a line");
+			}
+		}
+	}
+
+	@Test
+	void severalReplicasShareOneFileAndMatchTheSingleReplicaOutput() throws Exception {
+		Path in = tmp.resolve("records_big.jsonl");
+		long records = JsonlProcessorTest.writeUsers(in, 8L * 1024 * 1024);
+		Path out = Files.createDirectories(tmp.resolve("out"));
+
+		Path ok = tmp.resolve("ok.jsonl"), dlq = tmp.resolve("dlq.jsonl");
+		try (JsonlProcessor single = new JsonlProcessor(new ObjectMapper(), 2)) {
+			single.process(in, ok, dlq, JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+		}
+
+		List<Replica> cluster = List.of(replica("p1", Duration.ofSeconds(5)), replica("p2", Duration.ofSeconds(5)),
+				replica("p3", Duration.ofSeconds(5)));
+		JsonlProcessor.Result r = cluster.get(0).shards().run(in, "users", out.resolve("etl_1.jsonl"),
+				out.resolve("invalid_users_1.jsonl"), 256 * 1024);
+
+		assertEquals(records, r.valid() + r.invalid());
+		assertEquals((records + 9) / 10, r.invalid());
+		assertEquals(Files.readString(ok), concatParts(out, "etl_1"), "parts in range order = single output");
+		assertEquals(Files.readString(dlq), concatParts(out, "invalid_users_1"));
+
+		int total = 0;
+		for (Replica rep : cluster) total += rep.ranges().get();
+		long ranges = ShardedFiles.split(in, 256 * 1024).length - 1;
+		assertEquals(ranges, total, "each range processed once");
+		assertTrue(cluster.stream().filter(rep -> rep.ranges().get() > 0).count() > 1, "helpers took ranges");
+		assertTrue(cluster.get(0).shards().jobs().isEmpty(), "job cleaned up");
+		assertEquals(Set.of(), redis.keys("processor:*"), "no keys left behind");
+	}
+
+	@Test
+	void rangeLeftByACrashedReplicaIsTakenOverAfterItsLease() throws Exception {
+		Path in = tmp.resolve("records_crash.jsonl");
+		long records = JsonlProcessorTest.writeUsers(in, 1024 * 1024);
+		Path out = Files.createDirectories(tmp.resolve("out"));
+
+		// The crashed replica claimed range 0 and never renewed it
+		FileClaims crashed = new FileClaims(cf, "crashed", Duration.ofMillis(500), Duration.ofMinutes(5));
+		assertTrue(crashed.add(in + "#0"));
+
+		Replica owner = replica("owner", Duration.ofSeconds(5));
+		long t0 = System.nanoTime();
+		JsonlProcessor.Result r = owner.shards().run(in, "users", out.resolve("etl_2.jsonl"), out.resolve("invalid_users_2.jsonl"), 128 * 1024);
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+		assertEquals(records, r.valid() + r.invalid());
+		assertTrue(waited >= 400, "range 0 waited for the lease, " + waited + " ms");
+		assertFalse(crashed.confirm(in + "#0"));
+	}
+
+	@Test
+	void restartedOwnerResumesTheJob() throws Exception {
+		Path in = tmp.resolve("records_resume.jsonl");
+		long records = JsonlProcessorTest.writeUsers(in, 1024 * 1024);
+		Path out = Files.createDirectories(tmp.resolve("out"));
+		long[] bounds = ShardedFiles.split(in, 128 * 1024);
+
+		// First owner: dies after two ranges
+		FileClaims first = claims("first", Duration.ofSeconds(5));
+		AtomicInteger calls = new AtomicInteger();
+		JsonlProcessor jp = new JsonlProcessor(new ObjectMapper(), 1);
+		ShardedFiles dying = new ShardedFiles(cf, first, (job, range, lines) -> {
+			if (calls.incrementAndGet() > 2) throw new IOException("killed");
+			RollingJsonlWriter ok = new RollingJsonlWriter(Path.of(job.okBase()), range + 1, (p, i, n) -> {});
+			RollingJsonlWriter dlq = new RollingJsonlWriter(Path.of(job.dlqBase()), range + 1, (p, i, n) -> {});
+			try (ok; dlq) {
+				return jp.process(lines, ok, dlq, JsonlProcessorTest.RULES, JsonlProcessorTest.DEPTS);
+			}
+		}, Duration.ofMillis(20));
+		assertThrows(IOException.class, () -> dying.run(in, "users", out.resolve("etl_3.jsonl"), out.resolve("invalid_users_3.jsonl"), 128 * 1024));
+		jp.close();
+
+		Replica second = replica("second", Duration.ofSeconds(5));
+		// A different output name on the retry: the job keeps the first one's
+		JsonlProcessor.Result r = second.shards().run(in, "users", out.resolve("etl_4.jsonl"), out.resolve("invalid_users_4.jsonl"), 128 * 1024);
+		assertEquals(records, r.valid() + r.invalid());
+		assertEquals(bounds.length - 1 - 2, second.ranges().get(), "done ranges are not processed again");
+		try (var files = Files.list(out)) {
+			assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith("etl_4")));
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.td.uploader;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A batch as one zip archive, produced chunk by chunk as it is read (the members are never all in memory):
+ * the member files in order, then MANIFEST.json listing each with its path, size, mtime and SHA-256.
+ * Entries are not compressed: the uploader runs the whole archive through DATA_CODEC instead, which also
+ * compresses across the (mostly alike) small files. The manifest entries describe each member as it was
+ * archived (bytes read, mtime when it was opened), which may be newer than the version that was offered;
+ * they are available once the archive has been read to the end.
+ */
+public class BatchArchive extends InputStream {
+
+	public static final String MANIFEST = "MANIFEST.json";
+
+	private static final int CHUNK = 64 * 1024;
+	private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+	public record Manifest(String archive, String extractor, String kind, String created, List<Entry> files) {}
+
+	public record Entry(String name, String path, long size, long mtime, String sha256) {}
+
+	private final UploadBatcher.Batch batch;
+	private final String name;
+	private final ObjectWriter json;
+	private final Buffer out = new Buffer();
+	private final ZipOutputStream zip = new ZipOutputStream(out);
+	private final byte[] chunk = new byte[CHUNK];
+	private final List<Entry> entries = new ArrayList<>();
+	private final Set<String> names = new HashSet<>();
+	private int index = -1;
+	private InputStream member;
+	private String entry;             // name of the member being written
+	private MessageDigest sha;
+	private long memberBytes;
+	private long memberMtime;
+	private int pos;
+	private boolean finished;
+
+	/** {@code name} is the archive's file name as recorded in the manifest, see {@link #name}. */
+	public BatchArchive(UploadBatcher.Batch batch, String name, ObjectWriter json) {
+		this.batch = batch;
+		this.name = name;
+		this.json = json;
+		zip.setLevel(Deflater.NO_COMPRESSION);
+	}
+
+	/** A unique archive name: {@code <extractor>_<kind>_<utc time>_<random>.zip}. */
+	public static String name(UploadBatcher.Batch batch) {
+		return batch.extractor() + "_" + batch.kind().toLowerCase(Locale.ROOT) + "_" + STAMP.format(Instant.now())
+				+ "_" + UUID.randomUUID().toString().substring(0, 8) + ".zip";
+	}
+
+	/** Manifest entry of member {@code i}: size, mtime and SHA-256 as archived; valid after the archive has been read to the end. */
+	public Entry entry(int i) {
+		if (!finished) throw new IllegalStateException("Archive not read to the end");
+		return entries.get(i);
+	}
+
+	private boolean fill() throws IOException {
+		while (pos >= out.size()) {
+			if (finished) return false;
+			out.reset();
+			pos = 0;
+			step();
+		}
+		return true;
+	}
+
+	// Next member, next chunk of the current member, or the manifest and the zip's central directory
+	private void step() throws IOException {
+		if (member == null) {
+			if (++index < batch.members().size()) {
+				open(batch.members().get(index));
+			} else {
+				zip.putNextEntry(new ZipEntry(MANIFEST));
+				zip.write(json.writeValueAsBytes(new Manifest(name, batch.extractor(), batch.kind(),
+						Instant.now().toString(), entries)));
+				zip.closeEntry();
+				zip.close();
+				finished = true;
+			}
+			return;
+		}
+		int n = member.read(chunk);
+		if (n < 0) {
+			member.close();
+			member = null;
+			zip.closeEntry();
+			UploadBatcher.Member m = batch.members().get(index);
+			entries.add(new Entry(entry, m.path().toString(), memberBytes, memberMtime, HexFormat.of().formatHex(sha.digest())));
+		} else {
+			zip.write(chunk, 0, n);
+			memberBytes += n;
+		}
+	}
+
+	private void open(UploadBatcher.Member m) throws IOException {
+		try {
+			sha = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+		// Taken before reading: an append while it is read leaves the ledger with an older mtime, so it goes out again
+		memberMtime = Files.getLastModifiedTime(m.path()).toMillis();
+		member = new DigestInputStream(Files.newInputStream(m.path()), sha);
+		memberBytes = 0;
+		// The file name, prefixed with the member's position if another member already has that name
+		entry = m.fileName();
+		for (int k = 0; !names.add(entry); k++) entry = index + (k == 0 ? "" : "." + k) + "_" + m.fileName();
+		ZipEntry e = new ZipEntry(entry);
+		e.setTime(memberMtime);
+		zip.putNextEntry(e);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return fill() ? out.bytes()[pos++] & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (!fill()) return -1;
+		int n = Math.min(len, out.size() - pos);
+		System.arraycopy(out.bytes(), pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (member != null) member.close();
+	}
+
+	private static final class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(CHUNK + 1024);
+		}
+
+		byte[] bytes() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.td.uploader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the files audit rows in batches: callers enqueue, one thread commits up to {@code batchSize} rows
+ * per transaction (or whatever arrived within {@code flushMs}), so SQLite syncs once per batch instead of
+ * once per row and uploads never wait on the database lock. close() drains the queue before returning.
+ * <p>
+ * A batch that still fails after {@code attempts} tries is written row by row, so one bad row costs only
+ * itself: it is logged and counted in {@link #dropped()} instead of holding up every row queued behind it.
+ */
+@Component
+public class FileMetadataWriter implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(FileMetadataWriter.class);
+
+	// Same text format as SQLite's CURRENT_TIMESTAMP, taken when the event arrives rather than at commit
+	private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+	private static final long RETRY_MS = 1000;
+
+	private record Row(String extractor, String kind, String fileName, String filePath, String insertedAt) {}
+
+	// Queued by close() to wake the flusher out of its poll
+	private static final Row STOP = new Row(null, null, null, null, null);
+
+	private final DataSource dataSource;
+	private final int batchSize;
+	private final long flushMs;
+	private final int attempts;
+	private final BlockingQueue<Row> queue;
+	private final Thread flusher;
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private volatile boolean running = true;
+
+	@Autowired
+	public FileMetadataWriter(DataSource dataSource, Environment env) {
+		this(dataSource,
+				Integer.parseInt(env.getProperty("DB_BATCH_SIZE", "500")),
+				Long.parseLong(env.getProperty("DB_BATCH_FLUSH_MS", "200")),
+				Integer.parseInt(env.getProperty("DB_BATCH_QUEUE", "10000")),
+				Integer.parseInt(env.getProperty("DB_BATCH_ATTEMPTS", "3")));
+	}
+
+	public FileMetadataWriter(DataSource dataSource, int batchSize, long flushMs, int capacity, int attempts) {
+		this.dataSource = dataSource;
+		this.batchSize = Math.max(1, batchSize);
+		this.flushMs = Math.max(1, flushMs);
+		this.attempts = Math.max(1, attempts);
+		this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, capacity));
+		this.flusher = new Thread(this::run, "files-writer");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/** Queues one files row; blocks only while the queue is full. */
+	public void record(String extractor, String kind, String fileName, String filePath) throws InterruptedException {
+		if (!running) throw new IllegalStateException("FileMetadataWriter is closed");
+		queue.put(new Row(extractor, kind, fileName, filePath, TS.format(Instant.now())));
+	}
+
+	/** Rows queued and not committed yet. */
+	public int pending() {
+		return queue.size();
+	}
+
+	/** Rows committed so far. */
+	public long written() {
+		return written.get();
+	}
+
+	/** Rows given up on: they failed on their own once their batch had used up its attempts. */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/** Transactions committed so far (one per batch while nothing fails). */
+	public long batches() {
+		return batches.get();
+	}
+
+	private void run() {
+		List<Row> batch = new ArrayList<>(batchSize);
+		int failures = 0;
+		while (running || !queue.isEmpty() || !batch.isEmpty()) {
+			try {
+				if (batch.isEmpty()) fill(batch);
+				if (batch.isEmpty()) continue;
+				write(batch);
+				written.addAndGet(batch.size());
+				batch.clear();
+				failures = 0;
+			} catch (SQLException ex) {
+				if (++failures < attempts && running) {
+					// Keep the batch and try again (e.g. database locked by another writer)
+					log.warn("files batch of {} rows failed ({}/{}), retrying: {}", batch.size(), failures, attempts, ex.getMessage());
+					sleep(RETRY_MS);
+					continue;
+				}
+				log.warn("files batch of {} rows failed {} times, writing it row by row: {}", batch.size(), failures, ex.getMessage());
+				writeEach(batch);
+				batch.clear();
+				failures = 0;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	// Waits up to flushMs for the first row, then collects until the batch is full or flushMs has passed
+	private void fill(List<Row> batch) throws InterruptedException {
+		Row first = queue.poll(flushMs, TimeUnit.MILLISECONDS);
+		if (first == null || first == STOP) return;
+		batch.add(first);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+		while (batch.size() < batchSize) {
+			if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+				if (batch.removeIf(r -> r == STOP)) return;
+				continue;
+			}
+			long left = deadline - System.nanoTime();
+			if (left <= 0) return;
+			Row r = queue.poll(left, TimeUnit.NANOSECONDS);
+			if (r == null || r == STOP) return;
+			batch.add(r);
+		}
+	}
+
+	// Each row in its own statement: the good ones are committed, a failing one is reported and dropped
+	private void writeEach(List<Row> batch) {
+		for (Row r : batch) {
+			try {
+				write(List.of(r));
+				written.incrementAndGet();
+			} catch (SQLException ex) {
+				dropped.incrementAndGet();
+				log.error("Dropping files row {} {} {} ({}): {}", r.extractor(), r.kind(), r.filePath(), r.insertedAt(), ex.getMessage());
+			}
+		}
+	}
+
+	private void write(List<Row> batch) throws SQLException {
+		try (Connection c = dataSource.getConnection()) {
+			boolean autoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try (PreparedStatement ps = c.prepareStatement(
+					"INSERT INTO files(extractor, kind, filename, filepath, inserted_at) VALUES(?,?,?,?,?)")) {
+				for (Row r : batch) {
+					ps.setString(1, r.extractor());
+					ps.setString(2, r.kind());
+					ps.setString(3, r.fileName());
+					ps.setString(4, r.filePath());
+					ps.setString(5, r.insertedAt());
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				c.commit();
+				batches.incrementAndGet();
+			} catch (SQLException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Stops accepting rows and waits for everything queued to be committed. */
+	@Override
+	public void close() throws InterruptedException {
+		if (!running) return;
+		running = false;
+		queue.put(STOP);
+		flusher.join();
+	}
+}
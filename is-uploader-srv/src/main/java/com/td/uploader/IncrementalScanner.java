@@ -0,0 +1,299 @@
+package com.td.uploader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Finds the *.jsonl files that may need an upload without walking the whole data tree on every sweep.
+ * Between sweeps a WatchService on every known directory collects created, modified and deleted files.
+ * After a restart, the persisted cursor (mtime and inode per directory) points at the directories
+ * whose entries changed while nobody was watching; in the others only files modified since the cursor
+ * was saved are reported. A full walk still runs on the first start, on watch overflow and once the last
+ * one is {@code fullEvery} old, to reconcile anything the events missed.
+ */
+@Component
+public class IncrementalScanner implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(IncrementalScanner.class);
+
+	/**
+	 * Files found since the last scan; {@code gone} holds deleted files and deleted directories (everything
+	 * under those is gone too). {@code complete} means every file under the roots is in {@code present}.
+	 */
+	public record Result(List<UploadLedger.Seen> present, Set<Path> gone, boolean complete) {}
+
+	// A sweep fired by the same schedule may come a moment before fullEvery has passed
+	private static final long SLACK_MS = 60_000;
+	// File mtimes may be coarser than the cursor's own timestamp
+	private static final long MTIME_SLACK_MS = 2_000;
+
+	private record Stamp(long mtime, String inode) {}
+
+	private final List<Path> roots;
+	private final Path cursorFile;
+	private final Duration fullEvery;
+	private final Clock clock;
+	private final WatchService watcher;
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	private final Set<Path> watched = new HashSet<>();
+	private final Map<Path, Stamp> dirs = new HashMap<>();
+	private boolean watching;
+	private boolean needFull;
+	private long lastFull;            // epoch millis of the last full walk, kept in the cursor
+	private long cursorSaved;         // when the loaded cursor was written, i.e. the last sweep before a restart
+
+	@Autowired
+	public IncrementalScanner(Environment env) throws IOException {
+		this(roots(env.getProperty("DATA_DIR", "/data")),
+				Paths.get(env.getProperty("DATA_DIR", "/data"), "state", "uploader-scan.state"),
+				Duration.ofMillis(Long.parseLong(env.getProperty("UPLOADER_FULL_SCAN_INTERVAL_MS", "86400000"))),
+				Clock.systemUTC());
+	}
+
+	public IncrementalScanner(List<Path> roots, Path cursorFile, Duration fullEvery, Clock clock) throws IOException {
+		this.roots = List.copyOf(roots);
+		this.cursorFile = cursorFile;
+		this.fullEvery = fullEvery;
+		this.clock = clock;
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.needFull = !loadCursor();
+	}
+
+	static List<Path> roots(String dataDir) {
+		return List.of(Paths.get(dataDir, "processed_users"), Paths.get(dataDir, "dlq"), Paths.get(dataDir, "raw_users"));
+	}
+
+	public synchronized Result scan() throws IOException {
+		long now = clock.millis();
+		Set<Path> changed = new HashSet<>(), gone = new HashSet<>();
+		boolean lost = !drainEvents(changed, gone);
+		boolean full = needFull || lost || now - lastFull >= fullEvery.toMillis() - SLACK_MS;
+		if (!full) {
+			if (!watching) {
+				// Nobody watched before this run: watch the known directories and list those whose entries
+				// changed; in the others, files written to (appended) since the cursor was saved
+				for (Path dir : List.copyOf(dirs.keySet())) {
+					Stamp before = dirs.get(dir), stamp = register(dir);
+					if (stamp == null) gone.add(dir);
+					else if (!stamp.equals(before)) listDir(dir, changed, gone);
+					else listModified(dir, cursorSaved - MTIME_SLACK_MS, changed);
+				}
+			}
+			for (Path root : roots) {
+				if (!dirs.containsKey(root) && Files.isDirectory(root)) listDir(root, changed, gone);
+			}
+		}
+
+		Result result;
+		if (full) {
+			List<UploadLedger.Seen> present = new ArrayList<>();
+			dirs.clear(); // rebuilt by the walk, so directories removed meanwhile drop out of the cursor
+			for (Path root : roots) walk(root, present);
+			needFull = false;
+			lastFull = now;
+			result = new Result(present, Set.of(), true);
+		} else {
+			List<UploadLedger.Seen> present = new ArrayList<>();
+			for (Path p : changed) {
+				if (!isJsonl(p)) continue;
+				try {
+					BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+					if (a.isRegularFile()) present.add(new UploadLedger.Seen(p, a.size(), a.lastModifiedTime().toMillis()));
+				} catch (NoSuchFileException ex) {
+					gone.add(p);
+				}
+			}
+			result = new Result(present, gone, false);
+		}
+		watching = true;
+		saveCursor();
+		return result;
+	}
+
+	// Collects paths touched since the last sweep; false when events were lost and a full walk is needed
+	private boolean drainEvents(Set<Path> changed, Set<Path> gone) throws IOException {
+		WatchKey key;
+		boolean complete = true;
+		while ((key = watcher.poll()) != null) {
+			Path dir = keys.get(key);
+			for (WatchEvent<?> ev : key.pollEvents()) {
+				if (ev.kind() == OVERFLOW || dir == null) {
+					complete = false;
+					continue;
+				}
+				Path p = dir.resolve((Path) ev.context());
+				if (ev.kind() == ENTRY_DELETE) {
+					if (dirs.containsKey(p)) {
+						forget(p);
+						gone.add(p);
+					} else {
+						changed.add(p);
+					}
+				} else if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+					if (!dirs.containsKey(p)) listDir(p, changed, gone);
+				} else {
+					changed.add(p);
+				}
+			}
+			if (!key.reset() && dir != null) {
+				// The directory itself went away (maybe with its parent, whose event is then lost)
+				forget(dir);
+				gone.add(dir);
+			}
+		}
+		return complete;
+	}
+
+	// Registers the directory (and new subdirectories) and adds its files to changed
+	private void listDir(Path dir, Set<Path> changed, Set<Path> gone) throws IOException {
+		Stamp stamp = register(dir);
+		if (stamp == null) {
+			gone.add(dir);
+			return;
+		}
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for (Path p : ds) {
+				if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+					if (!dirs.containsKey(p)) listDir(p, changed, gone);
+				} else if (isJsonl(p)) {
+					changed.add(p);
+				}
+			}
+		} catch (NoSuchFileException ex) {
+			forget(dir);
+			gone.add(dir);
+		}
+	}
+
+	// Adds the directory's files modified at or after {@code since} to changed (subdirectories have their own stamp)
+	private void listModified(Path dir, long since, Set<Path> changed) throws IOException {
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, p -> isJsonl(p))) {
+			for (Path p : ds) {
+				try {
+					BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (a.isRegularFile() && a.lastModifiedTime().toMillis() >= since) changed.add(p);
+				} catch (NoSuchFileException ex) {
+					// deleted since the listing: the directory stamp changed, so the next restart lists it whole
+				}
+			}
+		} catch (NoSuchFileException ex) {
+			// removed meanwhile: the watch key goes invalid and drainEvents reports it
+		}
+	}
+
+	private void walk(Path root, List<UploadLedger.Seen> out) throws IOException {
+		if (!Files.isDirectory(root)) return;
+		Files.walkFileTree(root, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes a) throws IOException {
+				register(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path p, BasicFileAttributes a) {
+				if (a.isRegularFile() && isJsonl(p)) out.add(new UploadLedger.Seen(p, a.size(), a.lastModifiedTime().toMillis()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path p, IOException ex) {
+				return FileVisitResult.CONTINUE; // vanished mid-walk
+			}
+		});
+	}
+
+	// Watch first, stamp second: anything created after the stamp shows up as an event
+	private Stamp register(Path dir) throws IOException {
+		if (!watched.contains(dir)) {
+			try {
+				keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+				watched.add(dir);
+			} catch (NoSuchFileException ex) {
+				forget(dir);
+				return null;
+			}
+		}
+		Stamp s = stamp(dir);
+		if (s == null) forget(dir);
+		else dirs.put(dir, s);
+		return s;
+	}
+
+	private void forget(Path dir) {
+		dirs.keySet().removeIf(d -> d.startsWith(dir));
+		watched.removeIf(d -> d.startsWith(dir));
+		keys.entrySet().removeIf(k -> {
+			if (!k.getValue().startsWith(dir)) return false;
+			k.getKey().cancel();
+			return true;
+		});
+	}
+
+	private static Stamp stamp(Path dir) throws IOException {
+		try {
+			BasicFileAttributes a = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			return new Stamp(a.lastModifiedTime().toMillis(), String.valueOf(a.fileKey()));
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	// Plain or compressed by the extractor/processor (DATA_CODEC)
+	private static boolean isJsonl(Path p) {
+		String name = p.getFileName().toString();
+		return name.endsWith(".jsonl") || name.endsWith(".jsonl.gz") || name.endsWith(".jsonl.zst");
+	}
+
+	// Cursor file: a "full<TAB>epoch millis" line for the last full walk, then one
+	// "mtime<TAB>inode<TAB>directory" line per known directory
+	private boolean loadCursor() {
+		if (!Files.exists(cursorFile)) return false;
+		try {
+			cursorSaved = Files.getLastModifiedTime(cursorFile).toMillis();
+			for (String line : Files.readAllLines(cursorFile, StandardCharsets.UTF_8)) {
+				String[] f = line.split("\t", 3);
+				if (f.length == 2 && f[0].equals("full")) lastFull = Long.parseLong(f[1]);
+				else if (f.length == 3) dirs.put(Paths.get(f[2]), new Stamp(Long.parseLong(f[0]), f[1]));
+			}
+			return !dirs.isEmpty();
+		} catch (IOException | NumberFormatException ex) {
+			log.warn("Ignoring unreadable scan cursor {}: {}", cursorFile, ex.toString());
+			dirs.clear();
+			return false;
+		}
+	}
+
+	private void saveCursor() throws IOException {
+		Files.createDirectories(cursorFile.getParent());
+		Path tmp = cursorFile.resolveSibling(cursorFile.getFileName() + ".tmp");
+		try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			w.write("full\t" + lastFull);
+			w.newLine();
+			for (Map.Entry<Path, Stamp> d : dirs.entrySet()) {
+				w.write(d.getValue().mtime() + "\t" + d.getValue().inode() + "\t" + d.getKey());
+				w.newLine();
+			}
+		}
+		Files.move(tmp, cursorFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
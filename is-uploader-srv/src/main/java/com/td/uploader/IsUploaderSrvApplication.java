@@ -1,9 +1,12 @@
 package com.td.uploader;
 
+import com.td.common.JsonConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(JsonConfig.class)
 public class IsUploaderSrvApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,37 @@
+package com.td.uploader;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class SftpConfig {
+
+	@Bean(destroyMethod = "close")
+	public SftpSessionPool sftpSessionPool(Environment env) {
+		// One session for every thread that uploads: the sweeper's split threads plus the event workers
+		// (or stream consumers), plus the batcher's own thread with UPLOADER_BATCH
+		int parallelism = Integer.parseInt(value(env, "UPLOADER_PARALLELISM", "1"));
+		boolean streams = value(env, "REDIS_TRANSPORT", "pubsub").equalsIgnoreCase("streams");
+		int workers = Integer.parseInt(streams ? value(env, "REDIS_STREAM_CONSUMERS", "1") : value(env, "UPLOADER_WORKERS", "4"));
+		int batcher = Boolean.parseBoolean(value(env, "UPLOADER_BATCH", "false")) ? 1 : 0;
+		String strict = value(env, "SFTP_STRICT_HOST_KEY_CHECKING", "true");
+		return new SftpSessionPool(new SftpSessionPool.Settings(
+				value(env, "SFTP_HOST", "sftp"),
+				Integer.parseInt(value(env, "SFTP_PORT", "22")),
+				value(env, "SFTP_USER", "camel"),
+				value(env, "SFTP_KEY_PATH", "/run/secrets/sftp_key"),
+				value(env, "SFTP_KEY_PASSPHRASE", ""),
+				!strict.equalsIgnoreCase("no") && !strict.equalsIgnoreCase("false"),
+				value(env, "SFTP_KNOWN_HOSTS", "/run/secrets/known_hosts"),
+				value(env, "SFTP_REMOTE_DIR", "/upload"),
+				Integer.parseInt(value(env, "SFTP_POOL_SIZE", String.valueOf(parallelism + workers + batcher))),
+				Integer.parseInt(value(env, "SFTP_CONNECT_TIMEOUT_MS", "10000")),
+				Long.parseLong(value(env, "SFTP_BORROW_TIMEOUT_MS", "600000"))));
+	}
+
+	private static String value(Environment env, String key, String dft) {
+		String v = env.getProperty(key);
+		return (v == null || v.isBlank()) ? dft : v;
+	}
+}
@@ -0,0 +1,141 @@
+package com.td.uploader;
+
+import com.jcraft.jsch.*;
+
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of authenticated SFTP sessions (SSH key auth), reused across uploads so the
+ * SSH handshake and key exchange happen once per session instead of once per file.
+ * Sessions are opened lazily up to {@code size}; a session that fails an upload is dropped.
+ */
+public class SftpSessionPool implements AutoCloseable {
+
+	/** {@code timeoutMs} is for connecting; an upload waits up to {@code borrowTimeoutMs} for a session (0 = for as long as it takes). */
+	public record Settings(String host, int port, String user, String keyPath, String passphrase,
+	                       boolean strictHostKeyChecking, String knownHosts, String remoteDir,
+	                       int size, int timeoutMs, long borrowTimeoutMs) {}
+
+	private static final class Conn {
+		final Session session;
+		final ChannelSftp sftp;
+
+		Conn(Session session, ChannelSftp sftp) {
+			this.session = session;
+			this.sftp = sftp;
+		}
+
+		boolean isConnected() {
+			return session.isConnected() && sftp.isConnected();
+		}
+
+		void close() {
+			sftp.disconnect();
+			session.disconnect();
+		}
+	}
+
+	private final Settings settings;
+	private JSch jsch;
+	private final Semaphore permits;
+	private final LinkedBlockingQueue<Conn> idle = new LinkedBlockingQueue<>();
+	private volatile boolean closed;
+
+	public SftpSessionPool(Settings settings) {
+		this.settings = settings;
+		this.permits = new Semaphore(Math.max(1, settings.size()), true);
+	}
+
+	/** Uploads the stream to remoteDir/fileName (overwrite); the stream is not closed. */
+	public void upload(InputStream in, String fileName) throws Exception {
+		if (settings.borrowTimeoutMs() <= 0) permits.acquire();
+		else if (!permits.tryAcquire(settings.borrowTimeoutMs(), TimeUnit.MILLISECONDS))
+			throw new IllegalStateException("No SFTP session available after " + settings.borrowTimeoutMs() + " ms");
+		Conn c = null;
+		boolean ok = false;
+		try {
+			c = idle.poll();
+			if (c != null && !c.isConnected()) { c.close(); c = null; }
+			if (c == null) c = connect();
+			c.sftp.put(in, settings.remoteDir() + "/" + fileName, ChannelSftp.OVERWRITE);
+			ok = true;
+		} finally {
+			if (c != null) {
+				if (ok && !closed) idle.offer(c);
+				else c.close();
+			}
+			permits.release();
+		}
+	}
+
+	public int idleSessions() {
+		return idle.size();
+	}
+
+	/** Uploads waiting for a session. */
+	public int waiting() {
+		return permits.getQueueLength();
+	}
+
+	// Key and known_hosts are read on first connect, as the camel-ftp endpoint did
+	private synchronized JSch jsch() throws JSchException {
+		if (jsch == null) {
+			JSch j = new JSch();
+			if (settings.passphrase() == null || settings.passphrase().isBlank()) j.addIdentity(settings.keyPath());
+			else j.addIdentity(settings.keyPath(), settings.passphrase());
+			if (settings.knownHosts() != null && !settings.knownHosts().isBlank()) j.setKnownHosts(settings.knownHosts());
+			jsch = j;
+		}
+		return jsch;
+	}
+
+	private Conn connect() throws JSchException, SftpException {
+		Session session = jsch().getSession(settings.user(), settings.host(), settings.port());
+		session.setConfig("StrictHostKeyChecking", settings.strictHostKeyChecking() ? "yes" : "no");
+		session.setServerAliveInterval(30_000);
+		session.connect(settings.timeoutMs());
+		try {
+			ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+			sftp.connect(settings.timeoutMs());
+			mkdirs(sftp, settings.remoteDir());
+			return new Conn(session, sftp);
+		} catch (JSchException | SftpException | RuntimeException ex) {
+			session.disconnect();
+			throw ex;
+		}
+	}
+
+	// Like camel-ftp autoCreate: make sure the remote directory exists
+	private static void mkdirs(ChannelSftp sftp, String dir) throws SftpException {
+		String path = dir.startsWith("/") ? "" : ".";
+		for (String part : dir.split("/")) {
+			if (part.isEmpty()) continue;
+			path = path + "/" + part;
+			try {
+				sftp.stat(path);
+			} catch (SftpException ex) {
+				if (ex.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) throw ex;
+				try {
+					sftp.mkdir(path);
+				} catch (SftpException mkdir) {
+					// Another session opening at the same time may have created it first
+					try {
+						sftp.stat(path);
+					} catch (SftpException gone) {
+						throw mkdir;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		Conn c;
+		while ((c = idle.poll()) != null) c.close();
+	}
+}
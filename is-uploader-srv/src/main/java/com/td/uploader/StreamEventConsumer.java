@@ -0,0 +1,178 @@
+package com.td.uploader;
+
+import com.td.common.FileEventPublisher;
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads file events from Redis Streams as a member of a consumer group (XREADGROUP with COUNT and BLOCK),
+ * so uploader replicas share the events instead of each handling all of them.
+ * An entry is acknowledged (XACK) only after the handler returns, which gives at-least-once delivery:
+ * entries left pending by a crashed or failing consumer are claimed (XCLAIM) by another one once they
+ * have been idle for {@code reclaimIdle}. After {@code maxDeliveries} attempts an entry is moved to the
+ * {@code <stream>.dead} stream (event, original id, deliveries), logged and counted, and only then acknowledged.
+ */
+public class StreamEventConsumer extends ServiceSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamEventConsumer.class);
+
+	/** Field of the stream entry that carries the event JSON. */
+	public static final String FIELD = FileEventPublisher.FIELD;
+
+	/** Suffix of the stream that keeps the entries given up on. */
+	public static final String DEAD_SUFFIX = ".dead";
+
+	@FunctionalInterface
+	public interface Handler {
+		void handle(String stream, String json) throws Exception;
+	}
+
+	public record Settings(List<String> streams, String group, String consumer, int threads, int batch,
+	                       Duration block, Duration reclaimIdle, int maxDeliveries) {}
+
+	private final StringRedisTemplate redis;
+	private final Settings settings;
+	private final Handler handler;
+	private final List<Thread> workers = new ArrayList<>();
+	private final AtomicLong handled = new AtomicLong();
+	private final AtomicLong deadLettered = new AtomicLong();
+	private volatile boolean running;
+
+	public StreamEventConsumer(RedisConnectionFactory cf, Settings settings, Handler handler) {
+		this.redis = new StringRedisTemplate(cf);
+		this.settings = settings;
+		this.handler = handler;
+	}
+
+	/** Entries handled and acknowledged so far. */
+	public long handled() {
+		return handled.get();
+	}
+
+	/** Entries moved to the dead-letter stream after maxDeliveries attempts. */
+	public long deadLettered() {
+		return deadLettered.get();
+	}
+
+	@Override
+	protected void doStart() {
+		for (String stream : settings.streams()) createGroup(stream);
+		running = true;
+		for (int i = 0; i < Math.max(1, settings.threads()); i++) {
+			String name = settings.consumer() + "-" + i;
+			Thread t = new Thread(() -> run(name), "stream-" + name);
+			t.setDaemon(true);
+			t.start();
+			workers.add(t);
+		}
+	}
+
+	@Override
+	protected void doStop() throws InterruptedException {
+		running = false;
+		for (Thread t : workers) t.join(settings.block().toMillis() + 5000);
+		workers.clear();
+	}
+
+	// XGROUP CREATE <stream> <group> 0 MKSTREAM; an existing group is fine
+	private void createGroup(String stream) {
+		try {
+			redis.execute((RedisCallback<String>) c -> c.streamCommands()
+					.xGroupCreate(stream.getBytes(StandardCharsets.UTF_8), settings.group(), ReadOffset.from("0"), true));
+		} catch (DataAccessException ex) {
+			// Lettuce's BUSYGROUP error arrives wrapped ("Error in execution")
+			if (!String.valueOf(ex.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) throw ex;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void run(String name) {
+		Consumer me = Consumer.from(settings.group(), name);
+		StreamReadOptions options = StreamReadOptions.empty().count(settings.batch()).block(settings.block());
+		StreamOffset<String>[] offsets = settings.streams().stream()
+				.map(s -> StreamOffset.create(s, ReadOffset.lastConsumed())).toArray(StreamOffset[]::new);
+		long nextReclaim = 0;
+		while (running) {
+			try {
+				if (System.currentTimeMillis() >= nextReclaim) {
+					for (String stream : settings.streams()) reclaim(stream, name);
+					nextReclaim = System.currentTimeMillis() + settings.reclaimIdle().toMillis() / 2;
+				}
+				List<MapRecord<String, Object, Object>> records = redis.opsForStream().read(me, options, offsets);
+				if (records != null) for (MapRecord<String, Object, Object> r : records) handle(r);
+			} catch (Exception ex) {
+				if (!running) return;
+				log.warn("Stream consumer {} failed, retrying: {}", name, ex.toString());
+				sleep(1000);
+			}
+		}
+	}
+
+	// Takes over entries another consumer (or this one) left unacknowledged for longer than reclaimIdle
+	private void reclaim(String stream, String name) {
+		PendingMessages pending = redis.opsForStream().pending(stream, settings.group(), Range.unbounded(), settings.batch());
+		List<RecordId> stale = new ArrayList<>();
+		for (PendingMessage p : pending) {
+			if (p.getElapsedTimeSinceLastDelivery().compareTo(settings.reclaimIdle()) < 0) continue;
+			if (p.getTotalDeliveryCount() >= settings.maxDeliveries()) {
+				deadLetter(stream, p);
+				continue;
+			}
+			stale.add(p.getId());
+		}
+		if (stale.isEmpty()) return;
+		List<MapRecord<String, Object, Object>> claimed = redis.opsForStream()
+				.claim(stream, settings.group(), name, settings.reclaimIdle(), stale.toArray(RecordId[]::new));
+		for (MapRecord<String, Object, Object> r : claimed) handle(r);
+	}
+
+	// XADD <stream>.dead, then XACK: the event is kept for inspection (or a manual XADD back) instead of lost
+	private void deadLetter(String stream, PendingMessage p) {
+		String id = p.getIdAsString();
+		List<MapRecord<String, Object, Object>> entry = redis.opsForStream().range(stream, Range.closed(id, id));
+		Object json = entry == null || entry.isEmpty() ? null : entry.get(0).getValue().get(FIELD);
+		if (json != null) {
+			redis.opsForStream().add(StreamRecords.string(Map.of(FIELD, json.toString(), "id", id,
+					"deliveries", String.valueOf(p.getTotalDeliveryCount()))).withStreamKey(stream + DEAD_SUFFIX));
+		}
+		log.error("Giving up on {} {} after {} deliveries, moved to {}: {}", stream, id, p.getTotalDeliveryCount(),
+				stream + DEAD_SUFFIX, json != null ? json : "(trimmed from the stream)");
+		deadLettered.incrementAndGet();
+		redis.opsForStream().acknowledge(stream, settings.group(), p.getId());
+	}
+
+	private void handle(MapRecord<String, Object, Object> r) {
+		Object json = r.getValue().get(FIELD);
+		try {
+			if (json != null) handler.handle(r.getStream(), json.toString());
+		} catch (Exception ex) {
+			// Left pending: reclaimed after reclaimIdle
+			log.warn("Event {} {} failed: {}", r.getStream(), r.getId(), ex.toString());
+			return;
+		}
+		redis.opsForStream().acknowledge(r.getStream(), settings.group(), r.getId());
+		handled.incrementAndGet();
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.td.uploader;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts files as a stream, in fixed-size chunks, so an upload holds one chunk of plaintext
+ * and ciphertext in memory whatever the file size.
+ * The output is the plain cipher output (no inlined IV, no HMAC): byte-for-byte what
+ * CryptoDataFormat produced with the same algorithm, key and IV.
+ */
+public class StreamingEncryptor {
+
+	static final int CHUNK = 64 * 1024;
+
+	private final String algorithm;
+	private final SecretKeySpec key;
+	private final byte[] iv;
+
+	public StreamingEncryptor(String algorithm, SecretKeySpec key, byte[] iv) {
+		this.algorithm = algorithm;
+		this.key = key;
+		this.iv = iv == null ? new byte[0] : iv.clone();
+	}
+
+	public EncryptingInputStream open(Path file) throws IOException {
+		return new EncryptingInputStream(Files.newInputStream(file), newCipher());
+	}
+
+	public EncryptingInputStream encrypt(InputStream plain) throws IOException {
+		return new EncryptingInputStream(plain, newCipher());
+	}
+
+	private Cipher newCipher() throws IOException {
+		try {
+			Cipher c = Cipher.getInstance(algorithm);
+			if (iv.length > 0) c.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+			else c.init(Cipher.ENCRYPT_MODE, key);
+			return c;
+		} catch (GeneralSecurityException ex) {
+			throw new IOException("Cannot initialise " + algorithm, ex);
+		}
+	}
+
+	/** Ciphertext of the wrapped plaintext stream, produced with Cipher.update one chunk at a time. */
+	public static final class EncryptingInputStream extends InputStream {
+		private final InputStream plain;
+		private final Cipher cipher;
+		private final byte[] in = new byte[CHUNK];
+		private final byte[] out;
+		private int pos, limit;
+		private boolean finished;
+
+		EncryptingInputStream(InputStream plain, Cipher cipher) {
+			this.plain = plain;
+			this.cipher = cipher;
+			this.out = new byte[cipher.getOutputSize(CHUNK) + 2 * Math.max(16, cipher.getBlockSize())];
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			int n = read(one, 0, 1);
+			return n < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			while (pos == limit) {
+				if (finished) return -1;
+				fill();
+			}
+			int n = Math.min(len, limit - pos);
+			System.arraycopy(out, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return limit - pos;
+		}
+
+		private void fill() throws IOException {
+			try {
+				int n = plain.read(in);
+				if (n < 0) {
+					limit = cipher.doFinal(out, 0);
+					finished = true;
+				} else {
+					limit = cipher.update(in, 0, n, out, 0);
+				}
+				pos = 0;
+			} catch (GeneralSecurityException ex) {
+				throw new IOException("Encryption failed", ex);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			plain.close();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.td.uploader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read and the time spent inside read(). Around the encrypting stream that is the
+ * read + compress + encrypt share of an upload; the rest of the upload time is SFTP.
+ * SFTP reads in 32 KB chunks, so the two nanoTime() calls per read are noise.
+ */
+public class TimedInputStream extends FilterInputStream {
+
+	private long bytes;
+	private long nanos;
+
+	public TimedInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		long t0 = System.nanoTime();
+		int b = in.read();
+		nanos += System.nanoTime() - t0;
+		if (b >= 0) bytes++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		long t0 = System.nanoTime();
+		int n = in.read(b, off, len);
+		nanos += System.nanoTime() - t0;
+		if (n > 0) bytes += n;
+		return n;
+	}
+
+	public long bytes() {
+		return bytes;
+	}
+
+	public long nanos() {
+		return nanos;
+	}
+}
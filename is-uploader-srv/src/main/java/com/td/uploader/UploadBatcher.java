@@ -0,0 +1,214 @@
+package com.td.uploader;
+
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces small files into batches per extractor and kind (UPLOADER_BATCH=true), so that many tiny
+ * PROCESSED/DLQ files cost one SFTP transfer, one encryption and one ledger transaction instead of one each.
+ * A batch is shipped when it holds {@code maxFiles} files or {@code maxBytes} bytes (by the thread that filled
+ * it) or once it is {@code window} old (by the batcher's own thread); stop() ships whatever is still open.
+ * Files bigger than {@code maxFileBytes} are not taken and go out on their own.
+ * <p>
+ * A path already in an open or shipping batch is not added twice. Members that do not go out (the shipper
+ * failed, or the file was deleted meanwhile) are handed to {@code notShipped}, which gives their ledger claims
+ * back so that the sweeper offers them again.
+ */
+public class UploadBatcher extends ServiceSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(UploadBatcher.class);
+
+	public record Settings(int maxFiles, long maxBytes, long maxFileBytes, Duration window) {}
+
+	/** A file and the version of it (size, mtime) that was read before it was offered. */
+	public record Member(String extractor, String kind, Path path, String fileName, long size, long mtime) {}
+
+	/** Files of one extractor and kind that go out together. */
+	public record Batch(String extractor, String kind, List<Member> members, long bytes, long openedAt) {}
+
+	@FunctionalInterface
+	public interface Shipper {
+		void ship(Batch batch) throws Exception;
+	}
+
+	private record Key(String extractor, String kind) {}
+
+	private static final class Open {
+		final List<Member> members = new ArrayList<>();
+		final long openedAt = System.nanoTime();
+		long bytes;
+	}
+
+	private final Settings settings;
+	private final Shipper shipper;
+	private final Consumer<List<Member>> notShipped;
+	private final ReentrantLock lock = new ReentrantLock(); // not synchronized: virtual threads would pin
+	private final Condition changed = lock.newCondition();
+	private final Map<Key, Open> open = new HashMap<>();
+	private final Set<Path> taken = new HashSet<>(); // in an open or shipping batch
+	private Thread timer;
+	private volatile boolean running;
+
+	public UploadBatcher(Settings settings, Shipper shipper) {
+		this(settings, shipper, members -> {});
+	}
+
+	public UploadBatcher(Settings settings, Shipper shipper, Consumer<List<Member>> notShipped) {
+		this.settings = settings;
+		this.shipper = shipper;
+		this.notShipped = notShipped;
+	}
+
+	/**
+	 * Adds the file to its batch and returns true, or returns false when it is too big to be batched.
+	 * If this fills the batch, it is shipped before returning.
+	 */
+	public boolean offer(Member m) {
+		if (m.size() > settings.maxFileBytes()) return false;
+		Batch full = null;
+		lock.lock();
+		try {
+			if (!taken.add(m.path())) return true;
+			Key key = new Key(m.extractor(), m.kind());
+			Open b = open.computeIfAbsent(key, k -> new Open());
+			b.members.add(m);
+			b.bytes += m.size();
+			if (b.members.size() >= settings.maxFiles() || b.bytes >= settings.maxBytes()) {
+				open.remove(key);
+				full = batch(key, b);
+			} else if (b.members.size() == 1) {
+				changed.signal(); // a new window started
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (full != null) ship(full);
+		return true;
+	}
+
+	/** Files waiting in open batches. */
+	public int pending() {
+		lock.lock();
+		try {
+			return open.values().stream().mapToInt(b -> b.members.size()).sum();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Ships every open batch now. */
+	public void flush() {
+		for (Batch b : take(true)) ship(b);
+	}
+
+	@Override
+	protected void doStart() {
+		running = true;
+		timer = Thread.ofVirtual().name("upload-batcher").start(this::run);
+	}
+
+	@Override
+	protected void doStop() throws InterruptedException {
+		running = false;
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		timer.join(TimeUnit.MINUTES.toMillis(1));
+		flush();
+	}
+
+	// Ships batches as their window runs out
+	private void run() {
+		while (running) {
+			try {
+				for (Batch b : take(false)) ship(b);
+				lock.lock();
+				try {
+					long wait = untilNextDeadline();
+					if (running && wait > 0) changed.awaitNanos(wait);
+				} finally {
+					lock.unlock();
+				}
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	// Batches past their window (all of them with {@code all}), removed from the open ones
+	private List<Batch> take(boolean all) {
+		List<Batch> due = new ArrayList<>();
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			open.entrySet().removeIf(e -> {
+				if (!all && now - e.getValue().openedAt < settings.window().toNanos()) return false;
+				due.add(batch(e.getKey(), e.getValue()));
+				return true;
+			});
+		} finally {
+			lock.unlock();
+		}
+		return due;
+	}
+
+	private long untilNextDeadline() {
+		long next = TimeUnit.SECONDS.toNanos(1);
+		long now = System.nanoTime();
+		for (Open b : open.values()) next = Math.min(next, b.openedAt + settings.window().toNanos() - now);
+		return next;
+	}
+
+	private static Batch batch(Key key, Open b) {
+		return new Batch(key.extractor(), key.kind(), List.copyOf(b.members), b.bytes, b.openedAt);
+	}
+
+	private void ship(Batch batch) {
+		List<Member> left = batch.members();
+		try {
+			// A member deleted meanwhile (e.g. DLQ cleanup) would fail the whole archive
+			List<Member> present = batch.members().stream().filter(m -> Files.exists(m.path())).toList();
+			if (!present.isEmpty()) {
+				shipper.ship(present.size() == batch.members().size() ? batch
+						: new Batch(batch.extractor(), batch.kind(), present,
+						present.stream().mapToLong(Member::size).sum(), batch.openedAt()));
+			}
+			left = batch.members().stream().filter(m -> !present.contains(m)).toList();
+		} catch (Exception ex) {
+			log.warn("Batch of {} {} files for {} failed, the sweeper will retry them: {}",
+					batch.members().size(), batch.kind(), batch.extractor(), ex.toString());
+		} finally {
+			if (!left.isEmpty()) {
+				try {
+					notShipped.accept(left);
+				} catch (RuntimeException ex) {
+					log.warn("Could not hand back {} unshipped files: {}", left.size(), ex.toString());
+				}
+			}
+			lock.lock();
+			try {
+				batch.members().forEach(m -> taken.remove(m.path()));
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.td.uploader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Uploader ledger in SQLite: one row per file path (unique index) with its upload state and the
+ * size, mtime and SHA-256 of the version that was uploaded.
+ * The sweeper diffs what IncrementalScanner found against the ledger and picks the pending files
+ * with one indexed query, instead of probing a .enc.uploaded marker next to every file.
+ * <p>
+ * An upload first claims the version it read ({@link #claim}), which moves the row to UPLOADING in one
+ * statement, so the sweeper and an event worker never both upload it. A claim older than
+ * UPLOADER_CLAIM_TTL_MS (the uploader died mid-transfer) counts as pending again.
+ */
+@Component
+public class UploadLedger {
+
+	public static final String PENDING = "PENDING";
+	public static final String UPLOADING = "UPLOADING";
+	public static final String UPLOADED = "UPLOADED";
+
+	/** A file the sweeper should upload. */
+	public record Entry(String filepath, String extractor, String kind, String filename) {}
+
+	/** A *.jsonl file as a scan found it. */
+	public record Seen(Path path, long size, long mtime) {}
+
+	/** An uploaded version of a file, as given to markUploaded. */
+	public record Uploaded(Path path, long size, long mtime, String checksum) {}
+
+	private record Row(long size, long mtime, String state) {}
+
+	// Also in db/schema.sql; repeated here so an existing database picks the ledger up on upgrade
+	static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS files (" +
+					"id INTEGER PRIMARY KEY AUTOINCREMENT, extractor TEXT, kind TEXT, " +
+					"filename TEXT NOT NULL, filepath TEXT NOT NULL, inserted_at TEXT NOT NULL)",
+			"CREATE TABLE IF NOT EXISTS uploads (" +
+					"id INTEGER PRIMARY KEY AUTOINCREMENT, filepath TEXT NOT NULL, extractor TEXT, kind TEXT, " +
+					"filename TEXT NOT NULL, size INTEGER NOT NULL, mtime INTEGER NOT NULL, checksum TEXT, " +
+					"state TEXT NOT NULL, updated_at TEXT NOT NULL)",
+			"CREATE UNIQUE INDEX IF NOT EXISTS ux_uploads_filepath ON uploads(filepath)",
+			"CREATE INDEX IF NOT EXISTS ix_uploads_state ON uploads(state)"
+	};
+
+	private static final String UPSERT =
+			"INSERT INTO uploads(filepath, extractor, kind, filename, size, mtime, checksum, state, updated_at) " +
+					"VALUES(?,?,?,?,?,?,?,?,CURRENT_TIMESTAMP) " +
+					"ON CONFLICT(filepath) DO UPDATE SET size=excluded.size, mtime=excluded.mtime, " +
+					"checksum=excluded.checksum, state=excluded.state, updated_at=CURRENT_TIMESTAMP";
+
+	// Takes the row unless another upload holds a live claim or this version is already uploaded;
+	// executeUpdate() returns 0 when the WHERE leaves the existing row alone
+	private static final String CLAIM =
+			"INSERT INTO uploads(filepath, extractor, kind, filename, size, mtime, checksum, state, updated_at) " +
+					"VALUES(?,?,?,?,?,?,?,?,CURRENT_TIMESTAMP) " +
+					"ON CONFLICT(filepath) DO UPDATE SET size=excluded.size, mtime=excluded.mtime, " +
+					"checksum=NULL, state=excluded.state, updated_at=CURRENT_TIMESTAMP " +
+					"WHERE uploads.state = 'PENDING' " +
+					"OR (uploads.state = 'UPLOADED' AND (uploads.size <> excluded.size OR uploads.mtime <> excluded.mtime)) " +
+					"OR (uploads.state = 'UPLOADING' AND uploads.updated_at < datetime('now', ?))";
+
+	private final DataSource dataSource;
+	private final String claimTtl;            // SQLite datetime modifier, e.g. "-3600 seconds"
+	private volatile boolean schemaReady;
+
+	@Autowired
+	public UploadLedger(DataSource dataSource, Environment env) {
+		this(dataSource, Duration.ofMillis(Long.parseLong(env.getProperty("UPLOADER_CLAIM_TTL_MS", "3600000"))));
+	}
+
+	public UploadLedger(DataSource dataSource, Duration claimTtl) {
+		this.dataSource = dataSource;
+		this.claimTtl = "-" + claimTtl.toSeconds() + " seconds";
+	}
+
+	/**
+	 * Brings the ledger up to date with what a scan found: new files and files changed since their upload
+	 * become PENDING, and pending rows of files that are gone are dropped (a gone directory drops the rows
+	 * under it). With {@code complete} the scan covered every file, so any pending row not in {@code present}
+	 * counts as gone. Returns the pending files.
+	 */
+	public List<Entry> update(Collection<Seen> present, Collection<Path> gone, boolean complete) throws SQLException {
+		try (Connection c = connection()) {
+			// A complete scan compares against the whole table in one query, an incremental one looks up by path
+			Map<String, Row> known = complete ? loadAll(c) : null;
+			boolean autoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try (PreparedStatement lookup = c.prepareStatement("SELECT size, mtime, state FROM uploads WHERE filepath = ?");
+			     PreparedStatement upsert = c.prepareStatement(UPSERT);
+			     // The path itself, or anything below it: "dir/" <= filepath < "dir0" ('0' follows '/')
+			     PreparedStatement drop = c.prepareStatement(
+					     "DELETE FROM uploads WHERE state = 'PENDING' AND (filepath = ? OR (filepath >= ? AND filepath < ?))")) {
+				// Gone first: a directory deleted and created again may hold new files that are present
+				drop(drop, gone.stream().map(Path::toString).toList());
+				for (Seen f : present) {
+					String path = f.path().toString();
+					Row row = complete ? known.remove(path) : find(lookup, path);
+					if (row == null) {
+						// Uploaded before the ledger existed: take the old marker's word for it, once
+						String state = Files.exists(Paths.get(path + ".enc.uploaded")) ? UPLOADED : PENDING;
+						bind(upsert, f.path(), f.size(), f.mtime(), null, state);
+						upsert.addBatch();
+					} else if (row.state().equals(UPLOADED) && (row.size() != f.size() || row.mtime() != f.mtime())) {
+						bind(upsert, f.path(), f.size(), f.mtime(), null, PENDING);
+						upsert.addBatch();
+					}
+				}
+				upsert.executeBatch();
+				if (complete)
+					drop(drop, known.entrySet().stream().filter(r -> r.getValue().state().equals(PENDING)).map(Map.Entry::getKey).toList());
+				c.commit();
+			} catch (SQLException | RuntimeException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(autoCommit);
+			}
+			return pending(c);
+		}
+	}
+
+	/**
+	 * Claims this version of the file for upload: true when the caller should upload it, false when it is
+	 * already uploaded or another upload is on it. A claim ends with markUploaded, or release on failure.
+	 */
+	public boolean claim(Path file, long size, long mtime) throws SQLException {
+		try (Connection c = connection(); PreparedStatement ps = c.prepareStatement(CLAIM)) {
+			bind(ps, file, size, mtime, null, UPLOADING);
+			ps.setString(9, claimTtl);
+			return ps.executeUpdate() == 1;
+		}
+	}
+
+	/** Gives claims back after a failed upload: the files are pending again for the sweeper. */
+	public void release(Collection<Path> files) throws SQLException {
+		try (Connection c = connection();
+		     PreparedStatement ps = c.prepareStatement(
+				     "UPDATE uploads SET state = 'PENDING', updated_at = CURRENT_TIMESTAMP WHERE filepath = ? AND state = 'UPLOADING'")) {
+			for (Path p : files) {
+				ps.setString(1, p.toString());
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+	}
+
+	/** True when this exact version (size and mtime) of the file has already been uploaded. */
+	public boolean isUploaded(String filepath, long size, long mtime) throws SQLException {
+		try (Connection c = connection();
+		     PreparedStatement ps = c.prepareStatement("SELECT size, mtime, state FROM uploads WHERE filepath = ?")) {
+			ps.setString(1, filepath);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() && rs.getLong(1) == size && rs.getLong(2) == mtime && UPLOADED.equals(rs.getString(3));
+			}
+		}
+	}
+
+	/** Records the uploaded version; size and mtime are the ones read before the upload started. */
+	public void markUploaded(Path file, long size, long mtime, String checksum) throws SQLException {
+		try (Connection c = connection(); PreparedStatement ps = c.prepareStatement(UPSERT)) {
+			bind(ps, file, size, mtime, checksum, UPLOADED);
+			ps.executeUpdate();
+		}
+	}
+
+	/** Records the uploaded versions of the files of one batch in a single transaction. */
+	public void markUploaded(List<Uploaded> uploaded) throws SQLException {
+		try (Connection c = connection()) {
+			boolean autoCommit = c.getAutoCommit();
+			c.setAutoCommit(false);
+			try (PreparedStatement ps = c.prepareStatement(UPSERT)) {
+				for (Uploaded u : uploaded) {
+					bind(ps, u.path(), u.size(), u.mtime(), u.checksum(), UPLOADED);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				c.commit();
+			} catch (SQLException | RuntimeException ex) {
+				c.rollback();
+				throw ex;
+			} finally {
+				c.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	static String extractorOf(Path p) {
+		return p.getParent() != null ? p.getParent().getFileName().toString() : "unknown";
+	}
+
+	static String kindOf(String path) {
+		if (path.contains("/processed_users/")) return "PROCESSED";
+		if (path.contains("/dlq/"))            return "DLQ";
+		if (path.contains("/tombstones_"))     return "TOMBSTONES";
+		return "RAW";
+	}
+
+	private static Map<String, Row> loadAll(Connection c) throws SQLException {
+		Map<String, Row> known = new HashMap<>();
+		try (Statement st = c.createStatement();
+		     ResultSet rs = st.executeQuery("SELECT filepath, size, mtime, state FROM uploads")) {
+			while (rs.next()) known.put(rs.getString(1), new Row(rs.getLong(2), rs.getLong(3), rs.getString(4)));
+		}
+		return known;
+	}
+
+	private static Row find(PreparedStatement lookup, String path) throws SQLException {
+		lookup.setString(1, path);
+		try (ResultSet rs = lookup.executeQuery()) {
+			return rs.next() ? new Row(rs.getLong(1), rs.getLong(2), rs.getString(3)) : null;
+		}
+	}
+
+	private static void drop(PreparedStatement drop, Collection<String> paths) throws SQLException {
+		for (String path : paths) {
+			drop.setString(1, path);
+			drop.setString(2, path + "/");
+			drop.setString(3, path + "0");
+			drop.addBatch();
+		}
+		drop.executeBatch();
+	}
+
+	private List<Entry> pending(Connection c) throws SQLException {
+		List<Entry> out = new ArrayList<>();
+		try (PreparedStatement ps = c.prepareStatement(
+				"SELECT filepath, extractor, kind, filename FROM uploads " +
+						"WHERE state = 'PENDING' OR (state = 'UPLOADING' AND updated_at < datetime('now', ?)) ORDER BY id")) {
+			ps.setString(1, claimTtl);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) out.add(new Entry(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4)));
+			}
+		}
+		return out;
+	}
+
+	private static void bind(PreparedStatement ps, Path p, long size, long mtime, String checksum, String state) throws SQLException {
+		String path = p.toString();
+		ps.setString(1, path);
+		ps.setString(2, extractorOf(p));
+		ps.setString(3, kindOf(path));
+		ps.setString(4, p.getFileName().toString());
+		ps.setLong(5, size);
+		ps.setLong(6, mtime);
+		ps.setString(7, checksum);
+		ps.setString(8, state);
+	}
+
+	private Connection connection() throws SQLException {
+		Connection c = dataSource.getConnection();
+		if (!schemaReady) {
+			synchronized (this) {
+				if (!schemaReady) {
+					try (Statement st = c.createStatement()) {
+						for (String ddl : SCHEMA) st.execute(ddl);
+					} catch (SQLException ex) {
+						c.close();
+						throw ex;
+					}
+					schemaReady = true;
+				}
+			}
+		}
+		return c;
+	}
+}
@@ -0,0 +1,174 @@
+package com.td.uploader;
+
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue between the Redis subscriber and the uploads, drained by a pool of virtual-thread workers,
+ * so a slow SFTP transfer no longer holds up message intake.
+ * PROCESSED and DLQ files go before RAW (and TOMBSTONES); a path already waiting or being uploaded is not
+ * queued twice (a version written meanwhile stays pending in the ledger for the sweeper).
+ * When the queue is full an incoming PROCESSED/DLQ event takes the place of the newest RAW one; otherwise
+ * the event waits up to {@code blockFor} for room ({@code block}) or is shed straight away. A shed or
+ * replaced file is not lost: it stays pending in the ledger and the sweeper uploads it.
+ */
+public class UploadQueue extends ServiceSupport {
+
+	private static final Logger log = LoggerFactory.getLogger(UploadQueue.class);
+
+	public record Task(String kind, String extractor, String path, String fileName, long queuedAt) {
+
+		boolean high() {
+			return "PROCESSED".equals(kind) || "DLQ".equals(kind);
+		}
+	}
+
+	public enum Outcome { QUEUED, REPLACED_RAW, DUPLICATE, SHED }
+
+	@FunctionalInterface
+	public interface Worker {
+		void upload(Task task) throws Exception;
+	}
+
+	public record Settings(int capacity, int workers, boolean block, Duration blockFor) {}
+
+	private final Settings settings;
+	private final Worker worker;
+	private final ReentrantLock lock = new ReentrantLock(); // not synchronized: virtual threads would pin
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final ArrayDeque<Task> high = new ArrayDeque<>();
+	private final ArrayDeque<Task> low = new ArrayDeque<>();
+	private final Set<String> queued = new HashSet<>();
+	private final List<Thread> threads = new ArrayList<>();
+	private final AtomicInteger busy = new AtomicInteger();
+	private volatile boolean running;
+
+	public UploadQueue(Settings settings, Worker worker) {
+		this.settings = settings;
+		this.worker = worker;
+	}
+
+	public Outcome offer(Task task) throws InterruptedException {
+		lock.lock();
+		try {
+			if (queued.contains(task.path())) return Outcome.DUPLICATE;
+			Outcome outcome = Outcome.QUEUED;
+			if (depth() >= settings.capacity()) {
+				if (task.high() && !low.isEmpty()) {
+					Task dropped = low.pollLast();
+					queued.remove(dropped.path());
+					log.warn("Upload queue full: {} left to the sweeper for {}", dropped.path(), task.path());
+					outcome = Outcome.REPLACED_RAW;
+				} else {
+					long wait = settings.block() ? settings.blockFor().toNanos() : 0;
+					while (depth() >= settings.capacity() && wait > 0) wait = notFull.awaitNanos(wait);
+					if (depth() >= settings.capacity()) {
+						log.warn("Upload queue full: {} left to the sweeper", task.path());
+						return Outcome.SHED;
+					}
+				}
+			}
+			(task.high() ? high : low).addLast(task);
+			queued.add(task.path());
+			notEmpty.signal();
+			return outcome;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Tasks waiting for a worker. */
+	public int depth() {
+		lock.lock();
+		try {
+			return high.size() + low.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Workers uploading right now. */
+	public int busy() {
+		return busy.get();
+	}
+
+	public int workers() {
+		return Math.max(1, settings.workers());
+	}
+
+	@Override
+	protected void doStart() {
+		running = true;
+		Thread.Builder builder = Thread.ofVirtual().name("upload-worker-", 0);
+		for (int i = 0; i < workers(); i++) threads.add(builder.start(this::run));
+	}
+
+	// Uploads in progress finish; whatever is still queued is left to the sweeper
+	@Override
+	protected void doStop() throws InterruptedException {
+		running = false;
+		lock.lock();
+		try {
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		for (Thread t : threads) t.join(TimeUnit.MINUTES.toMillis(1));
+		threads.clear();
+	}
+
+	private void run() {
+		while (running) {
+			Task task;
+			try {
+				task = take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+			if (task == null) continue;
+			busy.incrementAndGet();
+			try {
+				worker.upload(task);
+			} catch (Exception ex) {
+				log.warn("Upload of {} failed, the sweeper will retry it: {}", task.path(), ex.toString());
+			} finally {
+				busy.decrementAndGet();
+				lock.lock();
+				try {
+					queued.remove(task.path());
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	private Task take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (high.isEmpty() && low.isEmpty()) {
+				if (!running) return null;
+				notEmpty.await(1, TimeUnit.SECONDS);
+			}
+			// The path stays in queued until its upload is over, see run()
+			Task task = !high.isEmpty() ? high.pollFirst() : low.pollFirst();
+			notFull.signal();
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
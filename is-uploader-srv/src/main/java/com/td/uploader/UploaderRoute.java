@@ -1,178 +1,351 @@
 package com.td.uploader;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.td.common.DataCodec;
+import com.td.common.FileEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.converter.crypto.CryptoDataFormat;
+import org.apache.camel.model.ProcessorDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.spec.SecretKeySpec;
-import javax.sql.DataSource;
-import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class UploaderRoute extends RouteBuilder {
 
-	private final DataSource dataSource;
+	private static final Logger log = LoggerFactory.getLogger(UploaderRoute.class);
+
 	private final Environment env;
+	private final SftpSessionPool sftp;
+	private final UploadLedger ledger;
+	private final FileMetadataWriter files;
+	private final IncrementalScanner scanner;
+	private final MeterRegistry registry;
+	private final RedisConnectionFactory redis;
+	private final ObjectReader events;
+	private final ObjectWriter manifests;
+	private final ProducerTemplate template;
 
-	public UploaderRoute(DataSource dataSource, Environment env) {
-		this.dataSource = dataSource;
+	public UploaderRoute(Environment env, SftpSessionPool sftp, UploadLedger ledger, FileMetadataWriter files,
+	                     IncrementalScanner scanner, MeterRegistry registry, RedisConnectionFactory redis,
+	                     ObjectMapper mapper, ProducerTemplate template) {
 		this.env = env;
+		this.sftp = sftp;
+		this.ledger = ledger;
+		this.files = files;
+		this.scanner = scanner;
+		this.registry = registry;
+		this.redis = redis;
+		this.events = mapper.readerFor(FileEvent.class);
+		this.manifests = mapper.writer();
+		this.template = template;
 	}
 
 	@Override
-	public void configure() {
-
-		final String dataDir = defaultValue("DATA_DIR", "/data");
+	public void configure() throws Exception {
 
 		final int maxRedeliveries = Integer.parseInt(defaultValue("RETRIES", "3"));
 		final long redeliveryDelayMs = Long.parseLong(defaultValue("REDELIVERY_DELAY_MS", "5000"));
 		final double backoffMultiplier = Double.parseDouble(defaultValue("BACKOFF_MULTIPLIER", "3.0"));
 
+		// === Crypto (AES) ===
+		final String cryptoAlgo = defaultValue("CRYPTO_ALGO", "AES/CBC/PKCS5Padding");
+		final byte[] keyBytes   = hexToBytes(must("CRYPTO_KEY_HEX"));
+		final byte[] ivBytes    = hexToBytes(must("CRYPTO_IV_HEX"));
+
+		// Same output as CryptoDataFormat with this IV and no HMAC, but streamed in chunks
+		final SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
+		final StreamingEncryptor encryptor = new StreamingEncryptor(cryptoAlgo, secretKey, ivBytes);
+
+		// DATA_CODEC=gzip|zstd: plain files are compressed before they are encrypted (see DataCodec)
+		final DataCodec codec = DataCodec.of(defaultValue("DATA_CODEC", "none"));
+
 		errorHandler(defaultErrorHandler()
 				.maximumRedeliveries(maxRedeliveries)
 				.redeliveryDelay(redeliveryDelayMs)
 				.useExponentialBackOff()
 				.backOffMultiplier(backoffMultiplier));
 
-		// === Redis (SUBSCRIBE) ===
+		// === Redis (SUBSCRIBE, or consumer group on streams of the same names) ===
 		final String redisHost = defaultValue("REDIS_HOST", "redis");
 		final String redisPort = defaultValue("REDIS_PORT", "6379");
 		final String redisPwd  = defaultValue("REDIS_PASSWORD", "${REDIS_PASSWORD}");
 		final String chMain    = defaultValue("REDIS_CHANNEL", "files.events");
 		final String chDlq     = defaultValue("REDIS_DLQ_CHANNEL", "files.dlq");
+		final boolean streams  = defaultValue("REDIS_TRANSPORT", "pubsub").equalsIgnoreCase("streams");
 
-		// === Crypto (AES) ===
-		final String cryptoAlgo = defaultValue("CRYPTO_ALGO", "AES/CBC/PKCS5Padding");
-		final byte[] keyBytes   = hexToBytes(must("CRYPTO_KEY_HEX"));
-		final byte[] ivBytes    = hexToBytes(must("CRYPTO_IV_HEX"));
+		// === SFTP: sessions come from the SftpSessionPool bean (see SftpConfig) ===
+		final int parallelism = Integer.parseInt(defaultValue("UPLOADER_PARALLELISM", "1"));
+		final ExecutorService uploadPool = getContext().getExecutorServiceManager()
+				.newFixedThreadPool(this, "uploader-split", parallelism);
 
-		final SecretKeySpec secretKey = new SecretKeySpec(keyBytes, "AES");
-		final CryptoDataFormat crypto = new CryptoDataFormat(cryptoAlgo, secretKey);
-		crypto.setInitializationVector(ivBytes);
-		crypto.setShouldAppendHMAC(false);
-
-		// === SFTP (SSH key) ===
-		final String sftpHost   = defaultValue("SFTP_HOST", "sftp");
-		final String sftpPort   = defaultValue("SFTP_PORT", "22");
-		final String sftpUser   = defaultValue("SFTP_USER", "camel");
-		final String sftpKey    = defaultValue("SFTP_KEY_PATH", "/run/secrets/sftp_key");
-		final String sftpPass   = defaultValue("SFTP_KEY_PASSPHRASE", "");
-		final String sftpDir    = defaultValue("SFTP_REMOTE_DIR", "/upload");
-		final String sftpStrict = defaultValue("SFTP_STRICT_HOST_KEY_CHECKING", "true");
-		final String sftpKnown  = defaultValue("SFTP_KNOWN_HOSTS", "/run/secrets/known_hosts");
-
-		StringBuilder sftpUri = new StringBuilder()
-				.append("sftp://").append(sftpHost).append(":").append(sftpPort).append(sftpDir)
-				.append("?username=").append(sftpUser)
-				.append("&privateKeyUri=file:").append(sftpKey)
-				.append("&throwExceptionOnConnectFailed=true");
-		if (!sftpPass.isBlank()) sftpUri.append("&privateKeyPassphrase=").append(sftpPass);
-		if (!sftpStrict.isBlank()) sftpUri.append("&strictHostKeyChecking=").append(sftpStrict);
-		if (!sftpKnown.isBlank())  sftpUri.append("&knownHostsFile=").append(sftpKnown);
+		// Where uploads wait: sweeper files for a split thread, audit rows for SQLite, uploads for an SFTP session
+		Gauge.builder("uploader.queue.depth", uploadPool, p -> p instanceof ThreadPoolExecutor t ? t.getQueue().size() : 0)
+				.description("Items waiting").tag("queue", "split").register(registry);
+		Gauge.builder("uploader.queue.depth", files, FileMetadataWriter::pending)
+				.description("Items waiting").tag("queue", "metadata").register(registry);
+		Gauge.builder("uploader.queue.depth", sftp, SftpSessionPool::waiting)
+				.description("Items waiting").tag("queue", "sftp").register(registry);
+		Gauge.builder("uploader.metadata.rows.dropped", files, FileMetadataWriter::dropped)
+				.description("files rows that failed on their own after DB_BATCH_ATTEMPTS").register(registry);
+
+		// UPLOADER_BATCH=true: small files go out as one zip per extractor and kind, compressed and encrypted once
+		final UploadBatcher batcher;
+		if (Boolean.parseBoolean(defaultValue("UPLOADER_BATCH", "false"))) {
+			batcher = new UploadBatcher(new UploadBatcher.Settings(
+					Integer.parseInt(defaultValue("UPLOADER_BATCH_MAX_FILES", "500")),
+					Long.parseLong(defaultValue("UPLOADER_BATCH_MAX_MB", "64")) * 1024 * 1024,
+					Long.parseLong(defaultValue("UPLOADER_BATCH_FILE_MAX_KB", "1024")) * 1024,
+					Duration.ofMillis(Long.parseLong(defaultValue("UPLOADER_BATCH_WINDOW_MS", "30000")))),
+					batch -> {
+						String kind = batch.kind();
+						String archiveName = BatchArchive.name(batch);
+						String remoteName = archiveName + codec.extension() + ".enc";
+						long t0 = System.nanoTime();
+						BatchArchive archive = new BatchArchive(batch, archiveName, manifests);
+						TimedInputStream in = new TimedInputStream(encryptor.encrypt(codec.compress(archive)));
+						try (in) {
+							sftp.upload(in, remoteName);
+						} catch (Exception ex) {
+							registry.counter("uploader.batch.failures", "kind", kind).increment();
+							throw ex;
+						}
+						// One ledger transaction and one files row per member, with the version that went into the archive
+						List<UploadLedger.Uploaded> uploaded = new ArrayList<>();
+						for (int i = 0; i < batch.members().size(); i++) {
+							BatchArchive.Entry archived = archive.entry(i);
+							uploaded.add(new UploadLedger.Uploaded(batch.members().get(i).path(), archived.size(), archived.mtime(), archived.sha256()));
+						}
+						ledger.markUploaded(uploaded);
+						for (UploadBatcher.Member m : batch.members())
+							files.record(m.extractor(), m.kind(), m.fileName(), m.path().toString());
+
+						long nanos = System.nanoTime() - t0;
+						registry.timer("uploader.encrypt.duration", "kind", kind).record(in.nanos(), TimeUnit.NANOSECONDS);
+						registry.timer("uploader.upload.duration", "kind", kind).record(nanos, TimeUnit.NANOSECONDS);
+						registry.counter("uploader.upload.bytes", "kind", kind).increment(batch.bytes());
+						registry.counter("uploader.upload.wire.bytes", "kind", kind).increment(in.bytes());
+						registry.summary("uploader.upload.bytes.per.second", "kind", kind).record(batch.bytes() * 1e9 / Math.max(1, nanos));
+						registry.summary("uploader.batch.files", "kind", kind).record(batch.members().size());
+						log.info("Uploaded {} with {} files for {} ({})", remoteName, batch.members().size(), batch.extractor(), kind);
+					},
+					unshipped -> {
+						try {
+							ledger.release(unshipped.stream().map(UploadBatcher.Member::path).toList());
+						} catch (SQLException ex) {
+							log.warn("Could not release {} ledger claims, they expire on their own: {}", unshipped.size(), ex.toString());
+						}
+					});
+			Gauge.builder("uploader.queue.depth", batcher, UploadBatcher::pending)
+					.description("Items waiting").tag("queue", "batch").register(registry);
+			getContext().addService(batcher, true, false);
+		} else {
+			batcher = null;
+		}
 
 		//Main Function - ProcessFile
-		from("spring-redis://?command=SUBSCRIBE&channels="+chMain+","+chDlq+"&connectionFactory=#redisConnectionFactory")
-				.routeId("uploader-subscribe")
-				.process(e -> {
-					String json = e.getMessage().getBody(String.class);
-					ObjectMapper m = new ObjectMapper();
-					JsonNode root = m.readTree(json);
+		final UploadQueue queue;
+		if (streams) {
+			// XREADGROUP: replicas share the events, an event is acknowledged once its upload is done
+			StreamEventConsumer consumer = new StreamEventConsumer(redis, new StreamEventConsumer.Settings(
+					List.of(chMain, chDlq),
+					defaultValue("REDIS_STREAM_GROUP", "uploader"),
+					defaultValue("HOSTNAME", "uploader"),
+					Integer.parseInt(defaultValue("REDIS_STREAM_CONSUMERS", "1")),
+					Integer.parseInt(defaultValue("REDIS_STREAM_BATCH", "16")),
+					Duration.ofMillis(Long.parseLong(defaultValue("REDIS_STREAM_BLOCK_MS", "2000"))),
+					Duration.ofMillis(Long.parseLong(defaultValue("REDIS_STREAM_RECLAIM_MS", "60000"))),
+					Integer.parseInt(defaultValue("REDIS_STREAM_MAX_DELIVERIES", "10"))),
+					(stream, json) -> template.requestBody("direct:fileEvent", json));
+			Gauge.builder("uploader.stream.dead.lettered", consumer, StreamEventConsumer::deadLettered)
+					.description("Events moved to <stream>.dead after REDIS_STREAM_MAX_DELIVERIES").register(registry);
+			getContext().addService(consumer, true, false);
+			queue = null;
+		} else {
+			// The subscriber only queues the upload (see UploadQueue), so a slow transfer does not hold up intake
+			queue = new UploadQueue(new UploadQueue.Settings(
+					Integer.parseInt(defaultValue("UPLOADER_QUEUE_CAPACITY", "1000")),
+					Integer.parseInt(defaultValue("UPLOADER_WORKERS", "4")),
+					defaultValue("UPLOADER_QUEUE_FULL", "block").equalsIgnoreCase("block"),
+					Duration.ofMillis(Long.parseLong(defaultValue("UPLOADER_QUEUE_BLOCK_MS", "1000")))),
+					task -> {
+						registry.timer("uploader.queue.wait").record(System.nanoTime() - task.queuedAt(), TimeUnit.NANOSECONDS);
+						Exchange done = template.send("direct:uploadFile", x -> {
+							x.setProperty("kind", task.kind());
+							x.setProperty("extractor", task.extractor());
+							x.setProperty("filePath", task.path());
+							x.setProperty("fileName", task.fileName());
+						});
+						if (done.getException() != null) throw done.getException();
+					});
+			Gauge.builder("uploader.queue.depth", queue, UploadQueue::depth)
+					.description("Items waiting").tag("queue", "events").register(registry);
+			Gauge.builder("uploader.workers.busy", queue, UploadQueue::busy)
+					.description("Upload workers busy").register(registry);
+			Gauge.builder("uploader.workers.utilization", queue, q -> (double) q.busy() / q.workers())
+					.description("Share of upload workers busy").register(registry);
+			getContext().addService(queue, true, false);
+
+			from("spring-redis://?command=SUBSCRIBE&channels="+chMain+","+chDlq+"&connectionFactory=#redisConnectionFactory")
+					.routeId("uploader-subscribe")
+					.to("direct:fileEvent");
+		}
 
-					String kind = root.path("type").asText("RAW");
-					String ext  = root.path("extractor").asText("unknown");
-					String path = root.path("path").asText();
+		ProcessorDefinition<?> onEvent = from("direct:fileEvent")
+				.routeId("uploader-event")
+				.process(e -> {
+					FileEvent event = events.readValue(e.getMessage().getBody(String.class));
 
+					String kind = event.type() == null ? "RAW" : event.type();
+					String ext  = event.extractor() == null ? "unknown" : event.extractor();
 					e.setProperty("kind", kind);
 					e.setProperty("extractor", ext);
-					e.setProperty("filePath", path);
-					e.setProperty("fileName", Paths.get(path).getFileName().toString());
+
+					// Nothing to upload (e.g. a failed extraction): never let it reach the ledger
+					if (event.path() == null || event.path().isBlank()) {
+						log.warn("Ignoring {} event from {} without a path", kind, ext);
+						registry.counter("uploader.events.ignored", "kind", kind).increment();
+						return;
+					}
+					e.setProperty("filePath", event.path());
+					e.setProperty("fileName", Paths.get(event.path()).getFileName().toString());
 				})
-				.to("direct:uploadFile");
+				.filter(exchangeProperty("filePath").isNotNull());
+		if (queue != null) {
+			onEvent.process(e -> {
+				UploadQueue.Outcome outcome = queue.offer(new UploadQueue.Task((String) e.getProperty("kind"),
+						(String) e.getProperty("extractor"), (String) e.getProperty("filePath"),
+						(String) e.getProperty("fileName"), System.nanoTime()));
+				registry.counter("uploader.queue.events", "outcome", outcome.name().toLowerCase()).increment();
+			});
+		} else {
+			onEvent.to("direct:uploadFile");
+		}
 
 
 		final String cron = defaultValue("UPLOADER_CRON", "0+0/5+*+*+*+?");
 		fromF("quartz://uploader-sweeper?cron=%s", cron)
 				.routeId("uploader-sweeper")
+				// New or changed *.jsonl in processed, dlq, raw (watched between sweeps) become pending in the ledger
 				.process(e -> {
-					// Search *.jsonl en raw, processed, dlq
-					List<Path> toProcess = new ArrayList<>();
-					scanJsonl(Paths.get(dataDir, "processed_users"), toProcess);
-					scanJsonl(Paths.get(dataDir, "dlq"), toProcess);
-					scanJsonl(Paths.get(dataDir, "raw_users"), toProcess);
-					e.setProperty("scanResults", toProcess);
+					long t0 = System.nanoTime();
+					IncrementalScanner.Result scan = scanner.scan();
+					List<UploadLedger.Entry> pending = ledger.update(scan.present(), scan.gone(), scan.complete());
+					String mode = scan.complete() ? "full" : "incremental";
+					registry.counter("uploader.sweep.files.scanned", "mode", mode).increment(scan.present().size());
+					registry.timer("uploader.sweep.duration", "mode", mode).record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+					e.setProperty("scanResults", pending);
+					e.setProperty("sweepMode", mode); // the split copies it to every file, see uploader-core
 				})
-				.split(exchangeProperty("scanResults"))
+				// With UPLOADER_PARALLELISM > 1 several files go out at once, each on its own pooled session
+				.split(exchangeProperty("scanResults")).parallelProcessing(parallelism > 1).executorService(uploadPool)
 				.process(e -> {
-					Path p = (Path) e.getMessage().getBody();
-					String path = p.toString();
-					String name = p.getFileName().toString();
-
-					// Avoid duplicates
-					Path marker = Paths.get(path + ".enc.uploaded");
-					if (Files.exists(marker)) {
-						e.setProperty("skipUpload", true);
-						return;
-					}
-
-					String extractor = p.getParent() != null ? p.getParent().getFileName().toString() : "unknown";
-					String kind = deduceKind(path); // RAW | PROCESSED | DLQ
-
-					e.setProperty("skipUpload", false);
-					e.setProperty("extractor", extractor);
-					e.setProperty("kind", kind);
-					e.setProperty("filePath", path);
-					e.setProperty("fileName", name);
+					UploadLedger.Entry f = e.getMessage().getBody(UploadLedger.Entry.class);
+					e.setProperty("extractor", f.extractor());
+					e.setProperty("kind", f.kind());
+					e.setProperty("filePath", f.filepath());
+					e.setProperty("fileName", f.filename());
 				})
-				.filter(exchangeProperty("skipUpload").isEqualTo(false))
 				.to("direct:uploadFile")
 				.end();
 
 		// Upload a File
-		from("direct:uploadFile")
+		ProcessorDefinition<?> upload = from("direct:uploadFile")
 				.routeId("uploader-core")
-				// Insert metadata en SQLite
+				.streamCache("false")
+				// A failed upload (after its redeliveries) gives the claim back, so the sweeper retries it
+				.onCompletion().onFailureOnly()
+					.process(e -> {
+						if (Boolean.TRUE.equals(e.getProperty("claimed")))
+							ledger.release(List.of(Paths.get((String) e.getProperty("filePath"))));
+					})
+				.end()
+				// Claim the version in the ledger; skip it when it is already uploaded or another upload has it
+				// (e.g. the sweeper got there first)
 				.process(e -> {
-					String extractor = (String) e.getProperty("extractor");
-					String kind      = (String) e.getProperty("kind");
-					String fileName  = (String) e.getProperty("fileName");
-					String filePath  = (String) e.getProperty("filePath");
-					try (Connection c = dataSource.getConnection();
-					     PreparedStatement ps = c.prepareStatement(
-							     "INSERT INTO files(extractor, kind, filename, filepath, inserted_at) " +
-									     "VALUES(?,?,?,?,CURRENT_TIMESTAMP)")) {
-						ps.setString(1, extractor);
-						ps.setString(2, kind);
-						ps.setString(3, fileName);
-						ps.setString(4, filePath);
-						ps.executeUpdate();
-					}
+					Path path = Paths.get((String) e.getProperty("filePath"));
+					BasicFileAttributes a = Files.readAttributes(path, BasicFileAttributes.class);
+					long size = a.size(), mtime = a.lastModifiedTime().toMillis();
+					e.setProperty("fileSize", size);
+					e.setProperty("fileMtime", mtime);
+					e.setProperty("claimed", ledger.claim(path, size, mtime));
 				})
-				// Security, cipher, upload
-				.setHeader("CamelFileName", simple("${exchangeProperty.fileName}.enc"))
+				.filter(exchangeProperty("claimed").isEqualTo(true))
+				// Pending files the sweeper actually takes on (not those an event worker already has)
 				.process(e -> {
-					byte[] data = Files.readAllBytes(Paths.get((String) e.getProperty("filePath")));
-					e.getMessage().setBody(data);
-				})
-				.marshal(crypto)
-				.toD(sftpUri.toString())
+					String mode = e.getProperty("sweepMode", String.class);
+					if (mode != null) registry.counter("uploader.sweep.files.enqueued", "mode", mode).increment();
+				});
+		if (batcher != null) {
+			// Small enough files join a batch and are done here; bigger ones carry on alone
+			upload = upload
+					.process(e -> e.setProperty("batched", batcher.offer(new UploadBatcher.Member(
+							(String) e.getProperty("extractor"),
+							(String) e.getProperty("kind"),
+							Paths.get((String) e.getProperty("filePath")),
+							(String) e.getProperty("fileName"),
+							(Long) e.getProperty("fileSize"),
+							(Long) e.getProperty("fileMtime")))))
+					.filter(exchangeProperty("batched").isEqualTo(false));
+		}
+		upload
+				// Insert metadata en SQLite (queued, committed in batches by FileMetadataWriter)
+				.process(e -> files.record(
+						(String) e.getProperty("extractor"),
+						(String) e.getProperty("kind"),
+						(String) e.getProperty("fileName"),
+						(String) e.getProperty("filePath")))
+				// Security, cipher, upload: the file is compressed and encrypted while SFTP reads it
+				// (a redelivery reruns this step, so every attempt reads a fresh stream)
 				.process(e -> {
-					String path = (String) e.getProperty("filePath");
-					Path marker = Paths.get(path + ".enc.uploaded");
-					try { Files.createFile(marker); } catch (IOException ignore) {
-
+					Path path = Paths.get((String) e.getProperty("filePath"));
+					DataCodec wire = DataCodec.forFile(path) == DataCodec.NONE ? codec : DataCodec.NONE;
+					e.getMessage().setHeader("CamelFileName", e.getProperty("fileName") + wire.extension() + ".enc");
+					MessageDigest sha = MessageDigest.getInstance("SHA-256");
+					long t0 = System.nanoTime();
+					TimedInputStream in = new TimedInputStream(
+							encryptor.encrypt(wire.compress(new DigestInputStream(Files.newInputStream(path), sha))));
+					try (in) {
+						sftp.upload(in, e.getMessage().getHeader("CamelFileName", String.class));
 					}
+					long size = (Long) e.getProperty("fileSize");
+					ledger.markUploaded(path, size, (Long) e.getProperty("fileMtime"), HexFormat.of().formatHex(sha.digest()));
+
+					// Once per file; bytes/second is rate(uploader_upload_bytes_total), per file also as a summary
+					long nanos = System.nanoTime() - t0;
+					String kind = (String) e.getProperty("kind");
+					registry.timer("uploader.encrypt.duration", "kind", kind).record(in.nanos(), TimeUnit.NANOSECONDS);
+					registry.timer("uploader.upload.duration", "kind", kind).record(nanos, TimeUnit.NANOSECONDS);
+					registry.counter("uploader.upload.bytes", "kind", kind).increment(size);
+					registry.counter("uploader.upload.wire.bytes", "kind", kind).increment(in.bytes());
+					registry.summary("uploader.upload.bytes.per.second", "kind", kind).record(size * 1e9 / Math.max(1, nanos));
 				})
-				.log("Uploaded ${header.CamelFileName} for ${exchangeProperty.extractor} (${exchangeProperty.kind})");
+				.log("Uploaded ${header.CamelFileName} for ${exchangeProperty.extractor} (${exchangeProperty.kind})")
+				.end();
 	}
 
 	private String defaultValue(String key, String dft) {
@@ -196,22 +369,8 @@ public class UploaderRoute extends RouteBuilder {
 				out[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4) + Character.digit(hex.charAt(i + 1), 16));
 			return out;
 		}catch(Exception e) {
-			System.out.println("BAD HEX: '"+hex+"'");
+			LoggerFactory.getLogger(UploaderRoute.class).error("BAD HEX: '{}'", hex);
 			return null;
 		}
 	}
-
-	private static void scanJsonl(Path root, List<Path> out) throws IOException {
-		if (!Files.exists(root)) return;
-		try (var s = Files.walk(root)) {
-			s.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".jsonl"))
-					.forEach(out::add);
-		}
-	}
-
-	private static String deduceKind(String path) {
-		if (path.contains("/processed_users/")) return "PROCESSED";
-		if (path.contains("/dlq/"))            return "DLQ";
-		return "RAW";
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package com.td.uploader;
+
+import com.td.common.DataCodec;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressThenEncryptTest {
+
+	static byte[] jsonl(int records) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < records; i++)
+			sb.append("{\"id\":").append(i).append(",\"firstName\":\"User").append(i)
+					.append("\",\"email\":\"user").append(i).append("@x.com\",\"department\":\"Engineering\"}\n");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void compressedThenEncryptedRoundTrips() throws Exception {
+		SecretKeySpec key = new SecretKeySpec(new byte[32], "AES");
+		byte[] iv = new byte[16];
+		StreamingEncryptor enc = new StreamingEncryptor("AES/CBC/PKCS5Padding", key, iv);
+		Cipher dec = Cipher.getInstance("AES/CBC/PKCS5Padding");
+
+		for (DataCodec codec : new DataCodec[]{DataCodec.GZIP, DataCodec.ZSTD}) {
+			for (int records : new int[]{0, 1, 50_000}) {
+				byte[] plain = jsonl(records);
+				byte[] wire;
+				try (InputStream in = enc.encrypt(codec.compress(new ByteArrayInputStream(plain)))) {
+					wire = in.readAllBytes();
+				}
+				dec.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+				byte[] compressed = dec.doFinal(wire);
+				try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed))) {
+					assertArrayEquals(plain, in.readAllBytes(), codec + " " + records);
+				}
+			}
+		}
+	}
+}
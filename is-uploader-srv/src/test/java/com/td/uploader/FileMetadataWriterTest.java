@@ -0,0 +1,115 @@
+package com.td.uploader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileMetadataWriterTest {
+
+	static final int BURST = 50_000;
+
+	@TempDir
+	Path tmp;
+
+	DataSource db(String name) throws Exception {
+		SQLiteConfig cfg = new SQLiteConfig();
+		cfg.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		cfg.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+		cfg.setBusyTimeout(5000);
+		SQLiteDataSource ds = new SQLiteDataSource(cfg);
+		ds.setUrl("jdbc:sqlite:" + tmp.resolve(name));
+		try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+			st.execute(UploadLedger.SCHEMA[0]);
+		}
+		return ds;
+	}
+
+	static long count(DataSource ds) throws Exception {
+		try (Connection c = ds.getConnection(); Statement st = c.createStatement();
+		     ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM files")) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	@Test
+	void burstIsCommittedInFullBatches() throws Exception {
+		// Rows queued from 4 upload threads; flushMs is out of reach, so every transaction holds a full batch
+		DataSource wal = db("wal.db");
+		FileMetadataWriter writer = new FileMetadataWriter(wal, 500, 60_000, 10_000, 3);
+		ExecutorService producers = Executors.newFixedThreadPool(4);
+		List<Future<?>> done = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int from = t * (BURST / 4);
+			done.add(producers.submit(() -> {
+				for (int i = from; i < from + BURST / 4; i++)
+					writer.record("users", "PROCESSED", "etl_" + i + ".jsonl", "/data/processed_users/users/etl_" + i + ".jsonl");
+				return null;
+			}));
+		}
+		for (Future<?> f : done) f.get();
+		writer.close();
+		producers.shutdown();
+
+		assertEquals(BURST, count(wal));
+		assertEquals(BURST, writer.written());
+		assertEquals(BURST / 500, writer.batches(), "one transaction per 500 rows, not one per row");
+		assertEquals(0, writer.dropped());
+	}
+
+	@Test
+	void partialBatchIsCommittedAfterFlushMs() throws Exception {
+		DataSource wal = db("partial.db");
+		FileMetadataWriter writer = new FileMetadataWriter(wal, 500, 500, 1000, 3);
+		for (int i = 0; i < 10; i++) writer.record("users", "RAW", "r" + i, "/data/raw_users/users/r" + i);
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (writer.written() < 10 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		assertEquals(10, count(wal), "committed without close()");
+		assertEquals(1, writer.batches());
+		writer.close();
+	}
+
+	@Test
+	void badRowIsDroppedAndTheRestOfItsBatchWritten() throws Exception {
+		DataSource wal = db("bad.db");
+		// Batch of 10, one row breaks NOT NULL: the batch fails every attempt, then goes row by row
+		FileMetadataWriter writer = new FileMetadataWriter(wal, 10, 60_000, 1000, 2);
+		for (int i = 0; i < 10; i++) writer.record("users", "RAW", i == 4 ? null : "r" + i, "/data/raw_users/users/r" + i);
+		for (int i = 10; i < 20; i++) writer.record("users", "RAW", "r" + i, "/data/raw_users/users/r" + i);
+		// Not close(): it would skip the retry and go row by row at once
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (writer.written() + writer.dropped() < 20 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		writer.close();
+
+		assertEquals(19, count(wal), "only the bad row is missing");
+		assertEquals(19, writer.written());
+		assertEquals(1, writer.dropped());
+		// 9 single-row transactions for the failed batch, then the next batch as one
+		assertEquals(10, writer.batches());
+	}
+
+	@Test
+	void closeFlushesQueuedRows() throws Exception {
+		DataSource wal = db("flush.db");
+		// Neither bound is reached: only close() can get these rows committed
+		FileMetadataWriter writer = new FileMetadataWriter(wal, 1000, 60_000, 1000, 3);
+		for (int i = 0; i < 10; i++) writer.record("users", "RAW", "r" + i, "/data/raw_users/users/r" + i);
+		writer.close();
+		assertEquals(10, count(wal));
+		assertThrows(IllegalStateException.class, () -> writer.record("users", "RAW", "late", "/late"));
+	}
+}
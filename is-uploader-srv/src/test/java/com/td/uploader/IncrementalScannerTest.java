@@ -0,0 +1,208 @@
+package com.td.uploader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalScannerTest {
+
+	@TempDir
+	Path tmp;
+
+	Path users, products, cursor;
+	IncrementalScanner scanner;
+	final TestClock clock = new TestClock();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		users = Files.createDirectories(tmp.resolve("processed_users/users"));
+		products = Files.createDirectories(tmp.resolve("processed_users/products"));
+		Files.createDirectories(tmp.resolve("raw_users"));
+		cursor = tmp.resolve("state/uploader-scan.state");
+		FileTime anHourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+		for (int i = 0; i < 50; i++) {
+			Files.setLastModifiedTime(Files.writeString(users.resolve("etl_" + i + ".jsonl"), "{}\n"), anHourAgo);
+			Files.setLastModifiedTime(Files.writeString(products.resolve("etl_" + i + ".jsonl"), "{}\n"), anHourAgo);
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (scanner != null) scanner.close();
+	}
+
+	IncrementalScanner open(Duration fullEvery) throws Exception {
+		if (scanner != null) scanner.close();
+		return scanner = new IncrementalScanner(IncrementalScanner.roots(tmp.toString()), cursor, fullEvery, clock);
+	}
+
+	IncrementalScanner open() throws Exception {
+		return open(Duration.ofDays(1));
+	}
+
+	static Set<Path> paths(IncrementalScanner.Result r) {
+		return r.present().stream().map(UploadLedger.Seen::path).collect(Collectors.toSet());
+	}
+
+	// Watch events arrive asynchronously: scan until the expected changes have shown up
+	IncrementalScanner.Result awaitScan(Set<Path> present, Set<Path> gone) throws Exception {
+		Set<Path> seen = new HashSet<>(), removed = new HashSet<>();
+		IncrementalScanner.Result r = null;
+		for (int i = 0; i < 100 && (!seen.containsAll(present) || !removed.containsAll(gone)); i++) {
+			Thread.sleep(50);
+			r = scanner.scan();
+			assertFalse(r.complete());
+			seen.addAll(paths(r));
+			removed.addAll(r.gone());
+		}
+		assertEquals(present, seen);
+		assertEquals(gone, removed);
+		return r;
+	}
+
+	@Test
+	void firstScanWalksEverythingThenOnlyChanges() throws Exception {
+		IncrementalScanner.Result first = open().scan();
+		assertTrue(first.complete());
+		assertEquals(100, first.present().size());
+
+		Path added = Files.writeString(users.resolve("etl_new.jsonl"), "{}\n");
+		Path appended = products.resolve("etl_7.jsonl");
+		Files.writeString(appended, "{}\n{}\n");
+		Path deleted = users.resolve("etl_3.jsonl");
+		Files.delete(deleted);
+		Path newDir = Files.createDirectories(tmp.resolve("dlq/users"));
+		Path inNewDir = Files.writeString(newDir.resolve("invalid_users_1.jsonl"), "{}\n");
+		Files.writeString(users.resolve("notes.txt"), "ignored");
+
+		awaitScan(Set.of(added, appended, inNewDir), Set.of(deleted));
+		assertTrue(scanner.scan().present().isEmpty(), "nothing new since the last sweep");
+	}
+
+	@Test
+	void deletedDirectoryIsGoneWithEverythingUnderIt() throws Exception {
+		open().scan();
+		Set<Path> gone;
+		try (Stream<Path> s = Files.walk(products)) {
+			gone = s.collect(Collectors.toSet());
+		}
+		for (Path p : gone.stream().sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+		// The files' own events come in while the directory is still watched; the directory covers any that do not
+		awaitScan(Set.of(), gone);
+	}
+
+	@Test
+	void restartListsOnlyDirectoriesChangedMeanwhile() throws Exception {
+		open().scan();
+		scanner.close();
+		scanner = null;
+
+		Path added = Files.writeString(users.resolve("etl_new.jsonl"), "{}\n");
+		Files.setLastModifiedTime(users, FileTime.fromMillis(Files.getLastModifiedTime(users).toMillis() + 1000));
+
+		IncrementalScanner.Result r = open().scan();
+		assertFalse(r.complete(), "the cursor avoids a full walk after a restart");
+		assertTrue(paths(r).contains(added));
+		assertTrue(paths(r).stream().allMatch(p -> p.startsWith(users)), "products was not listed");
+
+		// The restarted scanner watches the untouched directory too
+		Path later = Files.writeString(products.resolve("etl_later.jsonl"), "{}\n");
+		awaitScan(Set.of(later), Set.of());
+	}
+
+	@Test
+	void restartFindsFilesAppendedMeanwhile() throws Exception {
+		open().scan();
+		scanner.close();
+		scanner = null;
+
+		// Appending does not touch the directory, so its stamp in the cursor still matches
+		Path appended = products.resolve("etl_7.jsonl");
+		Files.writeString(appended, "{}\n{}\n");
+		Files.setLastModifiedTime(products, Files.getLastModifiedTime(products));
+
+		IncrementalScanner.Result r = open().scan();
+		assertFalse(r.complete());
+		assertEquals(Set.of(appended), paths(r));
+	}
+
+	@Test
+	void fullWalkOnceTheLastOneIsOldEnough() throws Exception {
+		open(Duration.ofDays(1));
+		assertTrue(scanner.scan().complete());
+		clock.advance(Duration.ofHours(1));
+		assertFalse(scanner.scan().complete());
+		clock.advance(Duration.ofHours(23).minusSeconds(5)); // a daily sweep firing a little early still counts
+		assertTrue(scanner.scan().complete());
+		clock.advance(Duration.ofHours(1));
+		assertFalse(scanner.scan().complete());
+
+		// The time of the last full walk survives a restart
+		open(Duration.ofDays(1));
+		assertFalse(scanner.scan().complete());
+		clock.advance(Duration.ofDays(1));
+		assertTrue(open(Duration.ofDays(1)).scan().complete());
+	}
+
+	@Test
+	void incrementalSweepListsOnlyWhatChanged() throws Exception {
+		for (int d = 0; d < 20; d++) {
+			Path dir = Files.createDirectories(tmp.resolve("raw_users/ext" + d));
+			for (int i = 0; i < 500; i++) Files.writeString(dir.resolve("records_" + i + ".jsonl"), "{}\n");
+		}
+		assertTrue(open().scan().complete());
+
+		try (IncrementalScanner fresh = new IncrementalScanner(IncrementalScanner.roots(tmp.toString()), tmp.resolve("other.state"), Duration.ZERO, clock)) {
+			IncrementalScanner.Result full = fresh.scan();
+			assertTrue(full.complete());
+			assertEquals(10_000 + 100, full.present().size()); // plus the etl files from setUp
+		}
+
+		Path added = Files.writeString(tmp.resolve("raw_users/ext4/records_new.jsonl"), "{}\n");
+		Thread.sleep(200);
+		IncrementalScanner.Result inc = scanner.scan();
+		assertFalse(inc.complete(), "no walk");
+		assertEquals(Set.of(added), paths(inc));
+	}
+
+	static final class TestClock extends Clock {
+		long millis = Instant.parse("2026-01-01T03:00:00Z").toEpochMilli();
+
+		void advance(Duration d) {
+			millis += d.toMillis();
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+	}
+}
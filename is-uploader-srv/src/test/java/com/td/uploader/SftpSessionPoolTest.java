@@ -0,0 +1,132 @@
+package com.td.uploader;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SftpSessionPoolTest {
+
+	static final int FILES = 120;
+
+	@TempDir
+	Path tmp;
+
+	SshServer sshd;
+	Path root, key;
+
+	/** Embedded SFTP server rooted at a temp dir, accepting any public key (the pool still does key auth). */
+	@BeforeEach
+	void startServer() throws Exception {
+		root = Files.createDirectories(tmp.resolve("root"));
+		key = tmp.resolve("id_rsa");
+		KeyPair kp = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 2048);
+		kp.writePrivateKey(key.toString());
+		kp.dispose();
+
+		sshd = SshServer.setUpDefaultServer();
+		sshd.setHost("127.0.0.1");
+		sshd.setPort(0);
+		sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(tmp.resolve("hostkey.ser")));
+		sshd.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+		sshd.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+		sshd.setFileSystemFactory(new VirtualFileSystemFactory(root));
+		sshd.start();
+	}
+
+	@AfterEach
+	void stopServer() throws Exception {
+		sshd.stop(true);
+	}
+
+	SftpSessionPool pool(int size) {
+		return new SftpSessionPool(new SftpSessionPool.Settings("127.0.0.1", sshd.getPort(), "camel",
+				key.toString(), "", false, "", "/upload/enc", size, 10_000, 10_000));
+	}
+
+	static InputStream content(int i) {
+		return new ByteArrayInputStream(("file " + i + "\n").repeat(200).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Uploads FILES files from {@code threads} threads. */
+	void uploadAll(SftpSessionPool pool, int threads, String prefix) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> done = new ArrayList<>();
+			for (int i = 0; i < FILES; i++) {
+				int n = i;
+				done.add(executor.submit(() -> { pool.upload(content(n), prefix + n + ".enc"); return null; }));
+			}
+			for (Future<?> f : done) f.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void uploadsOverReusedSessions() throws Exception {
+		try (SftpSessionPool pool = pool(2)) {
+			uploadAll(pool, 4, "a-");
+			assertTrue(pool.idleSessions() <= 2, "never more sessions than the pool size");
+			assertTrue(sshd.getActiveSessions().size() <= 2);
+		}
+		for (int i = 0; i < FILES; i++) {
+			try (InputStream expected = content(i)) {
+				assertArrayEquals(expected.readAllBytes(), Files.readAllBytes(root.resolve("upload/enc/a-" + i + ".enc")));
+			}
+		}
+	}
+
+	@Test
+	void sessionsAreOpenedPerPoolSlotNotPerFile() throws Exception {
+		AtomicInteger opened = new AtomicInteger();
+		sshd.addSessionListener(new SessionListener() {
+			@Override
+			public void sessionCreated(Session session) {
+				opened.incrementAndGet();
+			}
+		});
+
+		// Baseline: a new SSH handshake and key auth per file, as a fresh connection per upload does
+		for (int i = 0; i < FILES / 4; i++) {
+			try (SftpSessionPool once = pool(1)) { once.upload(content(i), "h-" + i + ".enc"); }
+		}
+		assertEquals(FILES / 4, opened.getAndSet(0));
+
+		for (int size : new int[]{1, 2, 4, 8}) {
+			try (SftpSessionPool pool = pool(size)) {
+				uploadAll(pool, size, "w" + size + "-");
+				uploadAll(pool, size, "p" + size + "-");
+			}
+			int sessions = opened.getAndSet(0);
+			assertTrue(sessions >= 1 && sessions <= size, size + " slots, " + sessions + " sessions for " + 2 * FILES + " files");
+		}
+
+		try (var s = Files.list(root.resolve("upload/enc"))) {
+			assertEquals(FILES / 4 + 8 * FILES, s.count());
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.td.uploader;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamEventConsumerTest {
+
+	static final String STREAM = "files.events";
+
+	static RedisServer server;
+	static LettuceConnectionFactory cf;
+	static StringRedisTemplate redis;
+
+	@BeforeAll
+	static void startRedis() throws Exception {
+		int port;
+		try (ServerSocket s = new ServerSocket(0)) {
+			port = s.getLocalPort();
+		}
+		server = new RedisServer(port);
+		server.start();
+		cf = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+		cf.afterPropertiesSet();
+		cf.start();
+		redis = new StringRedisTemplate(cf);
+	}
+
+	@AfterAll
+	static void stopRedis() throws Exception {
+		cf.destroy();
+		server.stop();
+	}
+
+	@BeforeEach
+	void flush() {
+		redis.execute((RedisCallback<Object>) c -> {
+			c.serverCommands().flushAll();
+			return null;
+		});
+	}
+
+	static void publish(int from, int n) {
+		for (int i = from; i < from + n; i++)
+			redis.opsForStream().add(StreamRecords.string(Map.of(StreamEventConsumer.FIELD, "{\"n\":" + i + "}")).withStreamKey(STREAM));
+	}
+
+	static StreamEventConsumer.Settings settings(String group, int threads, Duration reclaimIdle, int maxDeliveries) {
+		return new StreamEventConsumer.Settings(List.of(STREAM), group, "test", threads, 16,
+				Duration.ofMillis(100), reclaimIdle, maxDeliveries);
+	}
+
+	static long pending(String group) {
+		return redis.opsForStream().pending(STREAM, group).getTotalPendingMessages();
+	}
+
+	static void await(BooleanSupplier done) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30_000;
+		while (!done.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	void consumersInOneGroupShareTheStream() throws Exception {
+		final int events = 1000;
+		publish(0, events);
+		for (int threads : new int[]{1, 2, 4}) {
+			// A fresh group per run reads the stream from the start; the sleep stands in for an upload
+			String group = "g" + threads;
+			Set<String> seen = ConcurrentHashMap.newKeySet();
+			Set<String> consumers = ConcurrentHashMap.newKeySet();
+			StreamEventConsumer consumer = new StreamEventConsumer(cf, settings(group, threads, Duration.ofMinutes(1), 10),
+					(stream, json) -> {
+						Thread.sleep(2);
+						consumers.add(Thread.currentThread().getName());
+						assertTrue(seen.add(json), "delivered twice: " + json);
+					});
+			consumer.start();
+			try {
+				await(() -> consumer.handled() == events);
+			} finally {
+				consumer.stop();
+			}
+
+			assertEquals(events, seen.size());
+			assertEquals(threads, consumers.size(), "every consumer took a share");
+			assertEquals(0, pending(group), "everything acknowledged");
+		}
+	}
+
+	@Test
+	void failedEventStaysPendingAndIsReclaimed() throws Exception {
+		publish(0, 10);
+		AtomicInteger attempts = new AtomicInteger();
+		Set<String> done = ConcurrentHashMap.newKeySet();
+		StreamEventConsumer consumer = new StreamEventConsumer(cf, settings("retry", 2, Duration.ofMillis(300), 10),
+				(stream, json) -> {
+					if (json.equals("{\"n\":3}") && attempts.incrementAndGet() == 1) throw new IllegalStateException("sftp down");
+					done.add(json);
+				});
+		consumer.start();
+		try {
+			await(() -> done.size() == 10);
+			await(() -> pending("retry") == 0);
+			assertEquals(2, attempts.get(), "failed once, then delivered again after the idle time");
+		} finally {
+			consumer.stop();
+		}
+	}
+
+	@Test
+	void poisonEventIsDeadLetteredAfterMaxDeliveries() throws Exception {
+		publish(0, 3);
+		AtomicInteger attempts = new AtomicInteger();
+		StreamEventConsumer consumer = new StreamEventConsumer(cf, settings("poison", 1, Duration.ofMillis(100), 3),
+				(stream, json) -> {
+					if (json.equals("{\"n\":1}")) {
+						attempts.incrementAndGet();
+						throw new IllegalStateException("bad event");
+					}
+				});
+		consumer.start();
+		try {
+			await(() -> consumer.handled() == 2 && pending("poison") == 0);
+			assertEquals(3, attempts.get());
+			assertEquals(1, consumer.deadLettered());
+			List<MapRecord<String, Object, Object>> dead = redis.opsForStream().range(STREAM + StreamEventConsumer.DEAD_SUFFIX, Range.unbounded());
+			assertEquals(1, dead.size(), "kept, not dropped");
+			assertEquals("{\"n\":1}", dead.get(0).getValue().get(StreamEventConsumer.FIELD));
+			assertEquals("3", dead.get(0).getValue().get("deliveries"));
+		} finally {
+			consumer.stop();
+		}
+	}
+
+	@Test
+	void restartedGroupResumesAfterLastAcknowledged() throws Exception {
+		publish(0, 5);
+		StreamEventConsumer first = new StreamEventConsumer(cf, settings("resume", 1, Duration.ofMinutes(1), 10), (s, j) -> {});
+		first.start();
+		await(() -> first.handled() == 5);
+		first.stop();
+
+		publish(5, 2);
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		StreamEventConsumer second = new StreamEventConsumer(cf, settings("resume", 1, Duration.ofMinutes(1), 10),
+				(s, j) -> seen.add(j));
+		second.start();
+		try {
+			await(() -> second.handled() == 2);
+			assertEquals(Set.of("{\"n\":5}", "{\"n\":6}"), seen, "only the events published while it was down");
+		} finally {
+			second.stop();
+		}
+	}
+}
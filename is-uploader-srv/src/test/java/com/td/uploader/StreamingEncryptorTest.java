@@ -0,0 +1,80 @@
+package com.td.uploader;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.converter.crypto.CryptoDataFormat;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingEncryptorTest {
+
+	static final String ALGO = "AES/CBC/PKCS5Padding";
+	static final int[] SIZES = {0, 1, 15, 16, 17, StreamingEncryptor.CHUNK - 1, StreamingEncryptor.CHUNK,
+			StreamingEncryptor.CHUNK + 1, 3 * StreamingEncryptor.CHUNK + 5, 1024 * 1024 + 3};
+
+	final Random rnd = new Random(7);
+	final SecretKeySpec key = new SecretKeySpec(bytes(32), "AES");
+	final byte[] iv = bytes(16);
+
+	@TempDir
+	Path tmp;
+
+	byte[] bytes(int n) {
+		byte[] b = new byte[n];
+		rnd.nextBytes(b);
+		return b;
+	}
+
+	@Test
+	void matchesOneShotCipher() throws Exception {
+		StreamingEncryptor enc = new StreamingEncryptor(ALGO, key, iv);
+		Cipher c = Cipher.getInstance(ALGO);
+		for (int size : SIZES) {
+			byte[] plain = bytes(size);
+			Path f = tmp.resolve("f" + size);
+			Files.write(f, plain);
+			c.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+
+			byte[] streamed;
+			try (InputStream in = enc.open(f)) { streamed = in.readAllBytes(); }
+			assertArrayEquals(c.doFinal(plain), streamed, "size " + size);
+
+			c.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+			assertArrayEquals(plain, c.doFinal(streamed), "round trip " + size);
+		}
+	}
+
+	@Test
+	void matchesCryptoDataFormat() throws Exception {
+		CryptoDataFormat crypto = new CryptoDataFormat(ALGO, key);
+		crypto.setInitializationVector(iv);
+		crypto.setShouldAppendHMAC(false);
+		StreamingEncryptor enc = new StreamingEncryptor(ALGO, key, iv);
+
+		try (CamelContext ctx = new DefaultCamelContext()) {
+			ctx.start();
+			for (int size : SIZES) {
+				byte[] plain = bytes(size);
+				ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+				crypto.marshal(new DefaultExchange(ctx), plain, legacy);
+
+				byte[] streamed;
+				try (InputStream in = enc.encrypt(new ByteArrayInputStream(plain))) { streamed = in.readAllBytes(); }
+				assertArrayEquals(legacy.toByteArray(), streamed, "size " + size);
+			}
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package com.td.uploader;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import com.td.common.DataCodec;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.pubkey.AcceptAllPublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadBatcherTest {
+
+	static final int FILES = 2000;
+
+	@TempDir
+	Path tmp;
+
+	final SecretKeySpec key = new SecretKeySpec(new byte[32], "AES");
+	final byte[] iv = new byte[16];
+	final StreamingEncryptor encryptor = new StreamingEncryptor("AES/CBC/PKCS5Padding", key, iv);
+	final ObjectMapper mapper = new ObjectMapper();
+
+	static UploadBatcher.Settings settings(int maxFiles, Duration window) {
+		return new UploadBatcher.Settings(maxFiles, 64L << 20, 1 << 20, window);
+	}
+
+	// A DLQ-sized file: a few rejected records
+	UploadBatcher.Member file(String kind, int i) throws Exception {
+		Path dir = Files.createDirectories(tmp.resolve(kind.equals("DLQ") ? "dlq/users" : "processed_users/users"));
+		StringBuilder sb = new StringBuilder();
+		for (int r = 0; r < 1 + i % 5; r++)
+			sb.append("{\"id\":").append(i * 10 + r).append(",\"firstName\":\"User").append(i)
+					.append("\",\"email\":\"user").append(i).append("@x\",\"error\":\"missing department\"}\n");
+		Path p = Files.writeString(dir.resolve((kind.equals("DLQ") ? "invalid_users_" : "etl_") + i + ".jsonl"), sb);
+		return new UploadBatcher.Member("users", kind, p, p.getFileName().toString(), Files.size(p),
+				Files.getLastModifiedTime(p).toMillis());
+	}
+
+	List<UploadBatcher.Member> files(String kind, int n) throws Exception {
+		List<UploadBatcher.Member> out = new ArrayList<>();
+		for (int i = 0; i < n; i++) out.add(file(kind, i));
+		return out;
+	}
+
+	// What the route uploads for a batch
+	InputStream wire(BatchArchive archive) throws Exception {
+		return encryptor.encrypt(DataCodec.GZIP.compress(archive));
+	}
+
+	// Decrypted, inflated and unzipped: entry name -> content, in archive order
+	Map<String, byte[]> unpack(byte[] wire) throws Exception {
+		Cipher dec = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		dec.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new GZIPInputStream(new ByteArrayInputStream(dec.doFinal(wire))))) {
+			for (ZipEntry e; (e = zip.getNextEntry()) != null; ) entries.put(e.getName(), zip.readAllBytes());
+		}
+		return entries;
+	}
+
+	static String sha256(Path p) throws Exception {
+		return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(p)));
+	}
+
+	@Test
+	void fullBatchGoesOutAsOneArchiveWithAManifest() throws Exception {
+		List<UploadBatcher.Batch> shipped = new CopyOnWriteArrayList<>();
+		UploadBatcher batcher = new UploadBatcher(settings(10, Duration.ofMinutes(1)), shipped::add);
+		List<UploadBatcher.Member> dlq = files("DLQ", 10);
+		UploadBatcher.Member etl = file("PROCESSED", 0);
+
+		assertTrue(batcher.offer(etl));
+		for (int i = 0; i < 9; i++) assertTrue(batcher.offer(dlq.get(i)));
+		assertTrue(batcher.offer(dlq.get(0)), "already in a batch");
+		assertEquals(10, batcher.pending());
+		assertTrue(shipped.isEmpty());
+		assertTrue(batcher.offer(dlq.get(9))); // the tenth DLQ file fills the batch
+		assertEquals(1, shipped.size());
+		assertEquals(1, batcher.pending(), "the PROCESSED file waits in its own batch");
+
+		UploadBatcher.Batch batch = shipped.get(0);
+		assertEquals("DLQ", batch.kind());
+		assertEquals(dlq, batch.members());
+		String name = BatchArchive.name(batch);
+		assertTrue(name.startsWith("users_dlq_") && name.endsWith(".zip"), name);
+		BatchArchive archive = new BatchArchive(batch, name, mapper.writer());
+		byte[] wire;
+		try (InputStream in = wire(archive)) {
+			wire = in.readAllBytes();
+		}
+
+		Map<String, byte[]> entries = unpack(wire);
+		assertEquals(11, entries.size());
+		JsonNode manifest = mapper.readTree(entries.remove(BatchArchive.MANIFEST));
+		assertEquals(name, manifest.path("archive").asText());
+		assertEquals("DLQ", manifest.path("kind").asText());
+		assertEquals(10, manifest.path("files").size());
+		int i = 0;
+		for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+			UploadBatcher.Member m = dlq.get(i);
+			JsonNode f = manifest.path("files").get(i);
+			assertEquals(m.fileName(), e.getKey());
+			assertArrayEquals(Files.readAllBytes(m.path()), e.getValue());
+			assertEquals(m.path().toString(), f.path("path").asText());
+			assertEquals(m.size(), f.path("size").asLong());
+			assertEquals(sha256(m.path()), f.path("sha256").asText());
+			assertEquals(m.mtime(), f.path("mtime").asLong());
+			assertEquals(new BatchArchive.Entry(m.fileName(), m.path().toString(), m.size(), m.mtime(), sha256(m.path())),
+					archive.entry(i));
+			i++;
+		}
+	}
+
+	@Test
+	void entriesDescribeTheVersionThatWasArchived() throws Exception {
+		List<UploadBatcher.Member> dlq = files("DLQ", 2);
+		UploadBatcher.Member grown = dlq.get(1);
+		// Appended after it was offered: the archive holds (and the ledger must record) the longer file
+		Files.writeString(grown.path(), "{\"id\":999}\n", StandardOpenOption.APPEND);
+		Files.setLastModifiedTime(grown.path(), FileTime.fromMillis(grown.mtime() + 5000));
+		UploadBatcher.Batch batch = new UploadBatcher.Batch("users", "DLQ", dlq, 0, 0);
+		BatchArchive archive = new BatchArchive(batch, "a.zip", mapper.writer());
+		try (InputStream in = archive) {
+			in.readAllBytes();
+		}
+		assertEquals(dlq.get(0).size(), archive.entry(0).size());
+		assertEquals(Files.size(grown.path()), archive.entry(1).size());
+		assertTrue(archive.entry(1).size() > grown.size());
+		assertEquals(grown.mtime() + 5000, archive.entry(1).mtime());
+		assertEquals(sha256(grown.path()), archive.entry(1).sha256());
+	}
+
+	@Test
+	void clashingNamesGetDistinctEntries() throws Exception {
+		// The third member's prefixed name (2_x.jsonl) is already the second member's own name
+		List<UploadBatcher.Member> members = new ArrayList<>();
+		String[] names = {"x.jsonl", "2_x.jsonl", "x.jsonl", "2_x.jsonl"};
+		for (int i = 0; i < names.length; i++) {
+			Path p = Files.writeString(Files.createDirectories(tmp.resolve("d" + i)).resolve(names[i]), i + "\n");
+			members.add(new UploadBatcher.Member("users", "DLQ", p, names[i], Files.size(p), Files.getLastModifiedTime(p).toMillis()));
+		}
+		BatchArchive archive = new BatchArchive(new UploadBatcher.Batch("users", "DLQ", members, 8, 0), "a.zip", mapper.writer());
+		byte[] wire;
+		try (InputStream in = wire(archive)) {
+			wire = in.readAllBytes();
+		}
+		Map<String, byte[]> entries = unpack(wire);
+		entries.remove(BatchArchive.MANIFEST);
+		assertEquals(List.of("x.jsonl", "2_x.jsonl", "2.1_x.jsonl", "3_2_x.jsonl"), List.copyOf(entries.keySet()));
+		int i = 0;
+		for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+			assertEquals(e.getKey(), archive.entry(i).name());
+			assertEquals(i + "\n", new String(e.getValue()));
+			i++;
+		}
+	}
+
+	@Test
+	void bigFilesAreNotBatched() throws Exception {
+		UploadBatcher batcher = new UploadBatcher(new UploadBatcher.Settings(10, 1 << 20, 100, Duration.ofMinutes(1)), b -> {});
+		UploadBatcher.Member big = file("PROCESSED", 0);
+		Files.writeString(big.path(), "x".repeat(200));
+		assertFalse(batcher.offer(new UploadBatcher.Member("users", "PROCESSED", big.path(), big.fileName(), 200, big.mtime())));
+		assertEquals(0, batcher.pending());
+	}
+
+	@Test
+	void windowAndStopShipPartialBatches() throws Exception {
+		List<UploadBatcher.Batch> shipped = new CopyOnWriteArrayList<>();
+		UploadBatcher batcher = new UploadBatcher(settings(100, Duration.ofMillis(200)), shipped::add);
+		batcher.start();
+		try {
+			batcher.offer(file("DLQ", 1));
+			batcher.offer(file("DLQ", 2));
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (shipped.isEmpty() && System.nanoTime() < deadline) Thread.sleep(20);
+			assertEquals(1, shipped.size(), "shipped once the window ran out");
+			assertEquals(2, shipped.get(0).members().size());
+		} finally {
+			batcher.stop();
+		}
+
+		shipped.clear();
+		batcher = new UploadBatcher(settings(100, Duration.ofMinutes(1)), shipped::add);
+		batcher.start();
+		batcher.offer(file("DLQ", 3));
+		batcher.stop();
+		assertEquals(1, shipped.size(), "stop ships what is still open");
+	}
+
+	@Test
+	void failedBatchCanBeOfferedAgain() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		List<UploadBatcher.Batch> shipped = new CopyOnWriteArrayList<>();
+		List<UploadBatcher.Member> released = new CopyOnWriteArrayList<>();
+		UploadBatcher batcher = new UploadBatcher(settings(2, Duration.ofMinutes(1)), b -> {
+			if (attempts.incrementAndGet() == 1) throw new IllegalStateException("SFTP down");
+			shipped.add(b);
+		}, released::addAll);
+		List<UploadBatcher.Member> dlq = files("DLQ", 2);
+		dlq.forEach(batcher::offer);
+		assertTrue(shipped.isEmpty());
+		assertEquals(0, batcher.pending());
+		assertEquals(dlq, released, "claims handed back");
+
+		// As the sweeper does with files still pending in the ledger
+		dlq.forEach(batcher::offer);
+		assertEquals(1, shipped.size());
+		assertEquals(dlq, shipped.get(0).members());
+	}
+
+	@Test
+	void deletedMemberIsLeftOut() throws Exception {
+		List<UploadBatcher.Batch> shipped = new CopyOnWriteArrayList<>();
+		List<UploadBatcher.Member> released = new CopyOnWriteArrayList<>();
+		UploadBatcher batcher = new UploadBatcher(settings(3, Duration.ofMinutes(1)), shipped::add, released::addAll);
+		List<UploadBatcher.Member> dlq = files("DLQ", 3);
+		batcher.offer(dlq.get(0));
+		batcher.offer(dlq.get(1));
+		Files.delete(dlq.get(1).path());
+		batcher.offer(dlq.get(2));
+		assertEquals(List.of(dlq.get(0), dlq.get(2)), shipped.get(0).members());
+		assertEquals(dlq.get(0).size() + dlq.get(2).size(), shipped.get(0).bytes());
+		assertEquals(List.of(dlq.get(1)), released);
+	}
+
+	@Test
+	void batchesSendFewerBytesThanOneFileEach() throws Exception {
+		List<UploadBatcher.Member> dlq = files("DLQ", FILES);
+
+		// Per file, as the route uploads them without UPLOADER_BATCH: compressed and encrypted one by one
+		long perFile = 0;
+		for (UploadBatcher.Member m : dlq) {
+			try (InputStream in = encryptor.encrypt(DataCodec.GZIP.compress(Files.newInputStream(m.path())))) {
+				perFile += in.readAllBytes().length;
+			}
+		}
+
+		AtomicLong batched = new AtomicLong();
+		AtomicInteger archives = new AtomicInteger();
+		UploadBatcher batcher = new UploadBatcher(settings(500, Duration.ofMinutes(1)), b -> {
+			try (InputStream in = wire(new BatchArchive(b, BatchArchive.name(b), mapper.writer()))) {
+				batched.addAndGet(in.readAllBytes().length);
+			}
+			archives.incrementAndGet();
+		});
+		dlq.forEach(batcher::offer);
+		batcher.flush();
+
+		assertEquals(FILES / 500, archives.get());
+		// Compressed as one stream, even with a SHA-256 per member in the manifest
+		assertTrue(batched.get() < perFile, "fewer bytes than one file each");
+	}
+
+	/** Per-file versus batched over SFTP with the SQLite ledger: a batch is one transfer (open/close) for 250 files. */
+	@Test
+	void batchesCutSftpTransfersOverSftp() throws Exception {
+		Path root = Files.createDirectories(tmp.resolve("sftp"));
+		Path keyFile = tmp.resolve("id_rsa");
+		KeyPair kp = KeyPair.genKeyPair(new JSch(), KeyPair.RSA, 2048);
+		kp.writePrivateKey(keyFile.toString());
+		kp.dispose();
+		SshServer sshd = SshServer.setUpDefaultServer();
+		sshd.setHost("127.0.0.1");
+		sshd.setPort(0);
+		sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(tmp.resolve("hostkey.ser")));
+		sshd.setPublickeyAuthenticator(AcceptAllPublickeyAuthenticator.INSTANCE);
+		sshd.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+		sshd.setFileSystemFactory(new VirtualFileSystemFactory(root));
+		sshd.start();
+		SQLiteDataSource ds = new SQLiteDataSource();
+		ds.setUrl("jdbc:sqlite:" + tmp.resolve("files.db"));
+		UploadLedger ledger = new UploadLedger(ds, Duration.ofHours(1));
+		List<UploadBatcher.Member> dlq = files("DLQ", FILES / 4);
+
+		try (SftpSessionPool pool = new SftpSessionPool(new SftpSessionPool.Settings("127.0.0.1", sshd.getPort(), "camel",
+				keyFile.toString(), "", false, "", "/upload", 1, 10_000, 10_000))) {
+			pool.upload(new ByteArrayInputStream(new byte[0]), "warm-up"); // opens the session
+
+			for (UploadBatcher.Member m : dlq) {
+				try (InputStream in = encryptor.encrypt(DataCodec.GZIP.compress(Files.newInputStream(m.path())))) {
+					pool.upload(in, m.fileName() + ".gz.enc");
+				}
+				ledger.markUploaded(m.path(), m.size(), m.mtime(), sha256(m.path()));
+			}
+			long perFileBytes = remoteBytes(root, ".jsonl.gz.enc");
+
+			UploadBatcher batcher = new UploadBatcher(settings(250, Duration.ofMinutes(1)), b -> {
+				String name = BatchArchive.name(b);
+				BatchArchive archive = new BatchArchive(b, name, mapper.writer());
+				try (InputStream in = wire(archive)) {
+					pool.upload(in, name + ".gz.enc");
+				}
+				List<UploadLedger.Uploaded> done = new ArrayList<>();
+				for (int i = 0; i < b.members().size(); i++) {
+					BatchArchive.Entry a = archive.entry(i);
+					done.add(new UploadLedger.Uploaded(b.members().get(i).path(), a.size(), a.mtime(), a.sha256()));
+				}
+				ledger.markUploaded(done);
+			});
+			dlq.forEach(batcher::offer);
+			batcher.flush();
+			long batchedBytes = remoteBytes(root, ".zip.gz.enc");
+
+			assertEquals(dlq.size(), remoteFiles(root, ".jsonl.gz.enc"), "one transfer per file");
+			assertEquals(dlq.size() / 250, remoteFiles(root, ".zip.gz.enc"), "one transfer per 250 files");
+			assertTrue(batchedBytes < perFileBytes);
+			for (UploadBatcher.Member m : dlq) assertTrue(ledger.isUploaded(m.path().toString(), m.size(), m.mtime()));
+		} finally {
+			sshd.stop(true);
+		}
+	}
+
+	static long remoteFiles(Path root, String suffix) throws Exception {
+		try (Stream<Path> s = Files.list(root.resolve("upload"))) {
+			return s.filter(p -> p.toString().endsWith(suffix)).count();
+		}
+	}
+
+	static long remoteBytes(Path root, String suffix) throws Exception {
+		try (Stream<Path> s = Files.list(root.resolve("upload"))) {
+			long bytes = 0;
+			for (Path p : s.filter(p -> p.toString().endsWith(suffix)).toList()) bytes += Files.size(p);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.td.uploader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadLedgerTest {
+
+	@TempDir
+	Path tmp;
+
+	Path processed, raw;
+	UploadLedger ledger;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		processed = Files.createDirectories(tmp.resolve("processed_users/users"));
+		raw = Files.createDirectories(tmp.resolve("raw_users/users"));
+		SQLiteDataSource ds = new SQLiteDataSource();
+		ds.setUrl("jdbc:sqlite:" + tmp.resolve("files.db"));
+		ledger = new UploadLedger(ds, Duration.ofHours(1));
+	}
+
+	// A complete scan, as IncrementalScanner's full walk reports it
+	List<UploadLedger.Entry> sync() throws Exception {
+		List<UploadLedger.Seen> present;
+		try (Stream<Path> s = Files.walk(tmp)) {
+			present = s.filter(p -> p.toString().endsWith(".jsonl")).sorted()
+					.map(p -> new UploadLedger.Seen(p, p.toFile().length(), p.toFile().lastModified())).toList();
+		}
+		return ledger.update(present, List.of(), true);
+	}
+
+	void uploaded(Path f) throws Exception {
+		ledger.markUploaded(f, Files.size(f), Files.getLastModifiedTime(f).toMillis(), "00");
+	}
+
+	@Test
+	void newFilesArePendingUntilUploaded() throws Exception {
+		Path etl = Files.writeString(processed.resolve("etl_1.jsonl"), "{}\n");
+		Path rec = Files.writeString(raw.resolve("records_1.jsonl"), "{}\n");
+		Files.writeString(raw.resolve("notes.txt"), "ignored");
+
+		List<UploadLedger.Entry> pending = sync();
+		assertEquals(List.of(
+				new UploadLedger.Entry(etl.toString(), "users", "PROCESSED", "etl_1.jsonl"),
+				new UploadLedger.Entry(rec.toString(), "users", "RAW", "records_1.jsonl")), pending);
+		assertEquals(2, sync().size(), "still pending on the next sweep");
+
+		uploaded(etl);
+		assertTrue(ledger.isUploaded(etl.toString(), Files.size(etl), Files.getLastModifiedTime(etl).toMillis()));
+		assertEquals(List.of(rec.toString()), sync().stream().map(UploadLedger.Entry::filepath).toList());
+	}
+
+	@Test
+	void changedFileIsPendingAgain() throws Exception {
+		Path etl = Files.writeString(processed.resolve("etl_1.jsonl"), "{}\n");
+		sync();
+		uploaded(etl);
+		assertTrue(sync().isEmpty());
+
+		Files.writeString(etl, "{}\n{}\n");
+		Files.setLastModifiedTime(etl, FileTime.fromMillis(Files.getLastModifiedTime(etl).toMillis() + 1000));
+		assertEquals(1, sync().size());
+		assertFalse(ledger.isUploaded(etl.toString(), Files.size(etl), Files.getLastModifiedTime(etl).toMillis()));
+	}
+
+	@Test
+	void legacyMarkerCountsAsUploadedAndMissingFilesDrop() throws Exception {
+		Path old = Files.writeString(processed.resolve("etl_0.jsonl"), "{}\n");
+		Files.createFile(processed.resolve("etl_0.jsonl.enc.uploaded"));
+		Path gone = Files.writeString(processed.resolve("etl_gone.jsonl"), "{}\n");
+
+		assertEquals(List.of(gone.toString()), sync().stream().map(UploadLedger.Entry::filepath).toList());
+		assertTrue(ledger.isUploaded(old.toString(), Files.size(old), Files.getLastModifiedTime(old).toMillis()));
+
+		Files.delete(gone);
+		assertTrue(sync().isEmpty());
+	}
+
+	@Test
+	void incrementalUpdateOnlyTouchesReportedFiles() throws Exception {
+		Path a = Files.writeString(processed.resolve("etl_a.jsonl"), "{}\n");
+		Path b = Files.writeString(processed.resolve("etl_b.jsonl"), "{}\n");
+		sync();
+
+		// b is not reported, so an incremental update leaves its pending row alone
+		List<UploadLedger.Entry> pending = ledger.update(List.of(), List.of(a), false);
+		assertEquals(List.of(b.toString()), pending.stream().map(UploadLedger.Entry::filepath).toList());
+	}
+
+	@Test
+	void goneDirectoryDropsThePendingRowsUnderIt() throws Exception {
+		Path a = Files.writeString(processed.resolve("etl_a.jsonl"), "{}\n");
+		Path other = Files.createDirectories(tmp.resolve("processed_users/users2"));
+		Path b = Files.writeString(other.resolve("etl_b.jsonl"), "{}\n");
+		sync();
+
+		List<UploadLedger.Entry> pending = ledger.update(List.of(), List.of(processed), false);
+		assertEquals(List.of(b.toString()), pending.stream().map(UploadLedger.Entry::filepath).toList(), "users2 is not under users");
+		assertFalse(pending.stream().anyMatch(e -> e.filepath().equals(a.toString())));
+	}
+
+	@Test
+	void onlyOneUploadClaimsAVersion() throws Exception {
+		Path etl = Files.writeString(processed.resolve("etl_1.jsonl"), "{}\n");
+		sync();
+		long size = Files.size(etl), mtime = Files.getLastModifiedTime(etl).toMillis();
+
+		// The sweeper and event workers race for the same file
+		List<Callable<Boolean>> racers = Collections.nCopies(8, () -> ledger.claim(etl, size, mtime));
+		int claimed = 0;
+		try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+			for (Future<Boolean> f : pool.invokeAll(racers)) if (f.get()) claimed++;
+		}
+		assertEquals(1, claimed);
+		assertTrue(sync().isEmpty(), "an upload holds it");
+
+		uploaded(etl);
+		assertFalse(ledger.claim(etl, size, mtime), "already uploaded");
+		assertTrue(ledger.claim(etl, size + 1, mtime + 1000), "a new version");
+	}
+
+	@Test
+	void releasedClaimIsPendingAgain() throws Exception {
+		Path etl = Files.writeString(processed.resolve("etl_1.jsonl"), "{}\n");
+		long size = Files.size(etl), mtime = Files.getLastModifiedTime(etl).toMillis();
+		assertTrue(ledger.claim(etl, size, mtime), "an event before any sweep");
+		assertTrue(sync().isEmpty());
+
+		ledger.release(List.of(etl));
+		assertEquals(List.of(etl.toString()), sync().stream().map(UploadLedger.Entry::filepath).toList());
+		assertTrue(ledger.claim(etl, size, mtime));
+	}
+}
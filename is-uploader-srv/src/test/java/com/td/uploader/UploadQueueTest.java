@@ -0,0 +1,182 @@
+package com.td.uploader;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadQueueTest {
+
+	static UploadQueue.Task task(String kind, String name) {
+		return new UploadQueue.Task(kind, "users", "/data/x/" + name, name, System.nanoTime());
+	}
+
+	static void await(CountDownLatch latch) throws InterruptedException {
+		assertTrue(latch.await(10, TimeUnit.SECONDS), "timed out");
+	}
+
+	@Test
+	void processedAndDlqGoBeforeRawAndRepeatedPathsAreQueuedOnce() throws Exception {
+		CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1), done = new CountDownLatch(4);
+		List<String> order = new CopyOnWriteArrayList<>();
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(10, 1, true, Duration.ofSeconds(1)), t -> {
+			if (t.fileName().equals("first")) {
+				started.countDown();
+				await(release);
+			}
+			order.add(t.fileName());
+			done.countDown();
+		});
+		q.start();
+		try {
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "first")));
+			await(started); // the only worker is busy from here on
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "raw1")));
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("PROCESSED", "etl1")));
+			assertEquals(UploadQueue.Outcome.DUPLICATE, q.offer(task("RAW", "raw1")));
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("DLQ", "dlq1")));
+			assertEquals(3, q.depth());
+			assertEquals(1, q.busy());
+			release.countDown();
+			await(done);
+			assertEquals(List.of("first", "etl1", "dlq1", "raw1"), order);
+			assertEquals(0, q.depth());
+		} finally {
+			q.stop();
+		}
+	}
+
+	@Test
+	void fullQueueShedsOrReplacesRaw() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> uploaded = new CopyOnWriteArrayList<>();
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(2, 1, false, Duration.ZERO), t -> {
+			await(release);
+			uploaded.add(t.fileName());
+		});
+		q.start();
+		try {
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "busy")));
+			while (q.busy() == 0) Thread.sleep(1);
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "raw1")));
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "raw2")));
+			assertEquals(UploadQueue.Outcome.SHED, q.offer(task("RAW", "raw3")), "no room, no waiting");
+			assertEquals(UploadQueue.Outcome.REPLACED_RAW, q.offer(task("PROCESSED", "etl1")), "takes the newest RAW's place");
+			assertEquals(UploadQueue.Outcome.SHED, q.offer(task("RAW", "raw2")), "dropped, so no longer a duplicate");
+			assertEquals(UploadQueue.Outcome.REPLACED_RAW, q.offer(task("DLQ", "dlq1")));
+			assertEquals(UploadQueue.Outcome.SHED, q.offer(task("DLQ", "dlq2")), "no RAW left to replace");
+			release.countDown();
+			while (uploaded.size() < 3) Thread.sleep(1);
+			assertEquals(List.of("busy", "etl1", "dlq1"), uploaded);
+		} finally {
+			release.countDown();
+			q.stop();
+		}
+	}
+
+	@Test
+	void aPathIsNotQueuedAgainWhileItIsBeingUploaded() throws Exception {
+		CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1), done = new CountDownLatch(2);
+		AtomicInteger uploads = new AtomicInteger();
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(10, 2, true, Duration.ofSeconds(1)), t -> {
+			if (uploads.incrementAndGet() == 1) {
+				started.countDown();
+				await(release);
+			}
+			done.countDown();
+		});
+		q.start();
+		try {
+			assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task("RAW", "same")));
+			await(started);
+			assertEquals(0, q.depth());
+			assertEquals(UploadQueue.Outcome.DUPLICATE, q.offer(task("RAW", "same")), "still uploading");
+			release.countDown();
+			while (q.offer(task("RAW", "same")) == UploadQueue.Outcome.DUPLICATE) Thread.sleep(1); // until run() lets go of it
+			await(done);
+			assertEquals(2, uploads.get());
+		} finally {
+			release.countDown();
+			q.stop();
+		}
+	}
+
+	@Test
+	void blockingOfferWaitsForRoomThenSheds() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(1, 1, true, Duration.ofMillis(200)), t -> await(release));
+		q.start();
+		try {
+			q.offer(task("RAW", "busy"));
+			while (q.busy() == 0) Thread.sleep(1);
+			q.offer(task("RAW", "waiting"));
+			assertEquals(UploadQueue.Outcome.SHED, q.offer(task("RAW", "late")), "no room within blockFor");
+		} finally {
+			release.countDown();
+			q.stop();
+		}
+	}
+
+	@Test
+	void blockingOfferGetsInWhenRoomFreesUp() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(1, 1, true, Duration.ofSeconds(30)), t -> await(release));
+		q.start();
+		try {
+			q.offer(task("RAW", "busy"));
+			while (q.busy() == 0) Thread.sleep(1);
+			q.offer(task("RAW", "waiting"));
+
+			AtomicReference<UploadQueue.Outcome> outcome = new AtomicReference<>();
+			Thread offering = Thread.ofVirtual().start(() -> {
+				try {
+					outcome.set(q.offer(task("RAW", "next")));
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertFalse(offering.join(Duration.ofMillis(100)), "waits while the queue is full");
+			release.countDown();
+			assertTrue(offering.join(Duration.ofSeconds(10)));
+			assertEquals(UploadQueue.Outcome.QUEUED, outcome.get());
+		} finally {
+			release.countDown();
+			q.stop();
+		}
+	}
+
+	@Test
+	void slowUploadsNoLongerStallIntake() throws Exception {
+		final int events = 200, workers = 8;
+		CountDownLatch release = new CountDownLatch(1), done = new CountDownLatch(events);
+		AtomicInteger inFlight = new AtomicInteger(), peak = new AtomicInteger();
+		UploadQueue q = new UploadQueue(new UploadQueue.Settings(1000, workers, true, Duration.ofSeconds(1)), t -> {
+			peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			await(release); // every upload hangs until all events are in
+			inFlight.decrementAndGet();
+			done.countDown();
+		});
+		q.start();
+		try {
+			// Before: the subscriber thread ran every upload itself, so it could not take the second event
+			for (int i = 0; i < events; i++)
+				assertEquals(UploadQueue.Outcome.QUEUED, q.offer(task(i % 2 == 0 ? "PROCESSED" : "RAW", "f" + i)));
+			assertEquals(events, done.getCount(), "intake did not wait for a single upload");
+			while (q.busy() < workers) Thread.sleep(1);
+			assertEquals(events - workers, q.depth());
+			release.countDown();
+			await(done);
+			assertEquals(workers, peak.get(), "uploads run in parallel, one per worker");
+		} finally {
+			release.countDown();
+			q.stop();
+		}
+	}
+}